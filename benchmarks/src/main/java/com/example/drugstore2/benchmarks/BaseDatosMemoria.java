@@ -0,0 +1,132 @@
+package com.example.drugstore2.benchmarks;
+
+import com.example.drugstore2.db.ConfiguracionBD;
+import com.example.drugstore2.db.EsquemaBase;
+import com.example.drugstore2.db.MigracionesBD;
+import com.example.drugstore2.db.PoolConexiones;
+import com.example.drugstore2.model.Producto;
+import com.example.drugstore2.model.VentaTemporal;
+import com.example.drugstore2.service.InventarioService;
+import com.example.drugstore2.service.RegistroAuditoria;
+import com.example.drugstore2.service.ResumenVentasService;
+import com.example.drugstore2.service.VentaService;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Base H2 en memoria (perfil embebida, modo MySQL) con el esquema de la aplicación y los
+ * servicios reales conectados a ella, en lugar del servidor MySQL. Cada instancia usa una base distinta.
+ */
+public class BaseDatosMemoria implements AutoCloseable {
+
+    private static final String[] CATEGORIAS = {"Analgésicos", "Bebidas", "Golosinas", "Higiene", "Perfumería"};
+
+    private final PoolConexiones pool;
+    private final RegistroAuditoria auditoria;
+    private final InventarioService inventarioService;
+    private final VentaService ventaService;
+    private final List<Producto> productos = new ArrayList<>();
+
+    public BaseDatosMemoria(String nombre) throws SQLException {
+        System.setProperty("db.perfil", ConfiguracionBD.PERFIL_EMBEBIDA);
+        System.setProperty("db.embebida.url", "jdbc:h2:mem:" + nombre + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        System.setProperty("db.pool.umbralFugaMs", "0");
+        pool = new PoolConexiones(ConfiguracionBD.cargar());
+
+        new EsquemaBase(pool.getDataSource()).crear();
+        new MigracionesBD(pool.getDataSource()).aplicar();
+
+        auditoria = new RegistroAuditoria(pool.getDataSource());
+        inventarioService = new InventarioService(pool.getDataSource(), auditoria);
+        ventaService = new VentaService(inventarioService, new ResumenVentasService(pool.getDataSource()));
+    }
+
+    /**
+     * Da de alta {@code cantidad} productos con stock de sobra (las ventas repetidas no lo agotan).
+     */
+    public void cargarProductos(int cantidad) throws SQLException {
+        try (Connection conn = pool.getDataSource().getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement("INSERT IGNORE INTO categorias (nombre) VALUES (?)")) {
+                for (String c : CATEGORIAS) {
+                    ps.setString(1, c);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            String sql = "INSERT INTO productos (codigo, nombre, precio_venta, precio_costo, stock, categoria_id, activo, stock_minimo) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, TRUE, 5)";
+            int[] categoriaIds = new int[CATEGORIAS.length];
+            for (int c = 0; c < CATEGORIAS.length; c++) categoriaIds[c] = inventarioService.obtenerCategoriaId(CATEGORIAS[c]);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                Random random = new Random(42);
+                for (int i = 0; i < cantidad; i++) {
+                    double precio = 100 + random.nextInt(5000);
+                    ps.setString(1, String.format("779%010d", i));
+                    ps.setString(2, "Producto de prueba " + i);
+                    ps.setDouble(3, precio);
+                    ps.setDouble(4, precio * 0.6);
+                    ps.setInt(5, 1_000_000_000);
+                    ps.setInt(6, categoriaIds[i % CATEGORIAS.length]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        inventarioService.recargarCatalogo();
+        productos.clear();
+        for (int i = 0; i < cantidad; i++) {
+            productos.add(inventarioService.buscarProductoPorCodigo(String.format("779%010d", i)));
+        }
+    }
+
+    /**
+     * Registra {@code cantidad} ventas de {@code lineasPorVenta} productos cada una, por el camino normal.
+     */
+    public void cargarVentas(int cantidad, int lineasPorVenta) {
+        Random random = new Random(7);
+        for (int v = 0; v < cantidad; v++) {
+            VentaTemporal ticket = new VentaTemporal();
+            for (int l = 0; l < lineasPorVenta; l++) {
+                Producto p = productos.get(random.nextInt(productos.size()));
+                for (int u = 1 + random.nextInt(3); u > 0; u--) ticket.agregarProducto(p);
+            }
+            if (!ventaService.guardarTicket(ticket.getLineas())) {
+                throw new IllegalStateException("No se pudo registrar la venta de prueba " + v);
+            }
+        }
+    }
+
+    public List<Producto> getProductos() {
+        return productos;
+    }
+
+    public PoolConexiones getPool() {
+        return pool;
+    }
+
+    public InventarioService getInventarioService() {
+        return inventarioService;
+    }
+
+    public VentaService getVentaService() {
+        return ventaService;
+    }
+
+    @Override
+    public void close() {
+        auditoria.close();
+        try (Connection conn = pool.getDataSource().getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            // La base ya estaba cerrada
+        }
+        pool.close();
+    }
+}
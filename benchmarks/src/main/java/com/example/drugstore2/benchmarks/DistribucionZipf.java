@@ -0,0 +1,36 @@
+package com.example.drugstore2.benchmarks;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Popularidad de productos según Zipf: el producto de rango k (0 = el más vendido) sale con
+ * probabilidad proporcional a 1 / (k + 1)^s. Con s = 0 todos son igual de probables; con s ≈ 1
+ * unos pocos productos concentran la mayoría de las ventas, como en un kiosco real.
+ */
+final class DistribucionZipf {
+
+    private final double[] acumulada;
+
+    DistribucionZipf(int elementos, double exponente) {
+        if (elementos <= 0) throw new IllegalArgumentException("Se necesita al menos un elemento");
+        acumulada = new double[elementos];
+        double suma = 0;
+        for (int k = 0; k < elementos; k++) {
+            suma += 1.0 / Math.pow(k + 1, exponente);
+            acumulada[k] = suma;
+        }
+        for (int k = 0; k < elementos; k++) acumulada[k] /= suma;
+    }
+
+    /** Rango del siguiente elemento (0 .. elementos-1). */
+    int siguiente(RandomGenerator random) {
+        int i = Arrays.binarySearch(acumulada, random.nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, acumulada.length - 1);
+    }
+
+    /** Probabilidad acumulada de los primeros {@code n} elementos (ej. cuánto venden los 10 más populares). */
+    double acumuladaHasta(int n) {
+        return n <= 0 ? 0.0 : acumulada[Math.min(n, acumulada.length) - 1];
+    }
+}
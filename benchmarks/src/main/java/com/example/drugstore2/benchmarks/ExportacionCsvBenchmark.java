@@ -0,0 +1,69 @@
+package com.example.drugstore2.benchmarks;
+
+import com.example.drugstore2.model.LineaVenta;
+import com.example.drugstore2.service.ExportadorVentas;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exportación de ventas a CSV: solo la escritura de filas (sin E/S de disco ni base)
+ * y la exportación completa de un período desde la base en memoria, con y sin gzip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportacionCsvBenchmark {
+
+    private static final int VENTAS = 3000;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private BaseDatosMemoria base;
+    private ExportadorVentas exportador;
+    private List<LineaVenta> lineas;
+    private Path destino;
+    private final LocalDate hoy = LocalDate.now();
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        base = new BaseDatosMemoria("exportacion_" + gzip);
+        base.cargarProductos(200);
+        base.cargarVentas(VENTAS, 3);
+        exportador = new ExportadorVentas(base.getVentaService());
+        lineas = base.getVentaService().getVentasDetalladasPorRango(hoy, hoy);
+        destino = Files.createTempFile("ventas-bench", gzip ? ".csv.gz" : ".csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws IOException {
+        base.close();
+        Files.deleteIfExists(destino);
+    }
+
+    @Benchmark
+    public int escribirFilas() throws IOException {
+        try (CSVPrinter csv = new CSVPrinter(Writer.nullWriter(),
+                CSVFormat.DEFAULT.builder().setHeader(ExportadorVentas.ENCABEZADOS).build())) {
+            for (LineaVenta linea : lineas) ExportadorVentas.escribirFila(csv, linea);
+        }
+        return lineas.size();
+    }
+
+    @Benchmark
+    public long exportarPeriodo() throws Exception {
+        return exportador.exportar(hoy, hoy, destino, gzip, (escritas, total) -> {}, () -> false);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.drugstore2.benchmarks;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Arranca JavaFX sin pantalla (Monocle headless) para ejecutar código del hilo de JavaFX
+ * desde un benchmark.
+ */
+final class FxSinPantalla {
+
+    private static boolean iniciado = false;
+
+    private FxSinPantalla() {}
+
+    static synchronized void iniciar() {
+        if (iniciado) return;
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        Platform.startup(() -> {});
+        Platform.setImplicitExit(false);
+        iniciado = true;
+    }
+
+    /**
+     * Ejecuta la tarea en el hilo de JavaFX y espera su resultado.
+     */
+    static <T> T ejecutar(Callable<T> tarea) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                resultado.complete(tarea.call());
+            } catch (Throwable t) {
+                resultado.completeExceptionally(t);
+            }
+        });
+        try {
+            return resultado.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.drugstore2.benchmarks;
+
+import com.example.drugstore2.db.ConfiguracionBD;
+import com.example.drugstore2.db.ErroresBD;
+import com.example.drugstore2.db.PoolConexiones;
+import com.example.drugstore2.model.Producto;
+import com.example.drugstore2.model.TipoMovimientoCaja;
+import com.example.drugstore2.model.VentaTemporal;
+import com.example.drugstore2.service.CajaService;
+import com.example.drugstore2.service.InventarioService;
+import com.example.drugstore2.service.RegistroAuditoria;
+import com.example.drugstore2.service.ResumenVentasService;
+import com.example.drugstore2.service.VentaService;
+import com.example.drugstore2.util.Metricas;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prueba de carga sin interfaz: N cajas virtuales registran ventas a la vez contra la capa de
+ * servicios (guardarTicket, movimientos de caja y reposiciones de stock) y al final se informa
+ * el rendimiento, los percentiles de latencia, los rollbacks y los bloqueos de la base.
+ *
+ * Sin -Ddb.perfil usa una base H2 en memoria con productos de prueba. Con -Ddb.perfil=mysql usa la
+ * base de db.properties y sus productos activos: registra ventas reales, usar solo en una base de prueba.
+ *
+ * Uso (después de empaquetar los benchmarks):
+ *     java -Dcarga.terminales=8 -Dcarga.duracionSeg=30 -cp benchmarks/target/benchmarks.jar \
+ *          com.example.drugstore2.benchmarks.GeneradorCarga
+ *
+ * Parámetros (-Dcarga.*):
+ *   terminales (8), duracionSeg (30), calentamientoSeg (5), pausaMs (0, entre tickets de una caja),
+ *   productos (2000, solo base en memoria), zipf (1.0, exponente de popularidad de productos),
+ *   lineasPromedio (4) y lineasMax (30): líneas por ticket (geométrica),
+ *   unidadesPromedio (1.5): unidades por línea (geométrica, mínimo 1),
+ *   efectivo (0.7): fracción de ventas que además registran el movimiento de caja,
+ *   reposicion (0.02): probabilidad de reponer stock de un producto popular antes de un ticket.
+ */
+public class GeneradorCarga {
+
+    private static final int TERMINALES = Integer.getInteger("carga.terminales", 8);
+    private static final int DURACION_SEG = Integer.getInteger("carga.duracionSeg", 30);
+    private static final int CALENTAMIENTO_SEG = Integer.getInteger("carga.calentamientoSeg", 5);
+    private static final long PAUSA_MS = Long.getLong("carga.pausaMs", 0);
+    private static final int PRODUCTOS = Integer.getInteger("carga.productos", 2000);
+    private static final double ZIPF = doble("carga.zipf", 1.0);
+    private static final double LINEAS_PROMEDIO = doble("carga.lineasPromedio", 4);
+    private static final int LINEAS_MAX = Integer.getInteger("carga.lineasMax", 30);
+    private static final double UNIDADES_PROMEDIO = doble("carga.unidadesPromedio", 1.5);
+    private static final double EFECTIVO = doble("carga.efectivo", 0.7);
+    private static final double REPOSICION = doble("carga.reposicion", 0.02);
+
+    // Latencia de punta a punta de cada ticket (venta + movimiento de caja), vista por la caja
+    private static final Metricas metricas = Metricas.de("GeneradorCarga");
+
+    private final PrintStream salida;
+    private final VentaService ventaService;
+    private final InventarioService inventarioService;
+    private final CajaService cajaService;
+    private final List<Producto> productos;
+    private final DistribucionZipf popularidad;
+
+    private final LongAdder tickets = new LongAdder();
+    private final LongAdder ventasFallidas = new LongAdder();
+    private final LongAdder movimientosFallidos = new LongAdder();
+    private final LongAdder reposiciones = new LongAdder();
+    private final LongAdder reposicionesFallidas = new LongAdder();
+    private volatile boolean midiendo = false;
+
+    GeneradorCarga(PrintStream salida, VentaService ventaService, InventarioService inventarioService,
+                   CajaService cajaService, List<Producto> productos) {
+        this.salida = salida;
+        this.ventaService = ventaService;
+        this.inventarioService = inventarioService;
+        this.cajaService = cajaService;
+        this.productos = productos;
+        this.popularidad = new DistribucionZipf(productos.size(), ZIPF);
+    }
+
+    public static void main(String[] args) throws Exception {
+        PrintStream salida = System.out;
+        if (System.getProperty("db.pool.maximo") == null) {
+            // Una conexión por caja (más el registro de auditoría): la espera del pool no distorsiona la prueba
+            System.setProperty("db.pool.maximo", String.valueOf(TERMINALES + 2));
+        }
+        if (System.getProperty("db.perfil") == null) {
+            try (BaseDatosMemoria base = new BaseDatosMemoria("carga")) {
+                base.cargarProductos(PRODUCTOS);
+                CajaService caja = new CajaService(base.getInventarioService().getDataSource());
+                new GeneradorCarga(salida, base.getVentaService(), base.getInventarioService(), caja, base.getProductos())
+                        .ejecutar(base.getPool());
+            }
+            return;
+        }
+
+        ConfiguracionBD config = ConfiguracionBD.cargar();
+        try (PoolConexiones pool = new PoolConexiones(config)) {
+            RegistroAuditoria auditoria = new RegistroAuditoria(pool.getDataSource());
+            try {
+                InventarioService inventario = new InventarioService(pool.getDataSource(), auditoria);
+                VentaService ventas = new VentaService(inventario, new ResumenVentasService(pool.getDataSource()));
+                List<Producto> conStock = new ArrayList<>();
+                for (Producto p : inventario.getProductos().values()) {
+                    if (p.getStock() > 0) conStock.add(p);
+                }
+                if (conStock.isEmpty()) {
+                    salida.println("❌ No hay productos activos con stock en " + config.getUrl());
+                    return;
+                }
+                // Orden fijo: el rango de popularidad no cambia entre ejecuciones
+                conStock.sort(Comparator.comparing(Producto::getCodigo));
+                salida.println("⚠️ Registrando ventas de prueba en " + config.getUrl());
+                new GeneradorCarga(salida, ventas, inventario, new CajaService(pool.getDataSource()), conStock)
+                        .ejecutar(pool);
+            } finally {
+                auditoria.close();
+            }
+        }
+    }
+
+    void ejecutar(PoolConexiones pool) throws InterruptedException {
+        if (!cajaService.haySesionActiva() && !cajaService.iniciarSesion(0)) {
+            salida.println("⚠️ No se pudo abrir una sesión de caja: no se registrarán movimientos.");
+        }
+        salida.printf(Locale.ROOT, "ℹ️ %d cajas, %d productos (zipf s=%.2f: los 10 más populares son el %.0f%% de las líneas), " +
+                        "%.1f líneas por ticket, calentamiento %ds, medición %ds%n",
+                TERMINALES, productos.size(), ZIPF, popularidad.acumuladaHasta(10) * 100, LINEAS_PROMEDIO,
+                CALENTAMIENTO_SEG, DURACION_SEG);
+
+        // Los servicios informan cada venta por consola: se silencia mientras dura la prueba
+        PrintStream out = System.out, err = System.err;
+        PrintStream nula = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(nula);
+        System.setErr(nula);
+
+        long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(CALENTAMIENTO_SEG + DURACION_SEG);
+        CountDownLatch terminadas = new CountDownLatch(TERMINALES);
+        SplittableRandom semilla = new SplittableRandom(2024);
+        for (int t = 0; t < TERMINALES; t++) {
+            SplittableRandom random = semilla.split();
+            Thread caja = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < fin) {
+                        atenderCliente(random);
+                        if (PAUSA_MS > 0) Thread.sleep(PAUSA_MS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    terminadas.countDown();
+                }
+            }, "caja-" + (t + 1));
+            caja.setDaemon(true);
+            caja.start();
+        }
+
+        ErroresBD.Conteo erroresInicio;
+        long confirmadasInicio, revertidasInicio, reintentosInicio, inicio;
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(CALENTAMIENTO_SEG));
+            Metricas.reiniciar();
+            erroresInicio = ErroresBD.getConteo();
+            confirmadasInicio = ventaService.getVentasConfirmadas();
+            revertidasInicio = ventaService.getVentasRevertidas();
+            reintentosInicio = ventaService.getVentasReintentadas();
+            inicio = System.nanoTime();
+            midiendo = true;
+            for (int s = 1; s <= DURACION_SEG; s++) {
+                if (terminadas.await(1, TimeUnit.SECONDS)) break;
+                out.printf(Locale.ROOT, "  %3ds: %8d ventas (%.0f/s)%n", s, ventaService.getVentasConfirmadas() - confirmadasInicio,
+                        (ventaService.getVentasConfirmadas() - confirmadasInicio) / (double) s);
+            }
+            terminadas.await();
+        } finally {
+            midiendo = false;
+            System.setOut(out);
+            System.setErr(err);
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        informar(segundos, ventaService.getVentasConfirmadas() - confirmadasInicio,
+                ventaService.getVentasRevertidas() - revertidasInicio, ventaService.getVentasReintentadas() - reintentosInicio,
+                erroresInicio, pool.getEstado());
+    }
+
+    // Un cliente en una caja: a veces se repone stock; después se arma el ticket, se cobra y se registra el efectivo
+    private void atenderCliente(SplittableRandom random) {
+        if (random.nextDouble() < REPOSICION) {
+            Producto p = productos.get(popularidad.siguiente(random));
+            boolean ok = inventarioService.actualizarStock(p.getCodigo(), 1 + random.nextInt(24));
+            if (midiendo) {
+                reposiciones.increment();
+                if (!ok) reposicionesFallidas.increment();
+            }
+        }
+
+        VentaTemporal ticket = new VentaTemporal();
+        int lineas = Math.min(LINEAS_MAX, geometrica(random, LINEAS_PROMEDIO));
+        for (int l = 0; l < lineas; l++) {
+            Producto p = productos.get(popularidad.siguiente(random));
+            for (int u = geometrica(random, UNIDADES_PROMEDIO); u > 0; u--) ticket.agregarProducto(p);
+        }
+
+        try (Metricas.Medicion medicion = metricas.iniciar("ticket")) {
+            boolean vendida = ventaService.guardarTicket(ticket.getLineas());
+            boolean cobrada = true;
+            if (vendida && cajaService.haySesionActiva() && random.nextDouble() < EFECTIVO) {
+                cobrada = cajaService.registrarMovimiento(TipoMovimientoCaja.VENTA_EFECTIVO, ticket.getTotal(), "Carga de prueba", null);
+            }
+            if (!vendida || !cobrada) medicion.error();
+            if (midiendo) {
+                tickets.increment();
+                if (!vendida) ventasFallidas.increment();
+                if (!cobrada) movimientosFallidos.increment();
+            }
+        }
+    }
+
+    // Valor >= 1 con distribución geométrica de media 'promedio'
+    private static int geometrica(SplittableRandom random, double promedio) {
+        if (promedio <= 1) return 1;
+        double p = 1.0 / promedio;
+        return 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+    }
+
+    private void informar(double segundos, long confirmadas, long revertidas, long reintentos, ErroresBD.Conteo erroresInicio,
+                          PoolConexiones.EstadoPool pool) {
+        ErroresBD.Conteo errores = ErroresBD.getConteo();
+        salida.println();
+        salida.println("=== Resultado (" + TERMINALES + " cajas, " + String.format(Locale.ROOT, "%.1f", segundos) + " s) ===");
+        salida.printf(Locale.ROOT, "Tickets: %d, ventas confirmadas: %d (%.1f ventas/s), fallidas: %d%n",
+                tickets.sum(), confirmadas, confirmadas / segundos, ventasFallidas.sum());
+        salida.printf(Locale.ROOT, "Rollbacks: %d, reintentos: %d, bloqueos mutuos: %d, esperas de bloqueo agotadas: %d, " +
+                        "sin conexión: %d, violaciones de clave: %d, otros errores SQL: %d%n",
+                revertidas, reintentos, errores.bloqueosMutuos() - erroresInicio.bloqueosMutuos(),
+                errores.esperasAgotadas() - erroresInicio.esperasAgotadas(), errores.sinConexion() - erroresInicio.sinConexion(),
+                errores.violacionesClave() - erroresInicio.violacionesClave(), errores.otros() - erroresInicio.otros());
+        // La consola de los servicios estuvo silenciada: el primer error de cada tipo muestra la causa
+        for (Map.Entry<ErroresBD.Tipo, String> primero : ErroresBD.getPrimeros().entrySet()) {
+            salida.println("  Primer error " + primero.getKey() + ": " + primero.getValue().lines().findFirst().orElse(""));
+        }
+        salida.printf(Locale.ROOT, "Movimientos de caja fallidos: %d, reposiciones: %d (fallidas: %d)%n",
+                movimientosFallidos.sum(), reposiciones.sum(), reposicionesFallidas.sum());
+        salida.println("Pool: " + pool);
+        salida.println("Latencias:");
+        for (Metricas.Resumen r : Metricas.resumenes()) {
+            if (r.llamadas() > 0) salida.println("  " + r);
+        }
+    }
+
+    private static double doble(String clave, double porDefecto) {
+        String valor = System.getProperty(clave);
+        if (valor == null || valor.isBlank()) return porDefecto;
+        try {
+            return Double.parseDouble(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Valor inválido para " + clave + ": '" + valor + "', usando " + porDefecto);
+            return porDefecto;
+        }
+    }
+}
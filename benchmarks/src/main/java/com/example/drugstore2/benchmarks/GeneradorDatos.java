@@ -0,0 +1,508 @@
+package com.example.drugstore2.benchmarks;
+
+import com.example.drugstore2.db.ConfiguracionBD;
+import com.example.drugstore2.db.EsquemaBase;
+import com.example.drugstore2.db.MigracionesBD;
+import com.example.drugstore2.db.PoolConexiones;
+import com.example.drugstore2.model.TipoMovimientoCaja;
+import com.example.drugstore2.service.ResumenVentasService;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Llena una base vacía con un catálogo y un historial de ventas sintéticos, para probar
+ * el historial, las estadísticas y las exportaciones con volúmenes de producción.
+ *
+ * Los datos son reproducibles: con la misma semilla y los mismos parámetros se generan las mismas
+ * ventas, sin importar la cantidad de escritores (cada día usa su propio generador aleatorio y sus
+ * ids de venta y de sesión de caja se calculan de antemano; los de detalle y movimientos se reservan
+ * por día, en el orden en que terminan los escritores). Cada escritor inserta un día completo
+ * en una transacción, con sentencias INSERT de varias filas.
+ *
+ * Distribuciones: popularidad de productos Zipf, líneas por ticket y unidades por línea geométricas,
+ * más ventas los fines de semana y en las horas pico (mediodía y tarde), y una leve tendencia creciente.
+ * Cada día tiene su sesión de caja con apertura, ventas en efectivo, algunos gastos y el cierre.
+ * Al terminar se reconstruye resumen_ventas_diario.
+ *
+ * Uso (contra la base de db.properties, o -Ddb.perfil=embebida para un archivo H2 local):
+ *     java -Ddatos.productos=100000 -Ddatos.ventas=10000000 -Ddatos.escritores=8 \
+ *          -cp benchmarks/target/benchmarks.jar com.example.drugstore2.benchmarks.GeneradorDatos
+ */
+public class GeneradorDatos {
+
+    private static final String[] CATEGORIAS = {
+            "Analgésicos", "Antigripales", "Bebidas", "Cigarrillos", "Cuidado personal", "Dermocosmética",
+            "Galletitas", "Golosinas", "Higiene", "Lácteos", "Limpieza", "Perfumería", "Primeros auxilios",
+            "Snacks", "Suplementos", "Vitaminas"};
+
+    // Apertura y cierre de la caja (segundos desde medianoche)
+    private static final int APERTURA_SEG = 8 * 3600;
+    private static final int CIERRE_SEG = 22 * 3600;
+    private static final double SALDO_INICIAL = 10_000;
+
+    /**
+     * Parámetros del generador. Con {@link #desdePropiedades()} se leen de -Ddatos.*.
+     */
+    public record Parametros(int productos, long ventas, int dias, int escritores, int lote, long semilla,
+                             double zipf, double lineasPromedio, double unidadesPromedio, double manuales,
+                             double efectivo) {
+
+        public static Parametros desdePropiedades() {
+            return new Parametros(
+                    Integer.getInteger("datos.productos", 10_000),
+                    Long.getLong("datos.ventas", 1_000_000),
+                    Integer.getInteger("datos.dias", 365),
+                    Integer.getInteger("datos.escritores", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                    Integer.getInteger("datos.lote", 500),
+                    Long.getLong("datos.semilla", 42),
+                    doble("datos.zipf", 1.0),
+                    doble("datos.lineasPromedio", 3),
+                    doble("datos.unidadesPromedio", 1.3),
+                    doble("datos.manuales", 0.02),
+                    doble("datos.efectivo", 0.6));
+        }
+    }
+
+    private final Parametros parametros;
+    private final DataSource dataSource;
+
+    // Catálogo generado (índice = posición en el catálogo)
+    private String[] codigos;
+    private double[] precios;
+    // Rango de popularidad -> índice del producto (los populares no son siempre los primeros códigos)
+    private int[] porPopularidad;
+    private DistribucionZipf popularidad;
+
+    // Próximos ids libres de detalle_ventas y caja_movimientos (cada día reserva un rango)
+    private final AtomicLong siguienteDetalleId = new AtomicLong(1);
+    private final AtomicLong siguienteMovimientoId = new AtomicLong(1);
+    private final LongAdder ventasInsertadas = new LongAdder();
+    private final LongAdder filasInsertadas = new LongAdder();
+
+    public GeneradorDatos(Parametros parametros, DataSource dataSource) {
+        this.parametros = parametros;
+        this.dataSource = dataSource;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Parametros parametros = Parametros.desdePropiedades();
+        if (System.getProperty("db.pool.maximo") == null) {
+            System.setProperty("db.pool.maximo", String.valueOf(parametros.escritores() + 1));
+        }
+        ConfiguracionBD config = ConfiguracionBD.cargar();
+        try (PoolConexiones pool = new PoolConexiones(config)) {
+            if (config.isCrearEsquema()) new EsquemaBase(pool.getDataSource()).crear();
+            new MigracionesBD(pool.getDataSource()).aplicar();
+            System.out.println("ℹ️ Generando datos en " + config.getUrl() + " con " + parametros);
+            new GeneradorDatos(parametros, pool.getDataSource()).generar();
+            new ResumenVentasService(pool.getDataSource()).reconstruir();
+        }
+    }
+
+    /**
+     * Genera el catálogo y el historial. La base debe estar vacía (sin ventas, caja ni productos,
+     * salvo el producto MANUAL), porque los ids se asignan aquí.
+     */
+    public void generar() throws SQLException, InterruptedException {
+        verificarBaseVacia();
+        long inicio = System.nanoTime();
+        generarCatalogo();
+        System.out.printf(Locale.ROOT, "✅ Catálogo: %d productos en %d categorías (%.1f s).%n",
+                codigos.length, CATEGORIAS.length, (System.nanoTime() - inicio) / 1e9);
+
+        long[] ventasPorDia = repartirVentas();
+        long[] primerId = new long[ventasPorDia.length];
+        for (int d = 1; d < ventasPorDia.length; d++) primerId[d] = primerId[d - 1] + ventasPorDia[d - 1];
+        LocalDate primerDia = LocalDate.now().minusDays(parametros.dias() - 1L);
+
+        ExecutorService escritores = Executors.newFixedThreadPool(parametros.escritores(), r -> {
+            Thread t = new Thread(r, "generador-datos");
+            t.setDaemon(true);
+            return t;
+        });
+        long inicioVentas = System.nanoTime();
+        try {
+            List<Future<?>> dias = new ArrayList<>(ventasPorDia.length);
+            for (int d = 0; d < ventasPorDia.length; d++) {
+                final int dia = d;
+                dias.add(escritores.submit(() -> {
+                    generarDia(dia, primerDia.plusDays(dia), primerId[dia] + 1, (int) ventasPorDia[dia]);
+                    return null;
+                }));
+            }
+            for (Future<?> dia : dias) {
+                while (true) {
+                    try {
+                        dia.get(5, TimeUnit.SECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        informarAvance(inicioVentas);
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof SQLException sql) throw sql;
+            throw new IllegalStateException("Error al generar las ventas", causa);
+        } finally {
+            escritores.shutdownNow();
+        }
+        informarAvance(inicioVentas);
+        // Los ids explícitos no avanzan las secuencias de H2: la aplicación sigue después del último
+        new MigracionesBD(dataSource).sincronizarSecuencias();
+        System.out.printf(Locale.ROOT, "✅ Datos generados en %.1f s.%n", (System.nanoTime() - inicio) / 1e9);
+    }
+
+    private void informarAvance(long inicioNanos) {
+        double segundos = Math.max(0.001, (System.nanoTime() - inicioNanos) / 1e9);
+        System.out.printf(Locale.ROOT, "   %,d de %,d ventas, %,d filas (%.0f filas/s)%n",
+                ventasInsertadas.sum(), parametros.ventas(), filasInsertadas.sum(), filasInsertadas.sum() / segundos);
+    }
+
+    private void verificarBaseVacia() throws SQLException {
+        String[] consultas = {
+                "SELECT COUNT(*) FROM ventas",
+                "SELECT COUNT(*) FROM detalle_ventas",
+                "SELECT COUNT(*) FROM caja_sesiones",
+                "SELECT COUNT(*) FROM caja_movimientos",
+                "SELECT COUNT(*) FROM productos WHERE codigo <> 'MANUAL'"};
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String sql : consultas) {
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    if (rs.next() && rs.getLong(1) > 0) {
+                        throw new SQLException("La base no está vacía (" + sql + " = " + rs.getLong(1) + "). " +
+                                "El generador asigna los ids y necesita tablas vacías.");
+                    }
+                }
+            }
+        }
+    }
+
+    private void generarCatalogo() throws SQLException {
+        SplittableRandom random = new SplittableRandom(parametros.semilla());
+        int n = parametros.productos();
+        codigos = new String[n];
+        precios = new double[n];
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement("INSERT IGNORE INTO categorias (nombre) VALUES (?)")) {
+                for (String c : CATEGORIAS) {
+                    ps.setString(1, c);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            int[] categoriaIds = new int[CATEGORIAS.length];
+            try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM categorias WHERE nombre = ?")) {
+                for (int c = 0; c < CATEGORIAS.length; c++) {
+                    ps.setString(1, CATEGORIAS[c]);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) throw new SQLException("No se encontró la categoría " + CATEGORIAS[c]);
+                        categoriaIds[c] = rs.getInt(1);
+                    }
+                }
+            }
+            // Producto de las líneas manuales (las ventas lo referencian por código)
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT IGNORE INTO productos (codigo, nombre, precio_venta, precio_costo, stock, categoria_id, activo, stock_minimo) " +
+                    "VALUES ('MANUAL', 'Venta manual', 0, 0, 0, NULL, FALSE, 0)")) {
+                ps.executeUpdate();
+            }
+
+            try (InsercionPorLotes productos = new InsercionPorLotes(conn, "productos",
+                    new String[]{"codigo", "nombre", "precio_venta", "precio_costo", "stock", "categoria_id", "activo", "stock_minimo"},
+                    parametros.lote())) {
+                for (int i = 0; i < n; i++) {
+                    int categoria = random.nextInt(CATEGORIAS.length);
+                    // Costos entre $50 y $20.000, más densos en los valores bajos; margen de 25% a 80%
+                    double costo = redondear(Math.exp(Math.log(50) + random.nextDouble() * Math.log(20_000.0 / 50)));
+                    double precio = redondear(costo * (1.25 + random.nextDouble() * 0.55));
+                    codigos[i] = String.format("779%010d", i);
+                    precios[i] = precio;
+                    int minimo = random.nextInt(11);
+                    productos.agregar(codigos[i], CATEGORIAS[categoria] + " " + (i + 1), precio, costo,
+                            random.nextInt(500), categoriaIds[categoria], true, minimo);
+                }
+            }
+            conn.commit();
+        }
+        filasInsertadas.add(n);
+
+        porPopularidad = new int[n];
+        for (int i = 0; i < n; i++) porPopularidad[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = porPopularidad[i];
+            porPopularidad[i] = porPopularidad[j];
+            porPopularidad[j] = t;
+        }
+        popularidad = new DistribucionZipf(n, parametros.zipf());
+    }
+
+    // Ventas de cada día: más los viernes y sábados, menos los domingos, ruido diario y tendencia creciente
+    private long[] repartirVentas() {
+        SplittableRandom random = new SplittableRandom(parametros.semilla() + 1);
+        int dias = parametros.dias();
+        LocalDate primerDia = LocalDate.now().minusDays(dias - 1L);
+        double[] pesos = new double[dias];
+        double suma = 0;
+        for (int d = 0; d < dias; d++) {
+            DayOfWeek dow = primerDia.plusDays(d).getDayOfWeek();
+            double semana = switch (dow) {
+                case FRIDAY -> 1.15;
+                case SATURDAY -> 1.3;
+                case SUNDAY -> 0.8;
+                default -> 1.0;
+            };
+            double tendencia = 0.8 + 0.4 * d / Math.max(1, dias - 1);
+            pesos[d] = Math.max(0.1, semana * tendencia * (1 + 0.15 * gaussiana(random)));
+            suma += pesos[d];
+        }
+        long[] ventas = new long[dias];
+        long asignadas = 0;
+        for (int d = 0; d < dias; d++) {
+            ventas[d] = (long) (parametros.ventas() * pesos[d] / suma);
+            asignadas += ventas[d];
+        }
+        for (int d = 0; asignadas < parametros.ventas(); d = (d + 1) % dias, asignadas++) ventas[d]++;
+        return ventas;
+    }
+
+    // Un día completo: primero se arma en memoria (así se sabe cuántos ids de detalle y de movimientos
+    // necesita) y después se inserta en una transacción
+    private void generarDia(int dia, LocalDate fecha, long primerVentaId, int ventas) throws SQLException {
+        SplittableRandom random = new SplittableRandom(parametros.semilla() * 1_000_003L + dia);
+        int[] segundos = new int[ventas];
+        for (int v = 0; v < ventas; v++) segundos[v] = horaDeVenta(random);
+        Arrays.sort(segundos);
+
+        int sesionId = dia + 1;
+        LocalDateTime apertura = fecha.atStartOfDay().plusSeconds(APERTURA_SEG);
+        LocalDateTime cierre = fecha.atStartOfDay().plusSeconds(CIERRE_SEG);
+        double saldo = SALDO_INICIAL;
+
+        // Filas sin la primera columna (id), que se completa al insertar
+        List<Object[]> filasVentas = new ArrayList<>(ventas);
+        List<Object[]> filasDetalles = new ArrayList<>((int) (ventas * parametros.lineasPromedio()));
+        List<Object[]> filasMovimientos = new ArrayList<>((int) (ventas * parametros.efectivo()) + 8);
+
+        filasMovimientos.add(new Object[]{null, sesionId, Timestamp.valueOf(apertura), TipoMovimientoCaja.APERTURA.name(),
+                SALDO_INICIAL, "Apertura de caja", null});
+        for (int v = 0; v < ventas; v++) {
+            long ventaId = primerVentaId + v;
+            Timestamp fechaHora = Timestamp.valueOf(fecha.atStartOfDay().plusSeconds(segundos[v]));
+            double total = 0;
+            int lineas = geometrica(random, parametros.lineasPromedio(), 40);
+            for (int l = 0; l < lineas; l++) {
+                int cantidad = geometrica(random, parametros.unidadesPromedio(), 24);
+                double subtotal;
+                if (random.nextDouble() < parametros.manuales()) {
+                    subtotal = redondear((100 + random.nextInt(3000)) * cantidad);
+                    filasDetalles.add(new Object[]{null, ventaId, "MANUAL", cantidad, subtotal, "Artículo sin código"});
+                } else {
+                    int producto = porPopularidad[popularidad.siguiente(random)];
+                    subtotal = redondear(precios[producto] * cantidad);
+                    filasDetalles.add(new Object[]{null, ventaId, codigos[producto], cantidad, subtotal, null});
+                }
+                total += subtotal;
+            }
+            total = redondear(total);
+            filasVentas.add(new Object[]{ventaId, fechaHora, total});
+            if (random.nextDouble() < parametros.efectivo()) {
+                filasMovimientos.add(new Object[]{null, sesionId, fechaHora, TipoMovimientoCaja.VENTA_EFECTIVO.name(), total,
+                        "Venta ID: " + ventaId, ventaId});
+                saldo += total;
+            }
+        }
+        // Algunos gastos del día (proveedores, limpieza) y, a veces, un retiro antes del cierre
+        for (int g = random.nextInt(4); g > 0; g--) {
+            double monto = -redondear(200 + random.nextInt(5000));
+            filasMovimientos.add(new Object[]{null, sesionId, Timestamp.valueOf(fecha.atStartOfDay().plusSeconds(horaDeVenta(random))),
+                    TipoMovimientoCaja.GASTO.name(), monto, "Gasto", null});
+            saldo += monto;
+        }
+        if (saldo > 50_000 && random.nextDouble() < 0.5) {
+            double monto = -redondear(saldo * 0.5);
+            filasMovimientos.add(new Object[]{null, sesionId, Timestamp.valueOf(cierre.minusMinutes(5)), TipoMovimientoCaja.RETIRO.name(),
+                    monto, "Retiro", null});
+            saldo += monto;
+        }
+        // La mayoría de los días cierra justo; algunos con una diferencia chica
+        double diferencia = random.nextDouble() < 0.1 ? redondear((random.nextDouble() - 0.5) * 1000) : 0.0;
+        double calculado = redondear(saldo);
+        if (diferencia != 0.0) {
+            filasMovimientos.add(new Object[]{null, sesionId, Timestamp.valueOf(cierre), TipoMovimientoCaja.AJUSTE_CIERRE.name(),
+                    diferencia, "Ajuste por diferencia en cierre", null});
+        }
+
+        // Ids explícitos: no depende de cómo cada base genera los autoincrementales con varios escritores
+        long primerDetalleId = siguienteDetalleId.getAndAdd(filasDetalles.size());
+        for (int i = 0; i < filasDetalles.size(); i++) filasDetalles.get(i)[0] = primerDetalleId + i;
+        long primerMovimientoId = siguienteMovimientoId.getAndAdd(filasMovimientos.size());
+        for (int i = 0; i < filasMovimientos.size(); i++) filasMovimientos.get(i)[0] = primerMovimientoId + i;
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO caja_sesiones (id, fecha_apertura, fecha_cierre, saldo_inicial, saldo_final_calculado, " +
+                    "saldo_final_real, diferencia, activa) VALUES (?, ?, ?, ?, ?, ?, ?, FALSE)")) {
+                ps.setInt(1, sesionId);
+                ps.setTimestamp(2, Timestamp.valueOf(apertura));
+                ps.setTimestamp(3, Timestamp.valueOf(cierre));
+                ps.setDouble(4, SALDO_INICIAL);
+                ps.setDouble(5, calculado);
+                ps.setDouble(6, redondear(calculado + diferencia));
+                ps.setDouble(7, diferencia);
+                ps.executeUpdate();
+            }
+            // En orden de dependencia (por si la base tiene claves foráneas): ventas, detalles, movimientos
+            insertar(conn, "ventas", new String[]{"id", "fecha_hora", "total"}, filasVentas);
+            insertar(conn, "detalle_ventas",
+                    new String[]{"id", "venta_id", "producto_codigo", "cantidad", "subtotal", "descripcion_manual"}, filasDetalles);
+            insertar(conn, "caja_movimientos",
+                    new String[]{"id", "sesion_id", "fecha_hora", "tipo_movimiento", "monto", "descripcion", "venta_id"}, filasMovimientos);
+            conn.commit();
+        }
+        ventasInsertadas.add(ventas);
+        filasInsertadas.add(1L + filasVentas.size() + filasDetalles.size() + filasMovimientos.size());
+    }
+
+    private void insertar(Connection conn, String tabla, String[] columnas, List<Object[]> filas) throws SQLException {
+        try (InsercionPorLotes lote = new InsercionPorLotes(conn, tabla, columnas, parametros.lote())) {
+            for (Object[] fila : filas) lote.agregar(fila);
+        }
+    }
+
+    // Segundos desde medianoche: parte pareja durante el horario y parte en los picos de mediodía y de la tarde
+    private static int horaDeVenta(SplittableRandom random) {
+        double r = random.nextDouble();
+        double segundos;
+        if (r < 0.6) {
+            segundos = APERTURA_SEG + random.nextDouble() * (CIERRE_SEG - APERTURA_SEG);
+        } else if (r < 0.8) {
+            segundos = 12.5 * 3600 + gaussiana(random) * 3600;
+        } else {
+            segundos = 19 * 3600 + gaussiana(random) * 3600;
+        }
+        return (int) Math.max(APERTURA_SEG, Math.min(CIERRE_SEG - 1, segundos));
+    }
+
+    // Valor entre 1 y 'maximo' con distribución geométrica de media 'promedio'
+    private static int geometrica(SplittableRandom random, double promedio, int maximo) {
+        if (promedio <= 1) return 1;
+        double p = 1.0 / promedio;
+        return Math.min(maximo, 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p)));
+    }
+
+    private static double gaussiana(SplittableRandom random) {
+        // Box-Muller
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static double redondear(double valor) {
+        return Math.round(valor * 100) / 100.0;
+    }
+
+    private static double doble(String clave, double porDefecto) {
+        String valor = System.getProperty(clave);
+        if (valor == null || valor.isBlank()) return porDefecto;
+        try {
+            return Double.parseDouble(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Valor inválido para " + clave + ": '" + valor + "', usando " + porDefecto);
+            return porDefecto;
+        }
+    }
+
+    /**
+     * INSERT de varias filas por sentencia ({@code VALUES (...), (...), ...}): una ida al servidor
+     * por lote en cualquier base, sin depender de que el driver reescriba los addBatch.
+     */
+    private static final class InsercionPorLotes implements AutoCloseable {
+        private final Connection conn;
+        private final String tabla;
+        private final String[] columnas;
+        private final int filasPorLote;
+        private final Object[] pendientes;
+        private int cantidad = 0;
+        private PreparedStatement completo;
+
+        InsercionPorLotes(Connection conn, String tabla, String[] columnas, int filasPorLote) {
+            this.conn = conn;
+            this.tabla = tabla;
+            this.columnas = columnas;
+            this.filasPorLote = Math.max(1, filasPorLote);
+            this.pendientes = new Object[this.filasPorLote * columnas.length];
+        }
+
+        void agregar(Object... valores) throws SQLException {
+            System.arraycopy(valores, 0, pendientes, cantidad * columnas.length, columnas.length);
+            if (++cantidad == filasPorLote) {
+                if (completo == null) completo = conn.prepareStatement(sql(filasPorLote));
+                ejecutar(completo);
+            }
+        }
+
+        // Inserta las filas pendientes (lote incompleto incluido)
+        void vaciar() throws SQLException {
+            if (cantidad == 0) return;
+            if (cantidad == filasPorLote && completo != null) {
+                ejecutar(completo);
+                return;
+            }
+            try (PreparedStatement resto = conn.prepareStatement(sql(cantidad))) {
+                ejecutar(resto);
+            }
+        }
+
+        private void ejecutar(PreparedStatement ps) throws SQLException {
+            int total = cantidad * columnas.length;
+            for (int i = 0; i < total; i++) ps.setObject(i + 1, pendientes[i]);
+            ps.executeUpdate();
+            cantidad = 0;
+        }
+
+        private String sql(int filas) {
+            String fila = "(" + "?, ".repeat(columnas.length - 1) + "?)";
+            StringBuilder sb = new StringBuilder(64 + filas * (fila.length() + 2));
+            sb.append("INSERT INTO ").append(tabla).append(" (").append(String.join(", ", columnas)).append(") VALUES ");
+            for (int f = 0; f < filas; f++) {
+                if (f > 0) sb.append(", ");
+                sb.append(fila);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                vaciar();
+            } finally {
+                if (completo != null) completo.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.drugstore2.benchmarks;
+
+import com.example.drugstore2.model.LineaTicket;
+import com.example.drugstore2.model.Producto;
+import com.example.drugstore2.model.VentaTemporal;
+import com.example.drugstore2.service.VentaService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guardado de una venta: el agrupado de unidades en líneas que hace VentaService.guardarVenta
+ * (sin base de datos) y la venta completa contra la base en memoria.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuardarVentaBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int unidades;
+
+    private BaseDatosMemoria base;
+    private VentaService ventaService;
+    private final List<Producto> venta = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        base = new BaseDatosMemoria("guardar_venta_" + unidades);
+        base.cargarProductos(500);
+        ventaService = base.getVentaService();
+        // Unidades sueltas como las arma la venta manual: algunos productos repetidos
+        Random random = new Random(3);
+        List<Producto> productos = base.getProductos();
+        for (int i = 0; i < unidades; i++) {
+            venta.add(productos.get(random.nextInt(Math.max(1, unidades / 2))));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        base.close();
+    }
+
+    @Benchmark
+    public List<LineaTicket> agruparUnidades() {
+        VentaTemporal ticket = new VentaTemporal();
+        venta.forEach(ticket::agregarProducto);
+        return ticket.getLineas();
+    }
+
+    @Benchmark
+    public boolean guardarVenta() {
+        return ventaService.guardarVenta(venta);
+    }
+}
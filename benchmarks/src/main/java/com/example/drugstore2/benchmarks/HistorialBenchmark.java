@@ -0,0 +1,64 @@
+package com.example.drugstore2.benchmarks;
+
+import com.example.drugstore2.service.VentaService;
+import com.example.drugstore2.service.VentaService.CursorHistorial;
+import com.example.drugstore2.service.VentaService.PaginaHistorial;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carga de páginas del historial (lectura de filas y creación de LineaVenta).
+ * Con {@code -prof gc} se ven los bytes asignados por página.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistorialBenchmark {
+
+    private static final int VENTAS = 5000;
+    private static final int LINEAS_POR_VENTA = 3;
+
+    @Param({"20", "100"})
+    public int tamanoPagina;
+
+    private BaseDatosMemoria base;
+    private VentaService ventaService;
+    // Cursor a mitad del historial (la paginación por clave no debería hacerla más lenta)
+    private CursorHistorial mitad;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        base = new BaseDatosMemoria("historial_" + tamanoPagina);
+        base.cargarProductos(200);
+        base.cargarVentas(VENTAS, LINEAS_POR_VENTA);
+        ventaService = base.getVentaService();
+
+        CursorHistorial cursor = null;
+        for (int vistas = 0; vistas < VENTAS / 2; ) {
+            PaginaHistorial pagina = ventaService.obtenerPaginaHistorial(cursor, tamanoPagina);
+            cursor = pagina.ultima();
+            vistas += pagina.ventas();
+        }
+        mitad = cursor;
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        base.close();
+    }
+
+    @Benchmark
+    public PaginaHistorial primeraPagina() throws SQLException {
+        return ventaService.obtenerPaginaHistorial(null, tamanoPagina);
+    }
+
+    @Benchmark
+    public PaginaHistorial paginaIntermedia() throws SQLException {
+        return ventaService.obtenerPaginaHistorial(mitad, tamanoPagina);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.drugstore2.benchmarks;
+
+import com.example.drugstore2.model.Producto;
+import com.example.drugstore2.service.VentaStateService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ticket de la venta en curso: resincronización completa de la lista (actualizarUIVenta) y
+ * escaneo de un ticket entero, en el hilo de JavaFX. Cada operación incluye la ida y vuelta
+ * al hilo de JavaFX; {@link #idaYVueltaFx()} mide solo ese costo para poder descontarlo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dglass.platform=Monocle", "-Dmonocle.platform=Headless", "-Dprism.order=sw"})
+public class TicketBenchmark {
+
+    // Productos distintos en el ticket (los demás escaneos suman cantidad a una línea existente)
+    private static final int PRODUCTOS_DISTINTOS = 100;
+
+    @Param({"1", "10", "100", "1000"})
+    public int unidades;
+
+    private VentaStateService estado;
+    private final List<Producto> escaneos = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        FxSinPantalla.iniciar();
+        List<Producto> productos = new ArrayList<>();
+        for (int i = 0; i < PRODUCTOS_DISTINTOS; i++) {
+            productos.add(new Producto(String.format("779%010d", i), "Producto " + i, 100 + i, 1000));
+        }
+        for (int i = 0; i < unidades; i++) escaneos.add(productos.get(i % PRODUCTOS_DISTINTOS));
+
+        estado = FxSinPantalla.ejecutar(() -> {
+            VentaStateService s = new VentaStateService();
+            escaneos.forEach(s::agregarProducto);
+            s.aplicarPendientes();
+            return s;
+        });
+    }
+
+    @Benchmark
+    public int actualizarUIVenta() {
+        return FxSinPantalla.ejecutar(() -> {
+            estado.actualizarUIVenta();
+            estado.aplicarPendientes();
+            return estado.getTicketItems().size();
+        });
+    }
+
+    @Benchmark
+    public int escanearTicket() {
+        return FxSinPantalla.ejecutar(() -> {
+            estado.limpiarVenta();
+            for (Producto p : escaneos) estado.agregarProducto(p);
+            estado.aplicarPendientes();
+            return estado.getTicketItems().size();
+        });
+    }
+
+    @Benchmark
+    public int idaYVueltaFx() {
+        return FxSinPantalla.ejecutar(() -> 0);
+    }
+}
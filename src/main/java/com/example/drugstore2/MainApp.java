@@ -1,15 +1,26 @@
 package com.example.drugstore2;
 
 import com.example.drugstore2.controller.*;
+import com.example.drugstore2.db.ConfiguracionBD;
+import com.example.drugstore2.db.EsquemaBase;
+import com.example.drugstore2.db.MigracionesBD;
+import com.example.drugstore2.db.PoolConexiones;
 import com.example.drugstore2.service.*;
 import com.example.drugstore2.util.AlertUtil;
+import com.example.drugstore2.util.ExportadorMetricas;
+import com.example.drugstore2.util.TiemposInicio;
+import com.zaxxer.hikari.pool.HikariPool;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.Event;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
 import javafx.scene.image.Image;
@@ -18,12 +29,31 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 import javafx.scene.layout.Pane;
+import javax.sql.DataSource;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainApp extends Application {
 
+    // Pool de conexiones compartido por todos los servicios
+    private PoolConexiones poolConexiones;
+    // Escritura diferida de log_eventos (se vacía al cerrar, antes que el pool)
+    private RegistroAuditoria registroAuditoria;
+    // Escribe las métricas de los servicios a un archivo cada cierto tiempo (null si está desactivado)
+    private ExportadorMetricas exportadorMetricas;
+    // Ventas hechas sin conexión y su reenvío a la base (null si el diario está desactivado)
+    private DiarioVentas diarioVentas;
+    private ReenvioDiarioVentas reenvioDiario;
+
     // Servicios (serán inicializados y pasados a los controladores)
     private InventarioService inventarioService;
     private VentaService ventaService;
@@ -31,6 +61,18 @@ public class MainApp extends Application {
     private CajaService cajaService;
     private VentaStateService ventaStateService; // Para estado compartido de venta
 
+    // Construir las pestañas no elegidas después de mostrar la ventana (false = solo al elegirlas)
+    private static final boolean PRECARGAR_PESTANAS =
+            Boolean.parseBoolean(System.getProperty("inicio.precargarPestanas", "true"));
+    // Opcional: confirmar las ventas al quedar en el diario local y registrarlas en la base en segundo
+    // plano, sin diálogo de confirmación (por defecto se espera el commit; requiere el diario de ventas)
+    private static final boolean CONFIRMACION_ASINCRONA =
+            Boolean.parseBoolean(System.getProperty("ventas.confirmacionAsincrona", "false"));
+    // Duración de cada fase del arranque (consola y pestaña de diagnóstico)
+    private final TiemposInicio tiemposInicio = new TiemposInicio();
+    // Pestañas todavía sin construir -> ruta de su FXML (en el orden de las pestañas)
+    private final Map<Tab, String> pestanasPendientes = new LinkedHashMap<>();
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -46,16 +88,16 @@ public class MainApp extends Application {
         TabPane tabPane = new TabPane();
         tabPane.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
 
-        // --- Cargar Pestañas desde FXML ---
+        // --- Pestañas: la de venta se construye ya; las demás al elegirlas o después de mostrar la ventana ---
         try {
-            // ... (llamadas a loadTab sin cambios) ...
-            loadTab(tabPane, "🛒 Venta con Escáner", "/com/example/venta-escaner-view.fxml", VentaEscanerController.class);
-            loadTab(tabPane, "⌨️ Venta Manual", "/com/example/venta-manual-view.fxml", VentaManualController.class);
-            loadTab(tabPane, "📦 Gestión de Stock", "/com/example/stock-view.fxml", StockController.class);
-            loadTab(tabPane, "📜 Historial de Ventas", "/com/example/historial-ventas-view.fxml", HistorialVentasController.class);
-            loadTab(tabPane, "📊 Estadísticas", "/com/example/estadisticas-view.fxml", EstadisticasController.class);
-            loadTab(tabPane, "↩️ Devoluciones", "/com/example/devoluciones-view.fxml .fxml", DevolucionesController.class);
-            loadTab(tabPane, "💰 Gestión de Caja", "/com/example/caja-view.fxml", CajaController.class);
+            agregarPestana(tabPane, "🛒 Venta con Escáner", "/com/example/venta-escaner-view.fxml", true);
+            agregarPestana(tabPane, "⌨️ Venta Manual", "/com/example/venta-manual-view.fxml", false);
+            agregarPestana(tabPane, "📦 Gestión de Stock", "/com/example/stock-view.fxml", false);
+            agregarPestana(tabPane, "📜 Historial de Ventas", "/com/example/historial-ventas-view.fxml", false);
+            agregarPestana(tabPane, "📊 Estadísticas", "/com/example/estadisticas-view.fxml", false);
+            agregarPestana(tabPane, "↩️ Devoluciones", "/com/example/devoluciones-view.fxml .fxml", false);
+            agregarPestana(tabPane, "💰 Gestión de Caja", "/com/example/caja-view.fxml", false);
+            agregarPestana(tabPane, "🩺 Diagnóstico", "/com/example/diagnostico-view.fxml", false);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -68,6 +110,7 @@ public class MainApp extends Application {
                     "Ocurrió un error al cargar o inicializar las pestañas.\n" + e.getMessage());
             return;
         }
+        tiemposInicio.fase("pestaña de venta");
 
         // --- Configuración de Escena y Stage ---
         BorderPane mainLayout = createLayoutWithBranding(tabPane);
@@ -101,55 +144,184 @@ public class MainApp extends Application {
         primaryStage.setOnCloseRequest(e -> closeServices());
         primaryStage.setMaximized(true); // Maximizar sigue estando bien
         primaryStage.show();
+        tiemposInicio.fase("ventana");
+        System.out.println("ℹ️ " + tiemposInicio + ". Desde el inicio de la JVM: " + TiemposInicio.getMsDesdeJvm() + " ms.");
+
+        if (PRECARGAR_PESTANAS) {
+            // Después del primer dibujo de la ventana, una pestaña por vuelta del hilo de JavaFX
+            Platform.runLater(this::construirSiguientePendiente);
+        }
     }
 
     // Método para inicializar los servicios
     private boolean initializeServices() {
+        // Hilos para inicializar en paralelo los servicios que no dependen entre sí
+        ExecutorService arranque = Executors.newFixedThreadPool(3, r -> {
+            Thread t = new Thread(r, "inicio-servicios");
+            t.setDaemon(true);
+            return t;
+        });
         try {
+            ConfiguracionBD config = ConfiguracionBD.cargar();
             // Asegurarse que el driver esté cargado
-            Class.forName("com.mysql.cj.jdbc.Driver");
+            Class.forName(config.getDriver());
+
+            // Crear el pool (falla aquí si la BD no está disponible)
+            poolConexiones = new PoolConexiones(config);
+
+            // Perfil embebido: la base puede estar vacía, crear las tablas base que falten
+            if (config.isCrearEsquema()) {
+                new EsquemaBase(poolConexiones.getDataSource()).crear();
+            }
 
-            // Inicializar InventarioService (que maneja la conexión)
-            inventarioService = new InventarioService();
-            if (inventarioService.getConnection() == null) {
-                throw new SQLException("La conexión a la base de datos falló en InventarioService.");
+            // Poner el esquema al día (tablas nuevas e índices) antes de usarlo
+            MigracionesBD migraciones = new MigracionesBD(poolConexiones.getDataSource());
+            migraciones.aplicar();
+            tiemposInicio.fase("conexión y esquema");
+            if (Boolean.parseBoolean(config.get("db.verificarPlanes", "true"))) {
+                // Solo avisa por consola si alguna consulta no usa índices: no hace falta esperarlo
+                arranque.execute(migraciones::verificarPlanes);
             }
 
-            // Inicializar otros servicios pasando la conexión o el servicio necesario
-            ventaService = new VentaService(inventarioService);
-            estadisticasService = new EstadisticasService(inventarioService.getConnection());
-            cajaService = new CajaService(inventarioService.getConnection());
+            // Inicializar los servicios con el pool compartido. Catálogo, resumen de ventas y caja
+            // leen la base al crearse y no dependen entre sí: se cargan a la vez
+            DataSource dataSource = poolConexiones.getDataSource();
+            registroAuditoria = new RegistroAuditoria(dataSource);
+            CompletableFuture<InventarioService> inventario = enParalelo(arranque, "catálogo",
+                    () -> new InventarioService(dataSource, registroAuditoria, config.getArchivoInstantaneaCatalogo()));
+            CompletableFuture<ResumenVentasService> resumen = enParalelo(arranque, "resumen de ventas", () -> {
+                ResumenVentasService resumenVentas = new ResumenVentasService(dataSource);
+                resumenVentas.inicializar(); // Completa el resumen desde el historial si hace falta
+                return resumenVentas;
+            });
+            CompletableFuture<CajaService> caja = enParalelo(arranque, "sesión de caja", () -> new CajaService(dataSource));
+
+            estadisticasService = new EstadisticasService(dataSource);
             ventaStateService = new VentaStateService(); // Servicio de estado UI
+            exportadorMetricas = ExportadorMetricas.desdePropiedades();
+
+            inventarioService = esperar(inventario);
+            diarioVentas = abrirDiarioVentas(config);
+            ventaService = new VentaService(inventarioService, esperar(resumen), diarioVentas);
+            if (diarioVentas != null) {
+                reenvioDiario = new ReenvioDiarioVentas(diarioVentas, ventaService, registroAuditoria);
+            }
+            cajaService = esperar(caja);
+            tiemposInicio.fase("servicios");
 
             System.out.println("Servicios inicializados correctamente.");
             return true;
 
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
-            AlertUtil.showAlert(Alert.AlertType.ERROR, "Error Crítico", "Driver MySQL no encontrado. Asegúrate que la dependencia mysql-connector-j esté en pom.xml.");
+            AlertUtil.showAlert(Alert.AlertType.ERROR, "Error Crítico", "Driver de base de datos no encontrado (" + e.getMessage() + "). Asegúrate que la dependencia (mysql-connector-j o h2) esté en pom.xml.");
             return false;
         } catch (SQLException e) {
             e.printStackTrace();
-            AlertUtil.showAlert(Alert.AlertType.ERROR, "Error Crítico de Conexión", "No se pudo conectar a la base de datos.\nVerifica la URL, usuario, contraseña y que el servidor MySQL esté corriendo.\nDetalle: " + e.getMessage());
+            AlertUtil.showAlert(Alert.AlertType.ERROR, "Error Crítico de Base de Datos", "No se pudo actualizar el esquema de la base de datos.\nDetalle: " + e.getMessage());
+            return false;
+        } catch (HikariPool.PoolInitializationException e) {
+            e.printStackTrace();
+            AlertUtil.showAlert(Alert.AlertType.ERROR, "Error Crítico de Conexión", "No se pudo conectar a la base de datos.\nVerifica la URL, usuario, contraseña (db.properties) y que el servidor MySQL esté corriendo.\nDetalle: " + e.getMessage());
             return false;
         } catch (Exception e) {
             e.printStackTrace();
             AlertUtil.showAlert(Alert.AlertType.ERROR, "Error Crítico Inesperado", "Ocurrió un error inesperado durante la inicialización.\nDetalle: " + e.getMessage());
             return false;
+        } finally {
+            arranque.shutdown(); // La verificación de planes, si sigue, termina sola
+        }
+    }
+
+    // Sin diario se puede seguir vendiendo con conexión: solo avisar
+    private DiarioVentas abrirDiarioVentas(ConfiguracionBD config) {
+        Path archivo = config.getArchivoDiarioVentas();
+        if (archivo == null) return null;
+        try {
+            return DiarioVentas.abrir(archivo);
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo abrir el diario de ventas (" + archivo + "): " + e.getMessage()
+                    + ". Sin conexión no se podrán guardar ventas.");
+            return null;
+        }
+    }
+
+    // Ejecuta la tarea en el executor de arranque, midiendo su duración
+    private <T> CompletableFuture<T> enParalelo(ExecutorService executor, String nombre, Callable<T> tarea) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return tiemposInicio.medir(nombre, tarea);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    // Espera el resultado y relanza el error original (para que lo atrapen los catch de initializeServices)
+    private static <T> T esperar(CompletableFuture<T> futuro) throws Exception {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception causa) throw causa;
+            throw e;
         }
     }
 
-    // Método genérico para cargar una pestaña desde FXML
-    private <T> void loadTab(TabPane tabPane, String tabTitle, String fxmlPath, Class<T> controllerClass) throws IOException {
+    /**
+     * Agrega una pestaña. Si {@code construirAhora} es false, solo se agrega el título con un indicador
+     * de carga: el FXML y su controlador se construyen al elegirla por primera vez o, con
+     * inicio.precargarPestanas=true (por defecto), después de mostrar la ventana.
+     */
+    private void agregarPestana(TabPane tabPane, String tabTitle, String fxmlPath, boolean construirAhora) throws IOException {
+        Tab tab = new Tab(tabTitle);
+        tabPane.getTabs().add(tab);
+        if (construirAhora) {
+            loadTab(tab, fxmlPath);
+            return;
+        }
+        tab.setContent(new StackPane(new ProgressIndicator()));
+        pestanasPendientes.put(tab, fxmlPath);
+        tab.setOnSelectionChanged(event -> {
+            if (tab.isSelected()) construirPendiente(tab);
+        });
+    }
+
+    // Construye una pestaña pendiente (no hace nada si ya se construyó)
+    private void construirPendiente(Tab tab) {
+        String fxmlPath = pestanasPendientes.remove(tab);
+        if (fxmlPath == null) return;
+        try {
+            loadTab(tab, fxmlPath);
+        } catch (Exception e) {
+            e.printStackTrace();
+            tab.setContent(new StackPane(new Label("No se pudo cargar la pestaña.\n" + e.getMessage())));
+            AlertUtil.showAlert(Alert.AlertType.ERROR, "Error de Carga",
+                    "No se pudo cargar la pestaña '" + tab.getText() + "'.\nDetalle: " + e.getMessage());
+        }
+    }
+
+    // Construye la próxima pestaña pendiente y cede el hilo de JavaFX antes de la siguiente
+    private void construirSiguientePendiente() {
+        if (pestanasPendientes.isEmpty()) {
+            tiemposInicio.fase("resto de pestañas");
+            System.out.println("ℹ️ " + tiemposInicio + ".");
+            return;
+        }
+        construirPendiente(pestanasPendientes.keySet().iterator().next());
+        Platform.runLater(this::construirSiguientePendiente);
+    }
+
+    // Carga el FXML de una pestaña, le pasa los servicios al controlador y configura sus acciones
+    private void loadTab(Tab tab, String fxmlPath) throws IOException {
+        long inicio = System.nanoTime();
         FXMLLoader loader = new FXMLLoader(getClass().getResource(fxmlPath));
         // Cambiar a Pane o Parent para más generalidad, Node puede ser muy básico
         Pane content = loader.load(); // Usar Pane o Parent
-        T controller = loader.getController();
+        Object controller = loader.getController();
 
         injectServices(controller);
-
-        Tab tab = new Tab(tabTitle, content);
-        tabPane.getTabs().add(tab);
+        tab.setContent(content);
+        tab.setOnSelectionChanged(null);
 
         // Configurar acciones al seleccionar la pestaña (si es necesario)
         if (controller instanceof StockController stockCtrl) {
@@ -180,8 +352,17 @@ public class MainApp extends Application {
                     histCtrl.recargarHistorial(); // Llama al método público del controlador
                 }
             });
+        } else if (controller instanceof DiagnosticoController diagCtrl) {
+            // Solo se refresca mientras está visible
+            tab.setOnSelectionChanged(event -> diagCtrl.setVisible(tab.isSelected()));
         }
         // Puedes añadir más `else if` para otras pestañas si necesitan refrescarse
+
+        // Si se construyó porque la eligieron, la acción de selección ya pasó: ejecutarla ahora
+        if (tab.isSelected() && tab.getOnSelectionChanged() != null) {
+            tab.getOnSelectionChanged().handle(new Event(Tab.SELECTION_CHANGED_EVENT));
+        }
+        System.out.printf("Pestaña '%s' construida en %.0f ms.%n", tab.getText(), (System.nanoTime() - inicio) / 1_000_000.0);
     }
 
     // Método para inyectar servicios en los controladores (simplificado)
@@ -192,6 +373,7 @@ public class MainApp extends Application {
             c.setInventarioService(inventarioService);
             c.setVentaService(ventaService);
             c.setVentaStateService(ventaStateService);
+            c.setColaVentas(CONFIRMACION_ASINCRONA ? reenvioDiario : null);
         } else if (controller instanceof VentaManualController c) {
             c.setVentaStateService(ventaStateService); // Solo necesita estado
         } else if (controller instanceof HistorialVentasController c) {
@@ -204,6 +386,12 @@ public class MainApp extends Application {
             c.setInventarioService(inventarioService);
         } else if (controller instanceof CajaController c) { // Añadido
             c.setCajaService(cajaService);
+        } else if (controller instanceof DiagnosticoController c) {
+            c.setRegistroAuditoria(registroAuditoria);
+            c.setVentaStateService(ventaStateService);
+            c.setExportadorMetricas(exportadorMetricas);
+            c.setTiemposInicio(tiemposInicio);
+            c.setReenvioDiario(reenvioDiario);
         }
         // Añadir más controladores aquí si necesitan servicios
     }
@@ -282,12 +470,32 @@ public class MainApp extends Application {
     // Método para cerrar recursos, como la conexión a BD
     private void closeServices() {
         System.out.println("Cerrando aplicación y servicios...");
-        if (inventarioService != null && inventarioService.getConnection() != null) {
+        if (inventarioService != null) {
+            inventarioService.guardarInstantanea(); // Con el stock del cierre, para el próximo inicio
+        }
+        if (reenvioDiario != null) {
+            reenvioDiario.close(); // Espera a que termine la pasada en curso; lo pendiente se envía al próximo inicio
+        }
+        if (diarioVentas != null) {
+            try {
+                diarioVentas.close();
+            } catch (IOException ex) {
+                System.err.println("Error al cerrar el diario de ventas: " + ex.getMessage());
+            }
+        }
+        if (registroAuditoria != null) {
+            // Antes que el pool: escribe los eventos que quedaron en cola
+            registroAuditoria.close();
+        }
+        if (exportadorMetricas != null) {
+            exportadorMetricas.close(); // Última escritura con los datos de toda la jornada
+        }
+        if (poolConexiones != null) {
             try {
-                inventarioService.getConnection().close();
-                System.out.println("Conexión a BD cerrada.");
-            } catch (SQLException ex) {
-                System.err.println("Error al cerrar conexión BD: " + ex.getMessage());
+                poolConexiones.close();
+                System.out.println("Pool de conexiones cerrado.");
+            } catch (Exception ex) {
+                System.err.println("Error al cerrar pool de conexiones: " + ex.getMessage());
             }
         }
         // Aquí podrías añadir lógica para cerrar otros recursos si fuera necesario
@@ -0,0 +1,173 @@
+package com.example.drugstore2.controller;
+
+import com.example.drugstore2.service.RegistroAuditoria;
+import com.example.drugstore2.service.ReenvioDiarioVentas;
+import com.example.drugstore2.service.VentaStateService;
+import com.example.drugstore2.util.AlertUtil;
+import com.example.drugstore2.util.ColumnasFx;
+import com.example.drugstore2.util.ExportadorMetricas;
+import com.example.drugstore2.util.Metricas;
+import com.example.drugstore2.util.TiemposInicio;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Pestaña de diagnóstico: latencia (p50/p90/p99), llamadas y errores de cada método de los
+ * servicios, más el estado de la cola de auditoría, de la cola de ventas (diario local), de la UI del
+ * ticket y los tiempos del arranque.
+ * Mientras la pestaña está visible se actualiza sola cada {@link #INTERVALO_REFRESCO_SEG} segundos.
+ */
+public class DiagnosticoController {
+
+    private static final double INTERVALO_REFRESCO_SEG = 2;
+    private static final DateTimeFormatter FORMATO_INICIO = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    @FXML private TableView<Metricas.Resumen> metricasTableView;
+    @FXML private TableColumn<Metricas.Resumen, String> servicioCol;
+    @FXML private TableColumn<Metricas.Resumen, String> metodoCol;
+    @FXML private TableColumn<Metricas.Resumen, Long> llamadasCol;
+    @FXML private TableColumn<Metricas.Resumen, Double> erroresCol;
+    @FXML private TableColumn<Metricas.Resumen, Double> p50Col;
+    @FXML private TableColumn<Metricas.Resumen, Double> p90Col;
+    @FXML private TableColumn<Metricas.Resumen, Double> p99Col;
+    @FXML private TableColumn<Metricas.Resumen, Double> maxCol;
+    @FXML private Label inicioLabel;
+    @FXML private Label auditoriaLabel;
+    @FXML private Label diarioLabel;
+    @FXML private Label ticketLabel;
+    @FXML private Label exportacionLabel;
+    @FXML private Label arranqueLabel;
+
+    private final ObservableList<Metricas.Resumen> filas = FXCollections.observableArrayList();
+    private final Timeline refresco = new Timeline(new KeyFrame(Duration.seconds(INTERVALO_REFRESCO_SEG), e -> actualizar()));
+
+    private RegistroAuditoria registroAuditoria;
+    private VentaStateService ventaStateService;
+    private ExportadorMetricas exportadorMetricas;
+    private TiemposInicio tiemposInicio;
+    private ReenvioDiarioVentas reenvioDiario;
+
+    @FXML
+    public void initialize() {
+        servicioCol.setCellValueFactory(ColumnasFx.valor(Metricas.Resumen::servicio));
+        metodoCol.setCellValueFactory(ColumnasFx.valor(Metricas.Resumen::metodo));
+        llamadasCol.setCellValueFactory(ColumnasFx.valor(Metricas.Resumen::llamadas));
+        erroresCol.setCellValueFactory(ColumnasFx.valor(Metricas.Resumen::tasaError));
+        p50Col.setCellValueFactory(ColumnasFx.valor(Metricas.Resumen::p50Ms));
+        p90Col.setCellValueFactory(ColumnasFx.valor(Metricas.Resumen::p90Ms));
+        p99Col.setCellValueFactory(ColumnasFx.valor(Metricas.Resumen::p99Ms));
+        maxCol.setCellValueFactory(ColumnasFx.valor(Metricas.Resumen::maxMs));
+
+        // Errores como porcentaje y latencias en ms
+        erroresCol.setCellFactory(tc -> celdaFormato("%.1f %%", 100.0));
+        p50Col.setCellFactory(tc -> celdaFormato("%.2f", 1.0));
+        p90Col.setCellFactory(tc -> celdaFormato("%.2f", 1.0));
+        p99Col.setCellFactory(tc -> celdaFormato("%.2f", 1.0));
+        maxCol.setCellFactory(tc -> celdaFormato("%.2f", 1.0));
+
+        metricasTableView.setItems(filas);
+        refresco.setCycleCount(Timeline.INDEFINITE);
+
+        LocalDateTime inicio = LocalDateTime.ofInstant(Instant.ofEpochMilli(Metricas.getInicioMillis()), ZoneId.systemDefault());
+        inicioLabel.setText("Acumulado desde: " + inicio.format(FORMATO_INICIO));
+    }
+
+    public void setRegistroAuditoria(RegistroAuditoria registroAuditoria) {
+        this.registroAuditoria = registroAuditoria;
+    }
+
+    public void setVentaStateService(VentaStateService ventaStateService) {
+        this.ventaStateService = ventaStateService;
+    }
+
+    public void setExportadorMetricas(ExportadorMetricas exportadorMetricas) {
+        this.exportadorMetricas = exportadorMetricas;
+        exportacionLabel.setText(exportadorMetricas != null
+                ? "Exportación: " + exportadorMetricas.getArchivo().toAbsolutePath()
+                : "Exportación desactivada (metricas.intervaloSeg=0)");
+    }
+
+    public void setTiemposInicio(TiemposInicio tiemposInicio) {
+        this.tiemposInicio = tiemposInicio;
+    }
+
+    public void setReenvioDiario(ReenvioDiarioVentas reenvioDiario) {
+        this.reenvioDiario = reenvioDiario;
+        if (reenvioDiario == null) diarioLabel.setText("Diario de ventas desactivado (db.diario.usar=false)");
+    }
+
+    /**
+     * Llamado desde MainApp al mostrar u ocultar la pestaña: solo se refresca mientras se ve.
+     */
+    public void setVisible(boolean visible) {
+        if (visible) {
+            actualizar();
+            refresco.play();
+        } else {
+            refresco.stop();
+        }
+    }
+
+    @FXML
+    void handleActualizar(ActionEvent event) {
+        actualizar();
+    }
+
+    @FXML
+    void handleExportarAhora(ActionEvent event) {
+        if (exportadorMetricas == null) {
+            AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Exportación desactivada",
+                    "La exportación de métricas está desactivada (metricas.intervaloSeg=0).");
+            return;
+        }
+        try {
+            exportadorMetricas.escribir();
+            AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Métricas exportadas",
+                    "Se escribieron las métricas en:\n" + exportadorMetricas.getArchivo().toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("❌ Error al exportar métricas: " + e.getMessage());
+            AlertUtil.showAlert(Alert.AlertType.ERROR, "Error de Exportación", "No se pudieron escribir las métricas.\n" + e.getMessage());
+        }
+    }
+
+    private void actualizar() {
+        filas.setAll(Metricas.resumenes());
+        if (registroAuditoria != null) {
+            auditoriaLabel.setText("Auditoría: " + registroAuditoria.getMetricas());
+        }
+        if (reenvioDiario != null) {
+            diarioLabel.setText("Cola de ventas (diario local): " + reenvioDiario.getEstado());
+        }
+        if (ventaStateService != null) {
+            ticketLabel.setText("UI del ticket: " + ventaStateService.getEstadisticasUI());
+        }
+        if (tiemposInicio != null) {
+            arranqueLabel.setText(tiemposInicio.toString());
+        }
+    }
+
+    private static TableCell<Metricas.Resumen, Double> celdaFormato(String formato, double factor) {
+        return new TableCell<>() {
+            @Override protected void updateItem(Double valor, boolean empty) {
+                super.updateItem(valor, empty);
+                setText(empty || valor == null ? null : String.format(formato, valor * factor));
+            }
+        };
+    }
+}
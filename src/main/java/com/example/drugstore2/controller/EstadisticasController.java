@@ -1,14 +1,16 @@
 package com.example.drugstore2.controller;
 
 import com.example.drugstore2.model.CategoriaVenta;
-import com.example.drugstore2.model.Producto;
-import com.example.drugstore2.model.Venta;
+import com.example.drugstore2.model.ProductoDatos;
 import com.example.drugstore2.service.EstadisticasService;
+import com.example.drugstore2.service.ExportadorVentas;
 import com.example.drugstore2.service.InventarioService;
 import com.example.drugstore2.service.VentaService;
 import com.example.drugstore2.util.AlertUtil;
+import com.example.drugstore2.util.CargadorPanel;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -21,11 +23,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 public class EstadisticasController {
 
@@ -33,6 +32,10 @@ public class EstadisticasController {
     private VentaService ventaService; // Necesario para exportar ventas detalladas
     private InventarioService inventarioService; // Necesario para exportar stock
 
+    // Tiempo límite de cada consulta del panel
+    private static final long TIMEOUT_CONSULTA_MS = Long.getLong("estadisticas.timeoutMs", 10_000L);
+    private final CargadorPanel cargadorPanel = new CargadorPanel("estadisticas", 4, TIMEOUT_CONSULTA_MS);
+
     @FXML private DatePicker datePickerDesde;
     @FXML private DatePicker datePickerHasta;
     @FXML private Button refrescarBtn;
@@ -52,6 +55,11 @@ public class EstadisticasController {
 
     @FXML private Button exportarVentasBtn;
     @FXML private Button exportarStockBtn;
+    @FXML private CheckBox comprimirCsvCheck;
+    @FXML private ProgressBar exportacionProgress;
+    @FXML private Label exportacionEstadoLabel;
+    @FXML private Button cancelarExportacionBtn;
+    private Task<Long> exportacionEnCurso;
 
     @FXML
     public void initialize() {
@@ -63,6 +71,8 @@ public class EstadisticasController {
     }
     public void setEstadisticasService(EstadisticasService estadisticasService) {
         this.estadisticasService = estadisticasService;
+        // La base cancela la consulta al mismo límite con que el panel deja de esperarla
+        if (estadisticasService != null) estadisticasService.setTimeoutConsulta(cargadorPanel.getTimeoutMs());
     }
     public void setVentaService(VentaService ventaService) {
         this.ventaService = ventaService;
@@ -127,43 +137,76 @@ public class EstadisticasController {
 
         System.out.println("Actualizando estadísticas para el período: " + fechaDesde + " a " + fechaHasta);
 
-        // --- Calcular y Actualizar Estadísticas por Período ---
-        double vPeriodo = estadisticasService.getVentasPorRangoFechas(fechaDesde, fechaHasta);
-        double gPeriodo = estadisticasService.getGananciaBrutaPorRangoFechas(fechaDesde, fechaHasta);
-        ventasPeriodoLabel.setText(String.format("$%.2f", vPeriodo));
-        gananciaPeriodoLabel.setText(String.format("$%.2f", gPeriodo));
-        gananciaPeriodoLabel.setTextFill(gPeriodo >= 0 ? Color.DARKGREEN : Color.RED); // Color dinámico
-
-        // --- Calcular y Actualizar Ventas por Categoría ---
-        Map<String, Double> ventasCatMap = estadisticasService.getVentasPorCategoria(fechaDesde, fechaHasta);
-        categoriasVentasList.clear();
-        for (Map.Entry<String, Double> entry : ventasCatMap.entrySet()) {
-            // Asegurarse que CategoriaVenta sea accesible o moverla a model
-            categoriasVentasList.add(new CategoriaVenta(entry.getKey(), entry.getValue()));
-        }
-        if (categoriasVentasList.isEmpty()) {
-            categoriaTableView.setPlaceholder(new Label("No hay ventas por categoría en este período."));
-        }
+        // Las consultas corren en paralelo fuera del hilo de JavaFX; cada widget se completa al llegar su resultado
+        final LocalDate desde = fechaDesde;
+        final LocalDate hasta = fechaHasta;
+        marcarCargando();
+        CargadorPanel.Carga carga = cargadorPanel.nuevaCarga();
+
+        // --- Estadísticas por Período ---
+        carga.consulta("ventas del período", () -> estadisticasService.getVentasPorRangoFechas(desde, hasta),
+                vPeriodo -> ventasPeriodoLabel.setText(String.format("$%.2f", vPeriodo)),
+                error -> mostrarError(ventasPeriodoLabel));
+        carga.consulta("ganancia del período", () -> estadisticasService.getGananciaBrutaPorRangoFechas(desde, hasta),
+                gPeriodo -> {
+                    gananciaPeriodoLabel.setText(String.format("$%.2f", gPeriodo));
+                    gananciaPeriodoLabel.setTextFill(gPeriodo >= 0 ? Color.DARKGREEN : Color.RED); // Color dinámico
+                },
+                error -> mostrarError(gananciaPeriodoLabel));
+
+        // --- Ventas por Categoría ---
+        carga.consulta("ventas por categoría", () -> estadisticasService.getVentasPorCategoria(desde, hasta),
+                ventasCatMap -> {
+                    categoriasVentasList.clear();
+                    for (Map.Entry<String, Double> entry : ventasCatMap.entrySet()) {
+                        categoriasVentasList.add(new CategoriaVenta(entry.getKey(), entry.getValue()));
+                    }
+                    if (categoriasVentasList.isEmpty()) {
+                        categoriaTableView.setPlaceholder(new Label("No hay ventas por categoría en este período."));
+                    }
+                },
+                error -> categoriaTableView.setPlaceholder(new Label("No se pudieron cargar las ventas por categoría.")));
+
+        // --- Indicadores Generales/Históricos ---
+        carga.consulta("producto más vendido", estadisticasService::getProductoMasVendido,
+                pTO -> {
+                    if (pTO.isPresent()) {
+                        Map.Entry<String, Integer> pT = pTO.get();
+                        productoTopLabel.setText(String.format("%s (%d u.)", pT.getKey(), pT.getValue()));
+                    } else {
+                        productoTopLabel.setText("N/A");
+                    }
+                },
+                error -> mostrarError(productoTopLabel));
+        carga.consulta("ingresos totales", estadisticasService::getIngresosTotales,
+                iT -> ingresosTotalesLabel.setText(String.format("$%.2f", iT)),
+                error -> mostrarError(ingresosTotalesLabel));
+        carga.consulta("ganancia bruta total", estadisticasService::getGananciaBrutaTotal,
+                gBTotal -> {
+                    gananciaBrutaTotalLabel.setText(String.format("$%.2f", gBTotal));
+                    gananciaBrutaTotalLabel.setTextFill(gBTotal >= 0 ? Color.DARKGREEN : Color.DARKRED); // Color dinámico
+                },
+                error -> mostrarError(gananciaBrutaTotalLabel));
+        carga.consulta("stock valorizado", estadisticasService::getStockValorizado,
+                stockVal -> stockValorizadoLabel.setText(String.format("$%.2f", stockVal)),
+                error -> mostrarError(stockValorizadoLabel));
+
+        carga.alTerminar(() -> System.out.printf("Estadísticas actualizadas en %.0f ms%s.%n", carga.getDuracionMs(),
+                carga.getFallidas() > 0 ? " (" + carga.getFallidas() + " consulta(s) con error)" : ""));
+    }
 
-        // --- Calcular y Actualizar Indicadores Generales/Históricos ---
-        Optional<Map.Entry<String, Integer>> pTO = estadisticasService.getProductoMasVendido();
-        double iT = estadisticasService.getIngresosTotales();
-        double gBTotal = estadisticasService.getGananciaBrutaTotal();
-        double stockVal = estadisticasService.getStockValorizado();
-
-        // Actualizar Labels Indicadores Generales
-        if (pTO.isPresent()) {
-            Map.Entry<String, Integer> pT = pTO.get();
-            productoTopLabel.setText(String.format("%s (%d u.)", pT.getKey(), pT.getValue()));
-        } else {
-            productoTopLabel.setText("N/A");
+    // Deja los widgets en "cargando..." hasta que llegue su resultado
+    private void marcarCargando() {
+        for (Label l : new Label[]{ventasPeriodoLabel, gananciaPeriodoLabel, productoTopLabel,
+                ingresosTotalesLabel, gananciaBrutaTotalLabel, stockValorizadoLabel}) {
+            l.setText("...");
         }
-        ingresosTotalesLabel.setText(String.format("$%.2f", iT));
-        gananciaBrutaTotalLabel.setText(String.format("$%.2f", gBTotal));
-        gananciaBrutaTotalLabel.setTextFill(gBTotal >= 0 ? Color.DARKGREEN : Color.DARKRED); // Color dinámico
-        stockValorizadoLabel.setText(String.format("$%.2f", stockVal));
+        categoriasVentasList.clear();
+        categoriaTableView.setPlaceholder(new Label("Cargando..."));
+    }
 
-        System.out.println("Estadísticas actualizadas completamente.");
+    private void mostrarError(Label label) {
+        label.setText("Error");
     }
 
     @FXML
@@ -179,43 +222,84 @@ public class EstadisticasController {
             AlertUtil.showAlert(Alert.AlertType.ERROR, "Error Servicio", "El servicio de ventas no está disponible para la exportación.");
             return;
         }
-
-        // Obtener los datos detallados
-        List<Venta> ventasExportar = ventaService.getVentasDetalladasPorRango(fechaDesde, fechaHasta);
-
-        if (ventasExportar.isEmpty()) {
-            AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Sin Datos", "No hay ventas registradas en el período seleccionado para exportar.");
+        if (exportacionEnCurso != null && exportacionEnCurso.isRunning()) {
+            AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Exportación en Curso", "Espere a que termine (o cancele) la exportación actual.");
             return;
         }
 
-        FileChooser fileChooser = createFileChooser("Guardar Reporte de Ventas", "Ventas_" + fechaDesde + "_a_" + fechaHasta + ".csv");
+        boolean gzip = comprimirCsvCheck.isSelected();
+        String nombre = "Ventas_" + fechaDesde + "_a_" + fechaHasta + (gzip ? ".csv.gz" : ".csv");
+        FileChooser fileChooser = createFileChooser("Guardar Reporte de Ventas", nombre);
+        if (gzip) {
+            fileChooser.getExtensionFilters().setAll(new FileChooser.ExtensionFilter("CSV comprimido (*.csv.gz)", "*.csv.gz"));
+        }
         File file = fileChooser.showSaveDialog(exportarVentasBtn.getScene().getWindow()); // Obtener stage
+        if (file == null) return;
+
+        // Las filas se leen y escriben de a una en segundo plano; la UI solo muestra el progreso
+        ExportadorVentas exportador = new ExportadorVentas(ventaService);
+        Task<Long> tarea = new Task<>() {
+            @Override
+            protected Long call() throws Exception {
+                return exportador.exportar(fechaDesde, fechaHasta, file.toPath(), gzip,
+                        (escritas, total) -> {
+                            updateProgress(escritas, Math.max(total, 1));
+                            updateMessage(escritas + " / " + total + " líneas");
+                        },
+                        this::isCancelled);
+            }
+        };
+
+        tarea.setOnSucceeded(e -> {
+            terminarExportacion();
+            long filas = tarea.getValue();
+            if (filas == 0) {
+                AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Sin Datos", "No hay ventas registradas en el período seleccionado.\nSe generó un archivo solo con encabezados en:\n" + file.getAbsolutePath());
+            } else {
+                AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Exportación Completa", "Reporte de ventas (" + filas + " líneas) guardado en:\n" + file.getAbsolutePath());
+            }
+        });
+        tarea.setOnCancelled(e -> {
+            terminarExportacion();
+            System.out.println("Exportación de ventas cancelada por el usuario.");
+        });
+        tarea.setOnFailed(e -> {
+            terminarExportacion();
+            Throwable ex = tarea.getException();
+            if (ex instanceof IOException io) {
+                handleExportError(io);
+            } else {
+                System.err.println("❌ Error al exportar ventas: " + ex);
+                AlertUtil.showAlert(Alert.AlertType.ERROR, "Error de Exportación", "No se pudieron leer las ventas.\n" + (ex != null ? ex.getMessage() : ""));
+            }
+        });
 
-        if (file != null) {
-            String[] HEADERS = { "FechaHora", "CodProducto", "NombreProducto", "Cantidad", "PrecioUnitario", "Subtotal" };
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        exportacionEnCurso = tarea;
+        exportacionProgress.progressProperty().bind(tarea.progressProperty());
+        exportacionEstadoLabel.textProperty().bind(tarea.messageProperty());
+        mostrarExportacion(true);
 
-            try (FileWriter writer = new FileWriter(file);
-                 CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(HEADERS))) {
+        Thread hilo = new Thread(tarea, "exportacion-ventas");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
 
-                for (Venta v : ventasExportar) {
-                    // ... (lógica de escritura CSV igual a la original en MainApp) ...
-                    csvPrinter.printRecord(
-                            v.getFechaHora().format(formatter),
-                            v.getDetalle().getProducto().getCodigo(),
-                            v.getDetalle().getProducto().getNombre(),
-                            v.getDetalle().getCantidad(),
-                            v.getDetalle().getProducto().getPrecioVenta(),
-                            v.getTotal()
-                    );
-                }
-                csvPrinter.flush();
-                AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Exportación Completa", "Reporte de ventas guardado en:\n" + file.getAbsolutePath());
+    @FXML
+    void handleCancelarExportacion(ActionEvent event) {
+        if (exportacionEnCurso != null) exportacionEnCurso.cancel();
+    }
 
-            } catch (IOException e) {
-                handleExportError(e);
-            }
-        }
+    private void terminarExportacion() {
+        exportacionProgress.progressProperty().unbind();
+        exportacionEstadoLabel.textProperty().unbind();
+        mostrarExportacion(false);
+    }
+
+    private void mostrarExportacion(boolean visible) {
+        exportacionProgress.setVisible(visible);
+        exportacionEstadoLabel.setVisible(visible);
+        cancelarExportacionBtn.setVisible(visible);
+        exportarVentasBtn.setDisable(visible);
     }
 
     @FXML
@@ -225,7 +309,7 @@ public class EstadisticasController {
             return;
         }
         // Obtener la lista actual de productos activos
-        Collection<Producto> productosExportar = inventarioService.getProductos().values();
+        List<ProductoDatos> productosExportar = inventarioService.listarProductos();
 
         if (productosExportar.isEmpty()) {
             AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Sin Datos", "No hay productos activos en el inventario para exportar.");
@@ -242,17 +326,16 @@ public class EstadisticasController {
                  CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(HEADERS))) {
 
                 double valorTotalInventario = 0;
-                for (Producto p : productosExportar) {
-                    // ... (lógica de escritura CSV igual a la original en MainApp) ...
-                    double valorProducto = p.getStock() * p.getPrecioCosto();
+                for (ProductoDatos p : productosExportar) {
+                    double valorProducto = p.stock() * p.precioCosto();
                     valorTotalInventario += valorProducto;
                     csvPrinter.printRecord(
-                            p.getCodigo(),
-                            p.getNombre(),
-                            p.getCategoriaNombre() != null ? p.getCategoriaNombre() : "",
-                            p.getStock(),
-                            p.getPrecioCosto(),
-                            p.getStockMinimo(),
+                            p.codigo(),
+                            p.nombre(),
+                            p.categoriaNombre() != null ? p.categoriaNombre() : "",
+                            p.stock(),
+                            p.precioCosto(),
+                            p.stockMinimo(),
                             valorProducto
                     );
                 }
@@ -1,45 +1,103 @@
 package com.example.drugstore2.controller;
 
-import com.example.drugstore2.model.Venta;
+import com.example.drugstore2.model.LineaVenta;
 import com.example.drugstore2.service.VentaService;
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
+import com.example.drugstore2.service.VentaService.CursorHistorial;
+import com.example.drugstore2.service.VentaService.PaginaHistorial;
+import com.example.drugstore2.util.ColumnasFx;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Historial de ventas paginado.
+ *
+ * Las páginas se piden a VentaService a medida que el usuario se acerca al final (o al
+ * principio) de la tabla. Solo se mantiene en memoria una ventana de MAX_PAGINAS páginas:
+ * al pasar ese límite se descarta la página del extremo opuesto y se recuerdan sus cursores
+ * para volver a pedirla si el usuario regresa. Así la memoria no crece con el tamaño del historial.
+ */
 public class HistorialVentasController {
 
+    // Páginas que se mantienen en la tabla a la vez
+    private static final int MAX_PAGINAS = 5;
+    // Fracción del scroll a partir de la cual se pide la página siguiente/anterior
+    private static final double UMBRAL_SCROLL = 0.9;
+
     private VentaService ventaService;
+    private int tamanoPagina = VentaService.TAMANO_PAGINA_HISTORIAL;
 
-    @FXML private TableView<Venta> historialTableView;
-    @FXML private TableColumn<Venta, String> fechaCol;
-    @FXML private TableColumn<Venta, String> detalleCol; // Nombre producto
-    @FXML private TableColumn<Venta, Integer> cantidadCol;
-    @FXML private TableColumn<Venta, Double> totalCol; // Subtotal linea
+    @FXML private TableView<LineaVenta> historialTableView;
+    @FXML private TableColumn<LineaVenta, String> fechaCol;
+    @FXML private TableColumn<LineaVenta, String> detalleCol; // Nombre producto
+    @FXML private TableColumn<LineaVenta, Integer> cantidadCol;
+    @FXML private TableColumn<LineaVenta, Double> totalCol; // Subtotal linea
     @FXML private Button recargarHistorialBtn;
 
+    private final ObservableList<LineaVenta> lineas = FXCollections.observableArrayList();
+
+    // Páginas visibles, de la más nueva a la más antigua
+    private final Deque<PaginaCargada> paginas = new ArrayDeque<>();
+    // Páginas descartadas por arriba (más nuevas) y por abajo (más antiguas), para recargarlas
+    private final Deque<PaginaCargada> descartadasArriba = new ArrayDeque<>();
+    private final Deque<PaginaCargada> descartadasAbajo = new ArrayDeque<>();
+    private boolean hayMasAbajo = true;
+    private boolean cargando = false;
+    // Un solo hilo para las consultas de páginas (se piden de a una, ver 'cargando')
+    private final ExecutorService consultas = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "historial-paginas");
+        t.setDaemon(true); // No impedir el cierre de la aplicación
+        return t;
+    });
+    // Cambia en cada recarga completa: el resultado de una consulta de una generación anterior se descarta
+    private int generacion = 0;
+
+    // Una página en la ventana: sus líneas y los cursores que la delimitan
+    private record PaginaCargada(CursorHistorial despuesDe, CursorHistorial primera, CursorHistorial ultima, int lineas) {}
+
     @FXML
     public void initialize() {
         configurarTabla();
+        historialTableView.setItems(lineas);
         // Los datos se cargarán cuando se inyecte el servicio
         historialTableView.setPlaceholder(new Label("Cargando historial..."));
+        // La barra de scroll existe recién cuando se crea el skin de la tabla
+        historialTableView.skinProperty().addListener((obs, viejo, nuevo) -> engancharScroll());
     }
 
     public void setVentaService(VentaService ventaService) {
         this.ventaService = ventaService;
-        cargarHistorial(); // Carga inicial
+        cargarHistorial(); // Carga inicial (primera página)
+    }
+
+    /**
+     * Cambia la cantidad de ventas por página (se aplica en la próxima recarga).
+     */
+    public void setTamanoPagina(int tamanoPagina) {
+        this.tamanoPagina = Math.max(1, tamanoPagina);
     }
 
     private void configurarTabla() {
-        fechaCol.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getFechaHoraString()));
-        detalleCol.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getDetalle().getProducto().getNombre()));
-        cantidadCol.setCellValueFactory(cellData -> new SimpleIntegerProperty(cellData.getValue().getDetalle().getCantidad()).asObject());
-        totalCol.setCellValueFactory(cellData -> new SimpleDoubleProperty(cellData.getValue().getTotal()).asObject());
+        // Las líneas son inmutables: el valor de cada celda se crea solo cuando la fila se dibuja
+        fechaCol.setCellValueFactory(ColumnasFx.valor(LineaVenta::getFechaHoraString));
+        detalleCol.setCellValueFactory(ColumnasFx.valor(LineaVenta::nombre));
+        cantidadCol.setCellValueFactory(ColumnasFx.valor(LineaVenta::cantidad));
+        totalCol.setCellValueFactory(ColumnasFx.valor(LineaVenta::subtotal));
 
         // Formato para la columna de total (subtotal)
-        totalCol.setCellFactory(tc -> new TableCell<Venta, Double>() {
+        totalCol.setCellFactory(tc -> new TableCell<LineaVenta, Double>() {
             @Override protected void updateItem(Double price, boolean empty) {
                 super.updateItem(price, empty);
                 setText(empty || price == null ? null : String.format("$%.2f", price));
@@ -47,33 +105,172 @@ public class HistorialVentasController {
         });
     }
 
-    private void cargarHistorial() {
-        if (ventaService != null) {
-            // Asume que getHistorialVentas() obtiene la lista actualizada (o la recarga)
-            historialTableView.setItems(ventaService.getHistorialVentas());
-            if (historialTableView.getItems().isEmpty()) {
-                historialTableView.setPlaceholder(new Label("No hay ventas registradas en la base de datos."));
+    private void engancharScroll() {
+        for (Node n : historialTableView.lookupAll(".scroll-bar")) {
+            if (n instanceof ScrollBar bar && bar.getOrientation() == Orientation.VERTICAL) {
+                bar.valueProperty().addListener((obs, viejo, valor) -> {
+                    double rango = bar.getMax() - bar.getMin();
+                    if (rango <= 0) return;
+                    double pos = (valor.doubleValue() - bar.getMin()) / rango;
+                    if (pos >= UMBRAL_SCROLL) cargarPaginaSiguiente();
+                    else if (pos <= 1 - UMBRAL_SCROLL) cargarPaginaAnterior();
+                });
             }
-        } else {
+        }
+    }
+
+    // Descarta todo y carga la primera página (ventas más recientes)
+    private void cargarHistorial() {
+        if (ventaService == null) {
             historialTableView.setPlaceholder(new Label("Error: Servicio de ventas no disponible."));
             System.err.println("HistorialVentasController: VentaService es null al cargar historial.");
+            return;
+        }
+        generacion++;
+        paginas.clear();
+        descartadasArriba.clear();
+        descartadasAbajo.clear();
+        lineas.clear();
+        hayMasAbajo = true;
+        historialTableView.setPlaceholder(new Label("Cargando historial..."));
+        // Si hay una consulta en curso, la primera página se pide cuando termine (ver ejecutar)
+        cargarPaginaSiguiente();
+    }
+
+    // Agrega al final la siguiente página más antigua
+    private void cargarPaginaSiguiente() {
+        if (cargando || ventaService == null) return;
+        final PaginaCargada recargar = descartadasAbajo.peek();
+        if (recargar == null && !hayMasAbajo) return;
+        final CursorHistorial despuesDe = paginas.isEmpty() ? null : paginas.peekLast().ultima();
+        final int tamano = tamanoPagina;
+
+        ejecutar(() -> recargar != null
+                        ? ventaService.obtenerRangoHistorial(recargar.despuesDe(), recargar.ultima())
+                        : ventaService.obtenerPaginaHistorial(despuesDe, tamano),
+                pagina -> {
+                    if (recargar != null) {
+                        descartadasAbajo.pop();
+                    } else {
+                        hayMasAbajo = pagina.hayMas();
+                    }
+                    if (pagina.ventas() == 0) {
+                        if (lineas.isEmpty()) {
+                            historialTableView.setPlaceholder(new Label("No hay ventas registradas en la base de datos."));
+                        }
+                        return;
+                    }
+                    paginas.addLast(new PaginaCargada(despuesDe != null ? despuesDe : justoArriba(pagina.primera()),
+                            pagina.primera(), pagina.ultima(), pagina.lineas().size()));
+                    lineas.addAll(pagina.lineas());
+
+                    if (paginas.size() > MAX_PAGINAS) {
+                        PaginaCargada vieja = paginas.removeFirst();
+                        lineas.remove(0, vieja.lineas());
+                        descartadasArriba.push(vieja);
+                        historialTableView.scrollTo(Math.max(0, lineas.size() - pagina.lineas().size() - 1));
+                    }
+                });
+    }
+
+    // Vuelve a cargar arriba la última página descartada por ese lado
+    private void cargarPaginaAnterior() {
+        if (cargando || ventaService == null) return;
+        final PaginaCargada recargar = descartadasArriba.peek();
+        if (recargar == null) return;
+
+        ejecutar(() -> ventaService.obtenerRangoHistorial(recargar.despuesDe(), recargar.ultima()),
+                pagina -> {
+                    descartadasArriba.pop();
+                    paginas.addFirst(new PaginaCargada(recargar.despuesDe(), pagina.primera(), pagina.ultima(), pagina.lineas().size()));
+                    lineas.addAll(0, pagina.lineas());
+
+                    if (paginas.size() > MAX_PAGINAS) {
+                        PaginaCargada vieja = paginas.removeLast();
+                        lineas.remove(lineas.size() - vieja.lineas(), lineas.size());
+                        descartadasAbajo.push(vieja);
+                    }
+                    historialTableView.scrollTo(pagina.lineas().size());
+                });
+    }
+
+    // Agrega arriba, como una página más, las ventas más nuevas (por fecha/hora e ID) que la primera de la tabla
+    private void cargarVentasNuevas() {
+        if (cargando || ventaService == null || paginas.isEmpty()) {
+            if (!cargando && paginas.isEmpty()) cargarHistorial();
+            return;
         }
-        historialTableView.refresh(); // Asegurar refresco visual
+        if (!descartadasArriba.isEmpty()) return; // No se está mostrando el principio; se verán al volver arriba
+
+        final CursorHistorial masNueva = paginas.peekFirst().primera();
+        final int tamano = tamanoPagina;
+        ejecutar(() -> ventaService.obtenerVentasNuevas(masNueva, tamano),
+                pagina -> {
+                    if (pagina.ventas() == 0 || paginas.isEmpty()) return;
+                    if (pagina.hayMas()) {
+                        // Hay más de una página de ventas nuevas (ej. después de un día de mucho movimiento):
+                        // se vuelve a empezar por las más recientes en lugar de traerlas todas
+                        cargarHistorial();
+                        return;
+                    }
+                    paginas.addFirst(new PaginaCargada(justoArriba(pagina.primera()), pagina.primera(), pagina.ultima(), pagina.lineas().size()));
+                    lineas.addAll(0, pagina.lineas());
+
+                    if (paginas.size() > MAX_PAGINAS) {
+                        PaginaCargada vieja = paginas.removeLast();
+                        lineas.remove(lineas.size() - vieja.lineas(), lineas.size());
+                        descartadasAbajo.push(vieja);
+                    }
+                });
     }
 
+    // Cursor justo por encima de 'primera': al releer la página desde ahí no se suman las ventas posteriores
+    private static CursorHistorial justoArriba(CursorHistorial primera) {
+        return new CursorHistorial(primera.fechaHora(), primera.ventaId() + 1);
+    }
+
+    // Consulta en segundo plano y aplica el resultado en el hilo de JavaFX.
+    // Si mientras tanto hubo una recarga completa, el resultado se descarta y se pide la primera página.
+    // Si falla no se toca la ventana: la misma página se vuelve a pedir en el próximo scroll.
+    private void ejecutar(Callable<PaginaHistorial> consulta, Consumer<PaginaHistorial> alTerminar) {
+        cargando = true;
+        final int generacionConsulta = generacion;
+        Task<PaginaHistorial> tarea = new Task<>() {
+            @Override protected PaginaHistorial call() throws Exception {
+                return consulta.call();
+            }
+        };
+        tarea.setOnSucceeded(e -> {
+            cargando = false;
+            if (generacionConsulta != generacion) {
+                cargarPaginaSiguiente(); // La recarga que quedó esperando
+                return;
+            }
+            alTerminar.accept(tarea.getValue());
+        });
+        tarea.setOnFailed(e -> {
+            cargando = false;
+            if (generacionConsulta != generacion) {
+                cargarPaginaSiguiente();
+                return;
+            }
+            System.err.println("❌ Error al cargar página de historial: " + tarea.getException());
+            historialTableView.setPlaceholder(new Label("Error al cargar el historial. Use 'Recargar Historial' para reintentar."));
+        });
+        consultas.execute(tarea);
+    }
 
     @FXML
     void handleRecargarHistorial(ActionEvent event) {
         System.out.println("Recargando historial manualmente...");
-        // Si VentaService tiene un método explícito para recargar, llamarlo aquí.
-        // Ejemplo: ventaService.cargarHistorialDesdeDB();
-        cargarHistorial(); // Vuelve a obtener la lista del servicio
+        // Recarga completa explícita: vuelve a la primera página
+        cargarHistorial();
     }
 
-    // Este método podría ser llamado por MainApp si la pestaña se selecciona
+    // Llamado por MainApp cuando se selecciona la pestaña: solo trae las ventas nuevas
     public void recargarHistorial() {
         if (historialTableView != null) { // Asegurarse que la UI está lista
-            cargarHistorial();
+            cargarVentasNuevas();
         }
     }
-}
\ No newline at end of file
+}
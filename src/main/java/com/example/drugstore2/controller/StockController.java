@@ -71,7 +71,8 @@ public class StockController {
 
     public void setInventarioService(InventarioService service) {
         this.inventarioService = service;
-        cargarDatosIniciales(); // Cargar datos cuando el servicio está listo
+        // Los datos se cargan al mostrar la pestaña (MainApp llama a refrescarTablaProductos al elegirla),
+        // no al inyectar el servicio: así no se lee el catálogo completo durante el arranque
     }
 
     private void configurarTabla() {
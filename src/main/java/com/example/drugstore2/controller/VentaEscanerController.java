@@ -1,12 +1,19 @@
 package com.example.drugstore2.controller;
 
+import com.example.drugstore2.model.LineaTicket;
 import com.example.drugstore2.model.Producto;
 import com.example.drugstore2.model.ProductoManual; // Necesario para la comprobación instanceof
+import com.example.drugstore2.service.DiarioVentas;
 import com.example.drugstore2.service.InventarioService;
+import com.example.drugstore2.service.ReenvioDiarioVentas;
 import com.example.drugstore2.service.VentaService;
+import com.example.drugstore2.service.VentaService.ResultadoVenta;
 import com.example.drugstore2.service.VentaStateService; // Importante para estado compartido
 import com.example.drugstore2.util.AlertUtil;
+import com.example.drugstore2.util.BuscadorAsincrono;
+import com.example.drugstore2.util.Log;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections; // Necesario para lista de búsqueda
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -18,6 +25,8 @@ import javafx.scene.input.MouseEvent;
 // import org.kordamp.ikonli.javafx.FontIcon;
 // import org.kordamp.ikonli.fontawesome5.FontAwesomeSolid;
 
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,23 +34,39 @@ import java.util.Optional;
  * Controlador para la pestaña de Venta con Escáner.
  * Interactúa con InventarioService, VentaService y VentaStateService.
  * Muestra el ticket de venta compartido gestionado por VentaStateService.
+ *
+ * Con la cola de ventas (confirmación asincrónica) el ticket se confirma apenas queda guardado en el
+ * diario local y el commit en la base sigue en segundo plano; si después falla, se avisa en la
+ * pestaña sin interrumpir el escaneo del próximo cliente.
  */
 public class VentaEscanerController {
 
+    private static final Log log = Log.de(VentaEscanerController.class);
+
     // --- Servicios ---
     private InventarioService inventarioService;
     private VentaService ventaService;
     private VentaStateService ventaStateService; // Servicio de estado compartido
+    // Confirmación asincrónica (null = se guarda en la base antes de seguir)
+    private ReenvioDiarioVentas colaVentas;
 
     // --- Componentes FXML ---
-    @FXML private ListView<String> ticketListView; // Muestra el ticket COMPARTIDO
+    @FXML private ListView<LineaTicket> ticketListView; // Muestra el ticket COMPARTIDO
     @FXML private Label totalLabel; // Muestra el total COMPARTIDO
+    @FXML private Label estadoColaLabel; // Ventas en cola y latencia del último commit
+    @FXML private Label avisoVentaLabel; // Ventas confirmadas que la base rechazó después
     @FXML private Button confirmarBtn;
     @FXML private Button limpiarTicketBtn;
     @FXML private TextField codigoInput;
     @FXML private TextField nombreSearchField;
     @FXML private ListView<Producto> searchResultsListView; // Para resultados de búsqueda
 
+    // Pausa de escritura antes de buscar por nombre
+    private static final long ESPERA_BUSQUEDA_MS = 150;
+    // Búsqueda por nombre en segundo plano (solo se muestra el resultado del último texto)
+    private BuscadorAsincrono<List<Producto>> buscadorNombre;
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm:ss");
+
     /**
      * Inicializa el controlador después de que se cargan los elementos FXML.
      * Configura listeners y la apariencia inicial.
@@ -63,11 +88,24 @@ public class VentaEscanerController {
             }
         });
 
+        // Búsqueda por nombre fuera del hilo de JavaFX, con debounce
+        buscadorNombre = new BuscadorAsincrono<>("busqueda-productos", ESPERA_BUSQUEDA_MS,
+                fragmento -> inventarioService.buscarProductosPorNombre(fragmento),
+                this::mostrarResultadosBusqueda);
+
         // Listener para actualizar la búsqueda por nombre mientras se escribe
         nombreSearchField.textProperty().addListener((observable, oldValue, newValue) -> handleNombreSearchChanged(newValue));
 
         // La vinculación de ticketListView y totalLabel se hace en setVentaStateService
 
+        // Supr/Retroceso sobre una línea del ticket quita una unidad de ese producto
+        ticketListView.setOnKeyPressed(e -> {
+            if ((e.getCode() == KeyCode.DELETE || e.getCode() == KeyCode.BACK_SPACE) && ventaStateService != null) {
+                ventaStateService.quitarUnidad(ticketListView.getSelectionModel().getSelectedItem());
+                e.consume();
+            }
+        });
+
         // Configura (o quita) iconos de botones
         setupIcons();
         // Pone el foco inicial en el campo de código
@@ -84,6 +122,27 @@ public class VentaEscanerController {
         this.ventaService = ventaService;
     }
 
+    /**
+     * Activa la confirmación asincrónica: las ventas se encolan en el diario y se registran en
+     * la base en segundo plano. Los resultados llegan desde el hilo de envío.
+     */
+    public void setColaVentas(ReenvioDiarioVentas colaVentas) {
+        this.colaVentas = colaVentas;
+        if (colaVentas == null) return;
+        colaVentas.setOyente(new ReenvioDiarioVentas.Oyente() {
+            @Override
+            public void ventaAplicada(DiarioVentas.VentaDiario venta, long latenciaMs) {
+                Platform.runLater(VentaEscanerController.this::actualizarEstadoCola);
+            }
+
+            @Override
+            public void ventaEnConflicto(DiarioVentas.Conflicto conflicto) {
+                Platform.runLater(() -> mostrarVentaFallida(conflicto));
+            }
+        });
+        actualizarEstadoCola();
+    }
+
     /**
      * Inyecta la instancia compartida de VentaStateService.
      * Este es el paso CRUCIAL para conectar la UI de esta pestaña con el estado compartido.
@@ -103,7 +162,7 @@ public class VentaEscanerController {
 
             // Actualiza la UI por si ya había items al cargar la pestaña
             this.ventaStateService.actualizarUIVenta();
-            System.out.println("VentaEscanerController: VentaStateService inyectado y UI vinculada.");
+            log.debug("VentaStateService inyectado y UI vinculada.");
 
         } else {
             // Error si el servicio no llega
@@ -160,25 +219,35 @@ public class VentaEscanerController {
 
     /**
      * Se ejecuta cuando cambia el texto en el campo de búsqueda por nombre.
-     * Actualiza la lista de resultados de búsqueda.
+     * Programa la búsqueda en segundo plano; los resultados llegan a mostrarResultadosBusqueda.
      * @param newValue El nuevo texto en el campo de búsqueda.
      */
     private void handleNombreSearchChanged(String newValue) {
-        String nombreFrag = newValue.trim();
-        // Limpiar resultados anteriores
-        searchResultsListView.getItems().clear();
+        String nombreFrag = newValue == null ? "" : newValue.trim();
 
         // No buscar si el fragmento es muy corto o el servicio no está listo
         if (nombreFrag.length() < 2 || inventarioService == null) {
+            buscadorNombre.cancelar(); // Descarta cualquier búsqueda anterior
             ocultarListaResultados();
             return;
         }
 
-        // Realizar búsqueda
-        List<Producto> encontrados = inventarioService.buscarProductosPorNombre(nombreFrag);
+        buscadorNombre.solicitar(nombreFrag);
+    }
 
+    /**
+     * Muestra el resultado de la última búsqueda por nombre (llamado en el hilo de JavaFX).
+     * @param encontrados Productos encontrados.
+     */
+    private void mostrarResultadosBusqueda(List<Producto> encontrados) {
         // Mostrar resultados o ocultar la lista
-        if (encontrados.isEmpty()) {
+        if (encontrados.isEmpty() && inventarioService != null && !inventarioService.isCatalogoCompleto()) {
+            // Arranque desde la instantánea: el índice de nombres se arma al terminar de leer el catálogo
+            searchResultsListView.setItems(FXCollections.observableArrayList());
+            searchResultsListView.setPlaceholder(new Label("Cargando el catálogo: la búsqueda por nombre estará disponible en unos segundos."));
+            searchResultsListView.setVisible(true);
+            searchResultsListView.setManaged(true);
+        } else if (encontrados.isEmpty()) {
             ocultarListaResultados();
         } else {
             searchResultsListView.setItems(FXCollections.observableArrayList(encontrados));
@@ -255,19 +324,25 @@ public class VentaEscanerController {
             return;
         }
 
-        // Obtener productos DEL SERVICIO COMPARTIDO
-        List<Producto> productosParaVender = ventaStateService.getProductos();
+        // Obtener las líneas DEL SERVICIO COMPARTIDO (ya agrupadas por producto)
+        List<LineaTicket> lineasParaVender = List.copyOf(ventaStateService.getLineas());
 
         // Verificar si hay productos en el ticket
-        if (productosParaVender.isEmpty()) {
+        if (lineasParaVender.isEmpty()) {
             AlertUtil.showAlert(Alert.AlertType.WARNING, "Venta Vacía", "Agregue productos al ticket antes de confirmar.");
             return;
         }
 
+        if (colaVentas != null) {
+            confirmarEnCola(lineasParaVender);
+            return;
+        }
+
         // --- Guardado directo de la venta ---
-        boolean exito = ventaService.guardarVenta(productosParaVender);
+        // Con la clave del ticket: si se vuelve a confirmar tras un error, no se registra dos veces
+        ResultadoVenta resultado = ventaService.guardarTicket(ventaStateService.getClaveTicket(), lineasParaVender);
 
-        if (exito) {
+        if (resultado.guardada()) {
             // Limpiar el estado COMPARTIDO a través del servicio
             ventaStateService.limpiarVenta();
             // La UI (ticketListView, totalLabel) se actualiza automáticamente desde el VentaStateService
@@ -275,12 +350,51 @@ public class VentaEscanerController {
             // Mostrar mensaje de éxito
             AlertUtil.showAlert(Alert.AlertType.INFORMATION, "Venta Confirmada", "La venta ha sido registrada exitosamente.");
             codigoInput.requestFocus(); // Preparar para siguiente venta
+        } else if (resultado == ResultadoVenta.OTRO_CONTENIDO) {
+            // Un intento anterior de este ticket llegó a la base aunque informó error, y después se modificó
+            ventaStateService.renovarClaveTicket();
+            AlertUtil.showAlert(Alert.AlertType.WARNING, "Ticket ya registrado",
+                    "Este ticket ya había quedado registrado en un intento anterior, con otros productos o cantidades.\n"
+                    + "Revise el historial de ventas. Si corresponde cobrar el ticket como está ahora, vuelva a confirmarlo: "
+                    + "se registrará como una venta aparte.");
         } else {
             // Mostrar mensaje de error
             AlertUtil.showAlert(Alert.AlertType.ERROR, "Error al Guardar", "No se pudo registrar la venta. Revise conexión y stock.");
         }
     }
 
+    // Confirmación asincrónica: sin diálogo de éxito, para seguir escaneando enseguida
+    private void confirmarEnCola(List<LineaTicket> lineasParaVender) {
+        try {
+            colaVentas.encolar(ventaStateService.getClaveTicket(), lineasParaVender);
+        } catch (IOException e) {
+            System.err.println("❌ No se pudo encolar la venta: " + e.getMessage());
+            AlertUtil.showAlert(Alert.AlertType.ERROR, "Error al Guardar",
+                    "No se pudo guardar la venta en el diario local. La venta NO quedó registrada.\n" + e.getMessage());
+            return;
+        }
+        ventaStateService.limpiarVenta();
+        actualizarEstadoCola();
+        codigoInput.requestFocus(); // Preparar para siguiente venta
+    }
+
+    private void actualizarEstadoCola() {
+        if (colaVentas == null) return;
+        int pendientes = colaVentas.getPendientes();
+        long latencia = colaVentas.getUltimaLatenciaMs();
+        estadoColaLabel.setText((pendientes == 0 ? "Ventas registradas" : "Ventas en cola: " + pendientes)
+                + (latencia >= 0 ? " · último registro: " + latencia + " ms" : ""));
+    }
+
+    private void mostrarVentaFallida(DiarioVentas.Conflicto conflicto) {
+        DiarioVentas.VentaDiario venta = conflicto.venta();
+        avisoVentaLabel.setText(String.format("⚠️ La venta de las %s ($%.2f) no se registró: %s. Quedó en el diario para revisarla.",
+                venta.fechaHora().format(FORMATO_HORA), venta.total(), conflicto.motivo()));
+        avisoVentaLabel.setVisible(true);
+        avisoVentaLabel.setManaged(true);
+        actualizarEstadoCola();
+    }
+
     /**
      * Limpia todos los productos del ticket actual (estado compartido).
      * Pide confirmación antes de limpiar.
@@ -291,7 +405,7 @@ public class VentaEscanerController {
         if (ventaStateService == null) return; // Salir si el servicio no está listo
 
         // Verificar si hay productos en el estado COMPARTIDO
-        if (!ventaStateService.getProductos().isEmpty()) {
+        if (!ventaStateService.estaVacia()) {
             // Pedir confirmación
             Alert confirm = new Alert(Alert.AlertType.CONFIRMATION,
                     "¿Está seguro de que desea limpiar todos los productos del ticket actual?",
@@ -340,7 +454,7 @@ public class VentaEscanerController {
             System.err.println("Advertencia: Intentando añadir ProductoManual desde VentaEscanerController.");
             anadir = true;
         } else {
-            // Para productos normales, verificar stock actual en BD
+            // Para productos normales, verificar stock actual (catálogo en memoria, sin ir a la BD)
             Producto productoActualizado = inventarioService.buscarProductoPorCodigo(producto.getCodigo());
             if (productoActualizado != null && productoActualizado.getStock() > 0) {
                 anadir = true; // Hay stock
@@ -361,14 +475,21 @@ public class VentaEscanerController {
         if (anadir) {
             ventaStateService.agregarProducto(producto);
             // La UI se actualiza automáticamente por VentaStateService
-            System.out.println("DEBUG (VentaEscanerController): Producto '" + producto.getNombre() + "' añadido vía VentaStateService.");
+            log.debug(() -> "Producto '" + producto.getNombre() + "' añadido vía VentaStateService.");
         } else {
-            System.out.println("DEBUG (VentaEscanerController): Producto '" + producto.getNombre() + "' NO añadido.");
+            log.debug(() -> "Producto '" + producto.getNombre() + "' NO añadido.");
             // Devolver foco si no se añadió para facilitar corrección o nueva entrada
             codigoInput.requestFocus();
         }
     }
 
+    /**
+     * Métricas de latencia de la búsqueda por nombre (para diagnóstico).
+     */
+    public BuscadorAsincrono.Metricas getMetricasBusqueda() {
+        return buscadorNombre.getMetricas();
+    }
+
     // El método actualizarTicketEscanerUI() ya no es necesario aquí.
 
 } // Fin de la clase VentaEscanerControllerla clase VentaEscanerController
\ No newline at end of file
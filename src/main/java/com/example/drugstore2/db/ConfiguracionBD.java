@@ -0,0 +1,129 @@
+package com.example.drugstore2.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Parámetros de conexión y del pool de conexiones.
+ * Se leen de /com/example/db.properties y cada clave puede sobrescribirse
+ * con una propiedad de sistema del mismo nombre (ej. -Ddb.url=...).
+ *
+ * Con db.perfil=embebida la aplicación usa una base H2 en modo MySQL (archivo local o en
+ * memoria, según db.embebida.url) en lugar del servidor MySQL, y crea las tablas al iniciar.
+ * Sirve para pruebas de carga, benchmarks y ejecuciones sin servidor.
+ */
+public class ConfiguracionBD {
+
+    private static final String RECURSO = "/com/example/db.properties";
+
+    public static final String PERFIL_MYSQL = "mysql";
+    public static final String PERFIL_EMBEBIDA = "embebida";
+
+    private final Properties props;
+
+    private ConfiguracionBD(Properties props) {
+        this.props = props;
+    }
+
+    /**
+     * Carga la configuración desde el classpath y aplica las propiedades de sistema.
+     * Si el archivo no existe se usan los valores por defecto (MySQL local).
+     */
+    public static ConfiguracionBD cargar() {
+        Properties props = new Properties();
+        try (InputStream in = ConfiguracionBD.class.getResourceAsStream(RECURSO)) {
+            if (in != null) {
+                props.load(in);
+            } else {
+                System.err.println("⚠️ No se encontró " + RECURSO + ", usando configuración por defecto.");
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Error al leer " + RECURSO + ": " + e.getMessage());
+        }
+        for (String clave : System.getProperties().stringPropertyNames()) {
+            if (clave.startsWith("db.")) props.setProperty(clave, System.getProperty(clave));
+        }
+        return new ConfiguracionBD(props);
+    }
+
+    /** Perfil de persistencia: {@value #PERFIL_MYSQL} (por defecto) o {@value #PERFIL_EMBEBIDA}. */
+    public String getPerfil() {
+        String perfil = get("db.perfil", PERFIL_MYSQL).toLowerCase(Locale.ROOT);
+        if (!perfil.equals(PERFIL_MYSQL) && !perfil.equals(PERFIL_EMBEBIDA)) {
+            System.err.println("⚠️ Perfil de base de datos desconocido: '" + perfil + "', usando " + PERFIL_MYSQL);
+            return PERFIL_MYSQL;
+        }
+        return perfil;
+    }
+
+    public boolean isEmbebida() {
+        return PERFIL_EMBEBIDA.equals(getPerfil());
+    }
+
+    public String getUrl() {
+        if (isEmbebida()) {
+            return get("db.embebida.url", "jdbc:h2:./datos/drugstore;MODE=MySQL;DATABASE_TO_LOWER=TRUE;AUTO_SERVER=TRUE");
+        }
+        return get("db.url", "jdbc:mysql://localhost:3306/drugstore?useSSL=false&serverTimezone=UTC");
+    }
+
+    public String getUsuario() { return isEmbebida() ? get("db.embebida.usuario", "sa") : get("db.usuario", "root"); }
+    public String getClave() { return isEmbebida() ? get("db.embebida.clave", "") : get("db.clave", ""); }
+    public String getDriver() { return isEmbebida() ? "org.h2.Driver" : get("db.driver", "com.mysql.cj.jdbc.Driver"); }
+
+    /**
+     * Si hay que crear las tablas base al iniciar (las que no existan). Por defecto solo en el
+     * perfil embebido: en MySQL el esquema lo administra el servidor.
+     */
+    public boolean isCrearEsquema() {
+        return Boolean.parseBoolean(get("db.crearEsquema", String.valueOf(isEmbebida())));
+    }
+
+    /**
+     * Archivo de la instantánea del catálogo (copia en disco para resolver escaneos al iniciar),
+     * o null si está desactivada. Por defecto uno por perfil, en ./datos.
+     */
+    public Path getArchivoInstantaneaCatalogo() {
+        if (!Boolean.parseBoolean(get("db.catalogo.usarInstantanea", "true"))) return null;
+        return Path.of(get("db.catalogo.instantanea", "datos/catalogo-" + getPerfil() + ".bin"));
+    }
+
+    /**
+     * Archivo del diario de ventas hechas sin conexión (se envían a la base cuando vuelve),
+     * o null si está desactivado (sin conexión, la venta falla).
+     */
+    public Path getArchivoDiarioVentas() {
+        if (!Boolean.parseBoolean(get("db.diario.usar", "true"))) return null;
+        return Path.of(get("db.diario.archivo", "datos/ventas-pendientes-" + getPerfil() + ".diario"));
+    }
+
+    public int getPoolMinimo() { return getInt("db.pool.minimo", 2); }
+    public int getPoolMaximo() { return getInt("db.pool.maximo", 10); }
+    public String getConsultaValidacion() { return get("db.pool.consultaValidacion", "SELECT 1"); }
+    public long getTimeoutEsperaMs() { return getLong("db.pool.timeoutEsperaMs", 5000); }
+    /** Tiempo que una conexión puede estar prestada antes de avisar de una posible fuga (0 = desactivado). */
+    public long getUmbralFugaMs() { return getLong("db.pool.umbralFugaMs", 30000); }
+
+    public String get(String clave, String porDefecto) {
+        String valor = props.getProperty(clave);
+        return (valor == null || valor.isBlank()) ? porDefecto : valor.trim();
+    }
+
+    private int getInt(String clave, int porDefecto) {
+        return (int) getLong(clave, porDefecto);
+    }
+
+    private long getLong(String clave, long porDefecto) {
+        String valor = props.getProperty(clave);
+        if (valor == null || valor.isBlank()) return porDefecto;
+        try {
+            return Long.parseLong(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Valor inválido para " + clave + ": '" + valor + "', usando " + porDefecto);
+            return porDefecto;
+        }
+    }
+}
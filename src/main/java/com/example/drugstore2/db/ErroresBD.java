@@ -0,0 +1,102 @@
+package com.example.drugstore2.db;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Clasifica los errores SQL de escritura que se deben a la concurrencia entre cajas
+ * (bloqueos mutuos y esperas de bloqueo agotadas), a la pérdida de conexión con la base
+ * o a violaciones de clave, y lleva la cuenta de cada tipo y el primer error de cada uno.
+ * Los servicios llaman a {@link #registrar(SQLException)} en los catch de sus escrituras.
+ */
+public final class ErroresBD {
+
+    public enum Tipo { BLOQUEO_MUTUO, ESPERA_AGOTADA, SIN_CONEXION, VIOLACION_CLAVE, OTRO }
+
+    private static final LongAdder BLOQUEOS_MUTUOS = new LongAdder();
+    private static final LongAdder ESPERAS_AGOTADAS = new LongAdder();
+    private static final LongAdder SIN_CONEXION = new LongAdder();
+    private static final LongAdder VIOLACIONES_CLAVE = new LongAdder();
+    private static final LongAdder OTROS = new LongAdder();
+    // Primer error de cada tipo ("[SQLState] mensaje"), para diagnosticar sin revisar la consola
+    private static final Map<Tipo, String> PRIMEROS = new ConcurrentHashMap<>();
+
+    private ErroresBD() {}
+
+    /**
+     * Tipo de error: MySQL 1213 / H2 40001 (bloqueo mutuo, SQLState 40001) o
+     * MySQL 1205 / H2 50200 (espera de bloqueo agotada). Sin conexión: SQLState de clase 08
+     * (ej. 08S01, enlace caído) o las excepciones de conexión de JDBC (el pool lanza
+     * SQLTransientConnectionException si no consigue conexión a tiempo). Violación de clave:
+     * SQLState de clase 23 (clave primaria o única duplicada, clave foránea u otra restricción).
+     * Revisa también las causas encadenadas.
+     */
+    public static Tipo clasificar(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (!(t instanceof SQLException sql)) continue;
+            if ("40001".equals(sql.getSQLState()) || sql.getErrorCode() == 1213) return Tipo.BLOQUEO_MUTUO;
+            if (sql.getErrorCode() == 1205 || sql.getErrorCode() == 50200 || "HYT00".equals(sql.getSQLState())) {
+                return Tipo.ESPERA_AGOTADA;
+            }
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException
+                    || t instanceof SQLRecoverableException) {
+                return Tipo.SIN_CONEXION;
+            }
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                return Tipo.SIN_CONEXION;
+            }
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLIntegrityConstraintViolationException) return Tipo.VIOLACION_CLAVE;
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("23")) {
+                return Tipo.VIOLACION_CLAVE;
+            }
+        }
+        return Tipo.OTRO;
+    }
+
+    /** Clasifica el error, lo suma a su contador y devuelve el tipo. */
+    public static Tipo registrar(SQLException e) {
+        Tipo tipo = clasificar(e);
+        switch (tipo) {
+            case BLOQUEO_MUTUO -> BLOQUEOS_MUTUOS.increment();
+            case ESPERA_AGOTADA -> ESPERAS_AGOTADAS.increment();
+            case SIN_CONEXION -> SIN_CONEXION.increment();
+            case VIOLACION_CLAVE -> VIOLACIONES_CLAVE.increment();
+            default -> OTROS.increment();
+        }
+        PRIMEROS.computeIfAbsent(tipo, t -> "[" + e.getSQLState() + "] " + e.getMessage());
+        return tipo;
+    }
+
+    public static Conteo getConteo() {
+        return new Conteo(BLOQUEOS_MUTUOS.sum(), ESPERAS_AGOTADAS.sum(), OTROS.sum(), SIN_CONEXION.sum(), VIOLACIONES_CLAVE.sum());
+    }
+
+    /** Primer error registrado de cada tipo desde el inicio ("[SQLState] mensaje"), en el orden de {@link Tipo}. */
+    public static Map<Tipo, String> getPrimeros() {
+        Map<Tipo, String> primeros = new EnumMap<>(Tipo.class);
+        primeros.putAll(PRIMEROS);
+        return primeros;
+    }
+
+    /**
+     * Errores de escritura registrados desde el inicio.
+     */
+    public record Conteo(long bloqueosMutuos, long esperasAgotadas, long otros, long sinConexion, long violacionesClave) {
+        @Override
+        public String toString() {
+            return String.format("bloqueos mutuos=%d, esperas agotadas=%d, sin conexión=%d, violaciones de clave=%d, otros=%d",
+                    bloqueosMutuos, esperasAgotadas, sinConexion, violacionesClave, otros);
+        }
+    }
+}
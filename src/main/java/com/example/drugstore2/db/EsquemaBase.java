@@ -0,0 +1,54 @@
+package com.example.drugstore2.db;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Crea las tablas base de la aplicación (productos, categorías, ventas, caja y log de eventos)
+ * que no existan, desde /com/example/esquema-base.sql. Se usa con el perfil embebido, donde la
+ * base empieza vacía; después {@link MigracionesBD} agrega las tablas e índices posteriores.
+ */
+public class EsquemaBase {
+
+    private static final String RECURSO = "/com/example/esquema-base.sql";
+
+    private final DataSource dataSource;
+
+    public EsquemaBase(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Ejecuta el script (todas sus sentencias son idempotentes, se puede correr en cada inicio).
+     * @return cantidad de sentencias ejecutadas
+     */
+    public int crear() throws SQLException {
+        String script = leerScript();
+        int ejecutadas = 0;
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            // Sin comentarios de línea; las sentencias se separan por ';'
+            for (String sentencia : script.replaceAll("(?m)^\\s*--.*$", "").split(";")) {
+                if (sentencia.isBlank()) continue;
+                stmt.execute(sentencia.trim());
+                ejecutadas++;
+            }
+        }
+        System.out.println("✅ Tablas base verificadas (" + ejecutadas + " sentencia(s)).");
+        return ejecutadas;
+    }
+
+    private static String leerScript() throws SQLException {
+        try (InputStream in = EsquemaBase.class.getResourceAsStream(RECURSO)) {
+            if (in == null) throw new SQLException("No se encontró " + RECURSO);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Error al leer " + RECURSO + ": " + e.getMessage(), e);
+        }
+    }
+}
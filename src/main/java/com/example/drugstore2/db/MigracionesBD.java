@@ -0,0 +1,269 @@
+package com.example.drugstore2.db;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Migraciones del esquema que la aplicación aplica al iniciar.
+ *
+ * Cada migración tiene un número de versión; las ya aplicadas quedan registradas en la
+ * tabla schema_migraciones y no se repiten. Para cambiar el esquema se agrega una nueva
+ * entrada al final de {@link #MIGRACIONES} (nunca se modifica una existente).
+ *
+ * En MySQL cada sentencia DDL se confirma sola: si una migración falla a la mitad, lo que
+ * alcanzó a hacer queda aplicado pero la versión no se registra. Por eso cada paso verifica
+ * antes si ya está hecho (columnaExiste, crearIndiceSiFalta), y la migración se puede repetir.
+ */
+public class MigracionesBD {
+
+    @FunctionalInterface
+    private interface Paso {
+        void aplicar(Connection conn) throws SQLException;
+    }
+
+    private record Migracion(int version, String descripcion, Paso paso) {}
+
+    // Tablas del esquema base con id AUTO_INCREMENT
+    private static final String[] TABLAS_CON_ID = {
+            "categorias", "productos", "ventas", "detalle_ventas", "log_eventos", "caja_sesiones", "caja_movimientos"};
+
+    private static final List<Migracion> MIGRACIONES = List.of(
+            new Migracion(1, "Tabla resumen_ventas_diario", conn -> ejecutar(conn,
+                    "CREATE TABLE IF NOT EXISTS resumen_ventas_diario (" +
+                    "  fecha DATE NOT NULL," +
+                    "  producto_codigo VARCHAR(50) NOT NULL," +
+                    "  categoria VARCHAR(100) NOT NULL," +
+                    "  unidades INT NOT NULL DEFAULT 0," +
+                    "  ingresos DECIMAL(14,2) NOT NULL DEFAULT 0," +
+                    "  costo DECIMAL(14,2) NOT NULL DEFAULT 0," +
+                    "  PRIMARY KEY (fecha, producto_codigo)" +
+                    ")")),
+            new Migracion(2, "Índices para rangos de fecha e historial", conn -> {
+                // Rangos de fechas y orden/cursor del historial (InnoDB agrega el id al final del índice)
+                crearIndiceSiFalta(conn, "ventas", "idx_ventas_fecha_hora", "fecha_hora");
+                crearIndiceSiFalta(conn, "detalle_ventas", "idx_detalle_ventas_venta", "venta_id");
+                crearIndiceSiFalta(conn, "detalle_ventas", "idx_detalle_ventas_producto", "producto_codigo");
+                crearIndiceSiFalta(conn, "productos", "idx_productos_codigo", "codigo");
+                crearIndiceSiFalta(conn, "productos", "idx_productos_activo", "activo", "codigo");
+            }),
+            new Migracion(3, "Clave de ticket única en ventas", conn -> {
+                // Identifica cada ticket para no registrarlo dos veces (reenvío del diario de ventas).
+                // NULL en las ventas anteriores: el índice único admite varios NULL
+                agregarColumnaSiFalta(conn, "ventas", "clave_ticket", "VARCHAR(36) NULL");
+                crearIndiceUnicoSiFalta(conn, "ventas", "uk_ventas_clave_ticket", "clave_ticket");
+            }),
+            new Migracion(4, "Huella del contenido del ticket en ventas", conn ->
+                    // Distingue un reintento del mismo ticket de uno modificado con la misma clave
+                    agregarColumnaSiFalta(conn, "ventas", "huella_ticket", "VARCHAR(8) NULL")),
+            new Migracion(5, "Ids por secuencia en H2", conn -> {
+                // En modo MySQL, H2 2.2 ajusta la secuencia del AUTO_INCREMENT después de generar cada id
+                // (Column.updateSequenceIfRequired) leyendo y modificando en dos pasos sin bloqueo: con
+                // varias cajas insertando a la vez la hace retroceder y repite ids. Un DEFAULT con
+                // secuencia propia no pasa por ahí. En MySQL no hace nada.
+                if (!esH2(conn)) return;
+                for (String tabla : TABLAS_CON_ID) {
+                    if (!columnaExiste(conn, tabla, "id")) continue;
+                    ejecutar(conn, "CREATE SEQUENCE IF NOT EXISTS " + tabla + "_id_seq");
+                    if (esIdentidad(conn, tabla, "id")) {
+                        ejecutar(conn, "ALTER TABLE " + tabla + " ALTER COLUMN id DROP IDENTITY");
+                    }
+                    ejecutar(conn, "ALTER TABLE " + tabla + " ALTER COLUMN id SET DEFAULT NEXT VALUE FOR " + tabla + "_id_seq");
+                    reiniciarSecuencia(conn, tabla);
+                }
+            })
+    );
+
+    private final DataSource dataSource;
+
+    public MigracionesBD(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Aplica en orden las migraciones pendientes. Si una falla se detiene y lanza la excepción
+     * (las anteriores quedan registradas y no se repiten en el próximo inicio).
+     * @return cantidad de migraciones aplicadas
+     */
+    public int aplicar() throws SQLException {
+        int aplicadas = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            ejecutar(conn, "CREATE TABLE IF NOT EXISTS schema_migraciones (" +
+                    "  version INT NOT NULL PRIMARY KEY," +
+                    "  descripcion VARCHAR(200) NOT NULL," +
+                    "  aplicada_en TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+            Set<Integer> yaAplicadas = new HashSet<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT version FROM schema_migraciones")) {
+                while (rs.next()) yaAplicadas.add(rs.getInt(1));
+            }
+
+            for (Migracion m : MIGRACIONES) {
+                if (yaAplicadas.contains(m.version())) continue;
+                System.out.println("ℹ️ Aplicando migración " + m.version() + ": " + m.descripcion() + "...");
+                m.paso().aplicar(conn);
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "INSERT INTO schema_migraciones (version, descripcion) VALUES (?, ?)")) {
+                    ps.setInt(1, m.version());
+                    ps.setString(2, m.descripcion());
+                    ps.executeUpdate();
+                }
+                aplicadas++;
+            }
+        }
+        System.out.println("✅ Esquema al día (" + aplicadas + " migración(es) aplicada(s)).");
+        return aplicadas;
+    }
+
+    /**
+     * Ejecuta EXPLAIN sobre las consultas por rango de fechas y devuelve un aviso por cada
+     * tabla que MySQL planea recorrer completa (type = ALL) en lugar de usar un índice.
+     * Con tablas de pocas filas un recorrido completo puede ser lo más barato, así que un
+     * aviso no es necesariamente un error. Fuera de MySQL devuelve una lista vacía.
+     */
+    public List<String> verificarPlanes() {
+        List<String> avisos = new ArrayList<>();
+        Map<String, String> consultas = new LinkedHashMap<>();
+        consultas.put("ventas por rango",
+                "EXPLAIN SELECT v.id FROM ventas v WHERE v.fecha_hora >= ? AND v.fecha_hora < ?");
+        consultas.put("detalle por rango",
+                "EXPLAIN SELECT dv.cantidad FROM ventas v JOIN detalle_ventas dv ON v.id = dv.venta_id " +
+                "WHERE v.fecha_hora >= ? AND v.fecha_hora < ?");
+
+        try (Connection conn = dataSource.getConnection()) {
+            if (!conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql")) {
+                return avisos;
+            }
+            Timestamp hasta = new Timestamp(System.currentTimeMillis());
+            Timestamp desde = new Timestamp(hasta.getTime() - 86_400_000L);
+            for (Map.Entry<String, String> c : consultas.entrySet()) {
+                try (PreparedStatement ps = conn.prepareStatement(c.getValue())) {
+                    ps.setTimestamp(1, desde);
+                    ps.setTimestamp(2, hasta);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String tipo = rs.getString("type");
+                            if ("ALL".equalsIgnoreCase(tipo)) {
+                                avisos.add(c.getKey() + ": recorrido completo de '" + rs.getString("table")
+                                        + "' (filas estimadas: " + rs.getString("rows") + ")");
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            avisos.add("No se pudo ejecutar EXPLAIN: " + e.getMessage());
+        }
+        for (String aviso : avisos) System.err.println("⚠️ Plan de consulta: " + aviso);
+        return avisos;
+    }
+
+    /**
+     * En H2, lleva la secuencia de ids de cada tabla al id más alto + 1. Hace falta después de
+     * insertar filas con ids explícitos (ej. GeneradorDatos), que no avanzan la secuencia.
+     * En MySQL no hace nada: el AUTO_INCREMENT se ajusta solo.
+     */
+    public void sincronizarSecuencias() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            if (!esH2(conn)) return;
+            for (String tabla : TABLAS_CON_ID) {
+                if (columnaExiste(conn, tabla, "id")) reiniciarSecuencia(conn, tabla);
+            }
+        }
+    }
+
+    private static boolean esH2(Connection conn) throws SQLException {
+        return "H2".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName());
+    }
+
+    private static void reiniciarSecuencia(Connection conn, String tabla) throws SQLException {
+        long siguiente;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM " + tabla)) {
+            rs.next();
+            siguiente = rs.getLong(1);
+        }
+        ejecutar(conn, "ALTER SEQUENCE " + tabla + "_id_seq RESTART WITH " + siguiente);
+    }
+
+    private static void ejecutar(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    // Crea el índice salvo que ya exista uno que empiece por las mismas columnas
+    private static void crearIndiceSiFalta(Connection conn, String tabla, String nombre, String... columnas) throws SQLException {
+        crearIndiceSiFalta(conn, false, tabla, nombre, columnas);
+    }
+
+    // Crea el índice único salvo que ya exista uno único sobre exactamente esas columnas
+    private static void crearIndiceUnicoSiFalta(Connection conn, String tabla, String nombre, String... columnas) throws SQLException {
+        crearIndiceSiFalta(conn, true, tabla, nombre, columnas);
+    }
+
+    private static void crearIndiceSiFalta(Connection conn, boolean unico, String tabla, String nombre, String... columnas) throws SQLException {
+        Map<String, SortedMap<Integer, String>> indices = leerIndices(conn, tabla, unico);
+        for (SortedMap<Integer, String> cols : indices.values()) {
+            List<String> existentes = new ArrayList<>(cols.values());
+            // Un índice único sobre más columnas no garantiza la unicidad de estas
+            if (unico ? existentes.size() == columnas.length : existentes.size() >= columnas.length) {
+                boolean cubre = true;
+                for (int i = 0; i < columnas.length; i++) {
+                    if (!existentes.get(i).equalsIgnoreCase(columnas[i])) { cubre = false; break; }
+                }
+                if (cubre) return;
+            }
+        }
+        ejecutar(conn, "CREATE " + (unico ? "UNIQUE " : "") + "INDEX " + nombre + " ON " + tabla
+                + " (" + String.join(", ", columnas) + ")");
+        System.out.println("   Índice creado: " + nombre + " en " + tabla);
+    }
+
+    // Agrega la columna salvo que ya exista (de una migración que falló después del ALTER)
+    private static void agregarColumnaSiFalta(Connection conn, String tabla, String columna, String definicion) throws SQLException {
+        if (columnaExiste(conn, tabla, columna)) return;
+        ejecutar(conn, "ALTER TABLE " + tabla + " ADD COLUMN " + columna + " " + definicion);
+    }
+
+    private static boolean columnaExiste(Connection conn, String tabla, String columna) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        // Algunas bases guardan los nombres en mayúsculas
+        for (String[] nombres : new String[][]{{tabla, columna}, {tabla.toUpperCase(Locale.ROOT), columna.toUpperCase(Locale.ROOT)}}) {
+            try (ResultSet rs = md.getColumns(conn.getCatalog(), null, nombres[0], nombres[1])) {
+                if (rs.next()) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean esIdentidad(Connection conn, String tabla, String columna) throws SQLException {
+        DatabaseMetaData md = conn.getMetaData();
+        for (String[] nombres : new String[][]{{tabla, columna}, {tabla.toUpperCase(Locale.ROOT), columna.toUpperCase(Locale.ROOT)}}) {
+            try (ResultSet rs = md.getColumns(conn.getCatalog(), null, nombres[0], nombres[1])) {
+                if (rs.next()) return "YES".equalsIgnoreCase(rs.getString("IS_AUTOINCREMENT"));
+            }
+        }
+        return false;
+    }
+
+    // nombre de índice -> (posición -> columna)
+    private static Map<String, SortedMap<Integer, String>> leerIndices(Connection conn, String tabla, boolean soloUnicos) throws SQLException {
+        Map<String, SortedMap<Integer, String>> indices = new HashMap<>();
+        DatabaseMetaData md = conn.getMetaData();
+        // Algunas bases guardan los nombres en mayúsculas
+        for (String nombreTabla : new String[]{tabla, tabla.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = md.getIndexInfo(conn.getCatalog(), null, nombreTabla, soloUnicos, true)) {
+                while (rs.next()) {
+                    String indice = rs.getString("INDEX_NAME");
+                    String columna = rs.getString("COLUMN_NAME");
+                    if (indice == null || columna == null) continue;
+                    indices.computeIfAbsent(indice, k -> new TreeMap<>()).put((int) rs.getShort("ORDINAL_POSITION"), columna);
+                }
+            }
+            if (!indices.isEmpty()) break;
+        }
+        return indices;
+    }
+}
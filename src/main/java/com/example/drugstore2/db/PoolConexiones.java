@@ -0,0 +1,120 @@
+package com.example.drugstore2.db;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Pool de conexiones compartido por todos los servicios.
+ * Cada operación pide una conexión al pool y la devuelve al terminar, de modo que
+ * el escaneo, el guardado de ventas y los reportes pueden ejecutarse a la vez
+ * y una conexión caída se reemplaza sin afectar al resto de la aplicación.
+ */
+public class PoolConexiones implements AutoCloseable {
+
+    private final HikariDataSource dataSource;
+    private final Metricas metricas = new Metricas();
+
+    public PoolConexiones(ConfiguracionBD config) {
+        HikariConfig hc = new HikariConfig();
+        hc.setPoolName("drugstore-pool");
+        hc.setDriverClassName(config.getDriver());
+        hc.setJdbcUrl(config.getUrl());
+        hc.setUsername(config.getUsuario());
+        hc.setPassword(config.getClave());
+        hc.setMinimumIdle(config.getPoolMinimo());
+        hc.setMaximumPoolSize(Math.max(config.getPoolMinimo(), config.getPoolMaximo()));
+        hc.setConnectionTestQuery(config.getConsultaValidacion());
+        hc.setConnectionTimeout(config.getTimeoutEsperaMs());
+        if (config.getUmbralFugaMs() > 0) {
+            hc.setLeakDetectionThreshold(config.getUmbralFugaMs());
+        }
+        hc.setMetricsTrackerFactory(metricas);
+        if (config.getUrl().startsWith("jdbc:mysql:")) {
+            // Sentencias preparadas cacheadas en el driver MySQL
+            hc.addDataSourceProperty("cachePrepStmts", "true");
+            hc.addDataSourceProperty("prepStmtCacheSize", "250");
+            hc.addDataSourceProperty("useServerPrepStmts", "true");
+            // Envía los lotes (addBatch/executeBatch) en una sola ida al servidor
+            hc.addDataSourceProperty("rewriteBatchedStatements", "true");
+            // Respeta setFetchSize con un cursor en el servidor (exportaciones grandes sin cargar todo en memoria)
+            hc.addDataSourceProperty("useCursorFetch", "true");
+        }
+
+        this.dataSource = new HikariDataSource(hc);
+        System.out.println("✅ Pool de conexiones iniciado (" + config.getPoolMinimo() + "-" + hc.getMaximumPoolSize() + " conexiones).");
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Foto instantánea del estado del pool.
+     */
+    public EstadoPool getEstado() {
+        HikariPoolMXBean mx = dataSource.getHikariPoolMXBean();
+        long prestamos = metricas.prestamos.get();
+        return new EstadoPool(
+                mx != null ? mx.getActiveConnections() : 0,
+                mx != null ? mx.getIdleConnections() : 0,
+                mx != null ? mx.getTotalConnections() : 0,
+                mx != null ? mx.getThreadsAwaitingConnection() : 0,
+                prestamos,
+                prestamos == 0 ? 0.0 : metricas.esperaTotalNanos.get() / 1_000_000.0 / prestamos,
+                metricas.esperaMaximaNanos.get() / 1_000_000.0,
+                metricas.timeouts.get());
+    }
+
+    @Override
+    public void close() {
+        if (!dataSource.isClosed()) {
+            System.out.println("Cerrando pool de conexiones... " + getEstado());
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Estado del pool: conexiones activas/ociosas, hilos esperando y tiempos de espera.
+     */
+    public record EstadoPool(int activas, int ociosas, int total, int hilosEsperando,
+                             long prestamos, double esperaPromedioMs, double esperaMaximaMs, long timeouts) {
+        @Override
+        public String toString() {
+            return String.format("activas=%d, ociosas=%d, total=%d, esperando=%d, préstamos=%d, espera prom=%.2fms, espera máx=%.2fms, timeouts=%d",
+                    activas, ociosas, total, hilosEsperando, prestamos, esperaPromedioMs, esperaMaximaMs, timeouts);
+        }
+    }
+
+    // Recibe de HikariCP el tiempo que tarda cada préstamo de conexión
+    private static class Metricas implements MetricsTrackerFactory, IMetricsTracker {
+        private final AtomicLong prestamos = new AtomicLong();
+        private final AtomicLong esperaTotalNanos = new AtomicLong();
+        private final LongAccumulator esperaMaximaNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLong timeouts = new AtomicLong();
+
+        @Override
+        public IMetricsTracker create(String poolName, PoolStats poolStats) {
+            return this;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            prestamos.incrementAndGet();
+            esperaTotalNanos.addAndGet(elapsedAcquiredNanos);
+            esperaMaximaNanos.accumulate(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.drugstore2.model;
+
+/**
+ * Una línea del ticket en curso: un producto y cuántas unidades lleva.
+ * Inmutable; al sumar o quitar unidades se reemplaza por una nueva con otra cantidad.
+ */
+public record LineaTicket(String clave, Producto producto, int cantidad) {
+
+    /**
+     * Clave con la que se agrupan las unidades: el código del producto, o nombre + precio para los manuales
+     * (todos los manuales comparten el código "MANUAL").
+     */
+    public static String claveDe(Producto p) {
+        if (p instanceof ProductoManual) {
+            return "MANUAL_" + p.getNombre() + "_" + p.getPrecioVenta();
+        }
+        return p.getCodigo();
+    }
+
+    public LineaTicket conCantidad(int nuevaCantidad) {
+        return new LineaTicket(clave, producto, nuevaCantidad);
+    }
+
+    public double getSubtotal() {
+        return producto.getPrecioVenta() * cantidad;
+    }
+
+    public DetalleVenta aDetalle() {
+        return new DetalleVenta(producto, cantidad);
+    }
+
+    // Texto para el ListView del ticket
+    public String getTexto() {
+        return String.format("%d x %s ($%.2f c/u)", cantidad, producto.getNombre(), producto.getPrecioVenta());
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.drugstore2.model;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Una línea de una venta ya registrada (historial, exportaciones). Inmutable y sin
+ * propiedades JavaFX; las tablas crean sus valores observables solo para las filas visibles.
+ */
+public record LineaVenta(int ventaId, LocalDateTime fechaHora, String codigo, String nombre,
+                         int cantidad, double precioUnitario, double subtotal) {
+
+    private static final DateTimeFormatter FORMATO_FECHA_HORA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    // Para mostrarlo como String en el TableView
+    public String getFechaHoraString() {
+        return fechaHora.format(FORMATO_FECHA_HORA);
+    }
+}
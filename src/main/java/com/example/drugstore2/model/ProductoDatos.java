@@ -0,0 +1,23 @@
+package com.example.drugstore2.model;
+
+/**
+ * Datos de un producto sin propiedades JavaFX: inmutable y liviano.
+ * Es lo que guardan el catálogo en memoria y los servicios; la UI lo convierte a
+ * {@link Producto} (con propiedades observables) solo cuando necesita editarlo o enlazarlo.
+ */
+public record ProductoDatos(String codigo, String nombre, double precioVenta, double precioCosto,
+                            int stock, String categoriaNombre, int stockMinimo) {
+
+    public static ProductoDatos desde(Producto p) {
+        return new ProductoDatos(p.getCodigo(), p.getNombre(), p.getPrecioVenta(), p.getPrecioCosto(),
+                p.getStock(), p.getCategoriaNombre(), p.getStockMinimo());
+    }
+
+    public Producto aProducto() {
+        return new Producto(codigo, nombre, precioVenta, precioCosto, stock, categoriaNombre, stockMinimo);
+    }
+
+    public ProductoDatos conStock(int nuevoStock) {
+        return new ProductoDatos(codigo, nombre, precioVenta, precioCosto, nuevoStock, categoriaNombre, stockMinimo);
+    }
+}
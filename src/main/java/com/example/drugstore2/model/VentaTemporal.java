@@ -1,34 +1,108 @@
 package com.example.drugstore2.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Ticket de la venta en curso, agrupado por producto: una línea por producto con su cantidad.
+ *
+ * Agregar o quitar una unidad es O(1) (búsqueda por clave y reemplazo de la línea) y el total
+ * se mantiene acumulado. Cada cambio se avisa al {@link Oyente} indicando qué línea cambió,
+ * así la UI puede actualizar solo esa fila.
+ */
 public class VentaTemporal {
 
-    // Lista que mantiene todos los productos escaneados o agregados manualmente
-    private List<Producto> productos = new ArrayList<>();
+    /**
+     * Recibe los cambios del ticket, con la posición de la línea afectada.
+     */
+    public interface Oyente {
+        void lineaAgregada(int posicion, LineaTicket linea);
+        void lineaModificada(int posicion, LineaTicket linea);
+        void lineaQuitada(int posicion);
+        void ticketLimpio();
+    }
+
+    // Líneas en el orden en que se agregaron, y la posición de cada clave en esa lista
+    private final List<LineaTicket> lineas = new ArrayList<>();
+    private final Map<String, Integer> posiciones = new HashMap<>();
+    private double total = 0.0;
+    private int unidades = 0;
+    private Oyente oyente;
+
+    public void setOyente(Oyente oyente) {
+        this.oyente = oyente;
+    }
 
-    // Método para agregar un producto al ticket
+    // Método para agregar una unidad de un producto al ticket
     public void agregarProducto(Producto producto) {
-        productos.add(producto);
+        String clave = LineaTicket.claveDe(producto);
+        Integer pos = posiciones.get(clave);
+        if (pos == null) {
+            LineaTicket nueva = new LineaTicket(clave, producto, 1);
+            posiciones.put(clave, lineas.size());
+            lineas.add(nueva);
+            if (oyente != null) oyente.lineaAgregada(lineas.size() - 1, nueva);
+        } else {
+            LineaTicket actualizada = lineas.get(pos).conCantidad(lineas.get(pos).cantidad() + 1);
+            lineas.set(pos, actualizada);
+            if (oyente != null) oyente.lineaModificada(pos, actualizada);
+        }
+        total += producto.getPrecioVenta();
+        unidades++;
     }
 
-    // Método para obtener el total de la venta
-    public double getTotal() {
-        double total = 0.0;
-        for (Producto producto : productos) {
-            total += producto.getPrecioVenta(); // Cambiado de getPrecio() a getPrecioVenta()
+    /**
+     * Quita una unidad de la línea con esa clave; si era la última, quita la línea.
+     * @return false si la clave no está en el ticket
+     */
+    public boolean quitarUnidad(String clave) {
+        Integer pos = posiciones.get(clave);
+        if (pos == null) return false;
+        LineaTicket linea = lineas.get(pos);
+        total -= linea.producto().getPrecioVenta();
+        unidades--;
+        if (linea.cantidad() > 1) {
+            LineaTicket actualizada = linea.conCantidad(linea.cantidad() - 1);
+            lineas.set(pos, actualizada);
+            if (oyente != null) oyente.lineaModificada(pos, actualizada);
+        } else {
+            lineas.remove((int) pos);
+            posiciones.remove(clave);
+            // Las líneas siguientes se corren un lugar (un ticket tiene pocas líneas)
+            for (int i = pos; i < lineas.size(); i++) posiciones.put(lineas.get(i).clave(), i);
+            if (oyente != null) oyente.lineaQuitada(pos);
         }
+        if (lineas.isEmpty()) total = 0.0; // Evitar arrastrar errores de redondeo
+        return true;
+    }
+
+    // Método para obtener el total de la venta (acumulado, no se recalcula)
+    public double getTotal() {
         return total;
     }
 
-    // Método para obtener la lista de productos en el ticket
-    public List<Producto> getProductos() {
-        return productos;
+    public int getUnidades() {
+        return unidades;
+    }
+
+    public boolean estaVacia() {
+        return lineas.isEmpty();
+    }
+
+    // Líneas del ticket (solo lectura)
+    public List<LineaTicket> getLineas() {
+        return Collections.unmodifiableList(lineas);
     }
 
     // Método para limpiar el ticket después de confirmar la venta
     public void limpiar() {
-        productos.clear(); // Limpia la lista de productos
+        lineas.clear();
+        posiciones.clear();
+        total = 0.0;
+        unidades = 0;
+        if (oyente != null) oyente.ticketLimpio();
     }
-}
\ No newline at end of file
+}
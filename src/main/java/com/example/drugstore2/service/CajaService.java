@@ -1,8 +1,11 @@
 package com.example.drugstore2.service;
 
+import com.example.drugstore2.db.ErroresBD;
 import com.example.drugstore2.model.CajaMovimiento;
 import com.example.drugstore2.model.TipoMovimientoCaja;
+import com.example.drugstore2.util.Metricas;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -10,13 +13,15 @@ import java.util.List;
 
 public class CajaService {
 
-    private Connection connection;
+    private DataSource dataSource;
     private int sesionActivaId = -1; // Guarda el ID de la sesión activa, -1 si no hay
+    // Latencia y errores de cada método público (panel de diagnóstico)
+    private static final Metricas metricas = Metricas.de("CajaService");
 
-    public CajaService(Connection connection) {
-        this.connection = connection;
-        if (this.connection == null) {
-            System.err.println("❌ Error: La conexión a la base de datos es nula en CajaService.");
+    public CajaService(DataSource dataSource) {
+        this.dataSource = dataSource;
+        if (this.dataSource == null) {
+            System.err.println("❌ Error: El pool de conexiones es nulo en CajaService.");
             // Considerar lanzar una excepción
         }
         cargarSesionActiva(); // Intenta cargar una sesión activa al iniciar
@@ -25,7 +30,8 @@ public class CajaService {
     // Intenta encontrar y cargar el ID de una sesión activa al inicio
     private void cargarSesionActiva() {
         String sql = "SELECT id FROM caja_sesiones WHERE activa = TRUE ORDER BY fecha_apertura DESC LIMIT 1";
-        try (Statement stmt = connection.createStatement();
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             if (rs.next()) {
                 this.sesionActivaId = rs.getInt("id");
@@ -50,6 +56,10 @@ public class CajaService {
 
     // Inicia una nueva sesión de caja
     public boolean iniciarSesion(double saldoInicial) {
+        return metricas.medir("iniciarSesion", () -> iniciarSesionInterno(saldoInicial));
+    }
+
+    private boolean iniciarSesionInterno(double saldoInicial) {
         if (haySesionActiva()) {
             System.err.println("⚠️ Ya existe una sesión de caja activa (ID: " + sesionActivaId + "). Ciérrela primero.");
             return false;
@@ -62,9 +72,11 @@ public class CajaService {
         String sqlSesion = "INSERT INTO caja_sesiones (fecha_apertura, saldo_inicial, activa) VALUES (?, ?, TRUE)";
         String sqlMovimiento = "INSERT INTO caja_movimientos (sesion_id, fecha_hora, tipo_movimiento, monto, descripcion) VALUES (?, ?, ?, ?, ?)";
         LocalDateTime ahora = LocalDateTime.now();
+        Connection connection = null;
         ResultSet generatedKeys = null;
 
         try {
+            connection = dataSource.getConnection();
             connection.setAutoCommit(false); // Iniciar transacción
 
             // 1. Crear la sesión
@@ -97,9 +109,10 @@ public class CajaService {
             return true;
 
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al iniciar sesión de caja: " + e.getMessage());
             try {
-                connection.rollback(); // Revertir en caso de error
+                if (connection != null) connection.rollback(); // Revertir en caso de error
             } catch (SQLException ex) {
                 System.err.println("❌ Error CRÍTICO al hacer rollback: " + ex.getMessage());
             }
@@ -107,12 +120,16 @@ public class CajaService {
             return false;
         } finally {
             try { if (generatedKeys != null) generatedKeys.close(); } catch (SQLException e) { e.printStackTrace(); }
-            try { connection.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); } // Restaurar auto-commit
+            cerrarConexion(connection); // Restaurar auto-commit y devolver al pool
         }
     }
 
     // Registra un movimiento de caja (Gasto, Retiro, Ingreso Extra, Venta Efectivo)
     public boolean registrarMovimiento(TipoMovimientoCaja tipo, double monto, String descripcion, Integer ventaId) {
+        return metricas.medir("registrarMovimiento", () -> registrarMovimientoInterno(tipo, monto, descripcion, ventaId));
+    }
+
+    private boolean registrarMovimientoInterno(TipoMovimientoCaja tipo, double monto, String descripcion, Integer ventaId) {
         if (!haySesionActiva()) {
             System.err.println("⚠️ No hay sesión de caja activa para registrar el movimiento.");
             return false;
@@ -135,7 +152,8 @@ public class CajaService {
         String sql = "INSERT INTO caja_movimientos (sesion_id, fecha_hora, tipo_movimiento, monto, descripcion, venta_id) VALUES (?, ?, ?, ?, ?, ?)";
         LocalDateTime ahora = LocalDateTime.now();
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setInt(1, this.sesionActivaId);
             stmt.setTimestamp(2, Timestamp.valueOf(ahora));
             stmt.setString(3, tipo.name());
@@ -150,6 +168,8 @@ public class CajaService {
             System.out.println("✅ Movimiento registrado: " + tipo.name() + ", Monto: " + monto);
             return true;
         } catch (SQLException e) {
+            Metricas.marcarError();
+            ErroresBD.registrar(e);
             System.err.println("❌ Error SQL al registrar movimiento: " + e.getMessage());
             return false;
         }
@@ -157,6 +177,10 @@ public class CajaService {
 
     // Calcula el saldo que debería haber en caja según los movimientos registrados
     public double obtenerSaldoCalculado() {
+        return metricas.medir("obtenerSaldoCalculado", () -> obtenerSaldoCalculadoInterno());
+    }
+
+    private double obtenerSaldoCalculadoInterno() {
         if (!haySesionActiva()) {
             System.err.println("⚠️ No hay sesión activa para calcular saldo.");
             return 0.0; // O lanzar excepción
@@ -165,13 +189,15 @@ public class CajaService {
         String sql = "SELECT SUM(monto) FROM caja_movimientos WHERE sesion_id = ?";
         double saldoCalculado = 0.0;
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setInt(1, this.sesionActivaId);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
                 saldoCalculado = rs.getDouble(1); // Obtiene la suma total de montos (positivos y negativos)
             }
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al calcular saldo de caja: " + e.getMessage());
             return 0.0; // O manejar el error de otra forma
         }
@@ -180,6 +206,10 @@ public class CajaService {
 
     // Cierra la sesión activa, realizando el arqueo
     public boolean cerrarSesion(double saldoRealContado) {
+        return metricas.medir("cerrarSesion", () -> cerrarSesionInterno(saldoRealContado));
+    }
+
+    private boolean cerrarSesionInterno(double saldoRealContado) {
         if (!haySesionActiva()) {
             System.err.println("⚠️ No hay sesión de caja activa para cerrar.");
             return false;
@@ -197,8 +227,9 @@ public class CajaService {
         // Opcional: Registrar la diferencia como un movimiento de ajuste
         String sqlMovAjuste = "INSERT INTO caja_movimientos (sesion_id, fecha_hora, tipo_movimiento, monto, descripcion) VALUES (?, ?, ?, ?, ?)";
 
-
+        Connection connection = null;
         try {
+            connection = dataSource.getConnection();
             connection.setAutoCommit(false); // Transacción
 
             // 1. Actualizar la sesión
@@ -239,21 +270,34 @@ public class CajaService {
             return true;
 
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al cerrar sesión de caja: " + e.getMessage());
-            try { connection.rollback(); } catch (SQLException ex) { System.err.println("❌ Error CRÍTICO al hacer rollback: " + ex.getMessage()); }
+            try { if (connection != null) connection.rollback(); } catch (SQLException ex) { System.err.println("❌ Error CRÍTICO al hacer rollback: " + ex.getMessage()); }
             return false;
         } finally {
-            try { connection.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); }
+            cerrarConexion(connection);
         }
     }
 
+    // Restaura auto-commit y devuelve la conexión al pool
+    private void cerrarConexion(Connection connection) {
+        if (connection == null) return;
+        try { connection.setAutoCommit(true); } catch (SQLException e) { e.printStackTrace(); }
+        try { connection.close(); } catch (SQLException e) { e.printStackTrace(); }
+    }
+
     // Podrías añadir métodos para obtener todos los movimientos de una sesión, etc.
     public List<CajaMovimiento> getMovimientosSesionActual() {
+        return metricas.medir("getMovimientosSesionActual", () -> getMovimientosSesionActualInterno());
+    }
+
+    private List<CajaMovimiento> getMovimientosSesionActualInterno() {
         List<CajaMovimiento> movimientos = new ArrayList<>();
         if (!haySesionActiva()) return movimientos;
 
         String sql = "SELECT * FROM caja_movimientos WHERE sesion_id = ? ORDER BY fecha_hora ASC";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setInt(1, this.sesionActivaId);
             ResultSet rs = stmt.executeQuery();
             while(rs.next()) {
@@ -268,8 +312,10 @@ public class CajaService {
                 ));
             }
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL obteniendo movimientos: " + e.getMessage());
         } catch (IllegalArgumentException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error: Tipo de movimiento inválido en BD: " + e.getMessage());
         }
         return movimientos;
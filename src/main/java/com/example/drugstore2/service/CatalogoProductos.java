@@ -0,0 +1,170 @@
+package com.example.drugstore2.service;
+
+import com.example.drugstore2.model.Producto;
+import com.example.drugstore2.model.ProductoDatos;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Índice en memoria de los productos activos por código de barras.
+ * Permite resolver un escaneo sin ir a la base de datos, y mantiene además
+ * un índice de trigramas sobre los nombres para la búsqueda por fragmento.
+ *
+ * Guarda cada producto como {@link ProductoDatos} (inmutable, sin propiedades JavaFX) y
+ * entrega un Producto nuevo al consultar, así la UI puede modificar los objetos recibidos
+ * sin alterar el catálogo.
+ * InventarioService lo mantiene al día en cada alta, modificación, baja y cambio de stock.
+ *
+ * Cada cambio puntual queda numerado ({@link #marca()}): una carga completa leída de la BD antes
+ * de un cambio no lo pisa con el valor viejo, y devuelve los códigos que hay que volver a leer.
+ */
+public class CatalogoProductos {
+
+    private final Map<String, ProductoDatos> porCodigo = new ConcurrentHashMap<>();
+    // Una carga completa arma un índice nuevo y lo reemplaza de una vez: las búsquedas por nombre
+    // (sin el lock del catálogo) nunca ven un índice a medio reconstruir
+    private volatile IndiceNombres indiceNombres = new IndiceNombres();
+    // Número del último cambio puntual de cada código (alta, modificación, baja o stock)
+    private final Map<String, Long> cambios = new ConcurrentHashMap<>();
+    private final AtomicLong secuencia = new AtomicLong();
+
+    /**
+     * Reemplaza todo el contenido del catálogo (carga inicial o resincronización).
+     */
+    public void cargar(Collection<ProductoDatos> productos) {
+        cargar(productos, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reemplaza el contenido del catálogo con productos leídos de la BD después de
+     * {@code marca} (tomada con {@link #marca()} antes de la consulta). Los códigos que
+     * cambiaron desde entonces se dejan como están: la lectura puede ser anterior al cambio.
+     *
+     * @return los códigos que no se tocaron, para volver a leerlos de la BD
+     */
+    public synchronized Set<String> cargar(Collection<ProductoDatos> productos, long marca) {
+        Set<String> cambiados = new HashSet<>();
+        cambios.forEach((codigo, numero) -> {
+            if (numero > marca) cambiados.add(codigo);
+        });
+        Map<String, ProductoDatos> nuevos = new HashMap<>();
+        for (ProductoDatos p : productos) {
+            if (p != null && p.codigo() != null && !cambiados.contains(p.codigo())) nuevos.put(p.codigo(), p);
+        }
+        porCodigo.keySet().removeIf(codigo -> !nuevos.containsKey(codigo) && !cambiados.contains(codigo));
+        porCodigo.putAll(nuevos);
+        IndiceNombres indice = new IndiceNombres();
+        porCodigo.values().forEach(p -> indice.indexar(p.codigo(), p.nombre()));
+        indiceNombres = indice;
+        cambios.values().removeIf(numero -> numero <= marca);
+        return cambiados;
+    }
+
+    /**
+     * Número del último cambio puntual; se toma antes de leer productos de la BD para
+     * {@link #cargar(Collection, long)} o {@link #guardarSiNoCambio(ProductoDatos, String, long)}.
+     */
+    public long marca() {
+        return secuencia.get();
+    }
+
+    /**
+     * Guarda (o quita, si {@code producto} es null) un producto leído de la BD después de
+     * {@code marca}, salvo que haya cambiado desde entonces.
+     *
+     * @return false si cambió y hay que volver a leerlo
+     */
+    public synchronized boolean guardarSiNoCambio(ProductoDatos producto, String codigo, long marca) {
+        if (cambios.getOrDefault(codigo, 0L) > marca) return false;
+        if (producto != null) {
+            porCodigo.put(codigo, producto);
+            indiceNombres.indexar(codigo, producto.nombre());
+        } else {
+            porCodigo.remove(codigo);
+            indiceNombres.quitar(codigo);
+        }
+        return true;
+    }
+
+    private void registrarCambio(String codigo) {
+        cambios.put(codigo, secuencia.incrementAndGet());
+    }
+
+    /**
+     * Devuelve una copia del producto activo con ese código, o null si no está en el catálogo.
+     */
+    public Producto buscar(String codigo) {
+        ProductoDatos p = buscarDatos(codigo);
+        return p != null ? p.aProducto() : null;
+    }
+
+    /**
+     * Igual que {@link #buscar(String)} pero sin crear el Producto observable.
+     */
+    public ProductoDatos buscarDatos(String codigo) {
+        if (codigo == null) return null;
+        return porCodigo.get(codigo.trim());
+    }
+
+    public boolean contiene(String codigo) {
+        return codigo != null && porCodigo.containsKey(codigo.trim());
+    }
+
+    /**
+     * Productos activos cuyo nombre contiene el fragmento (sin distinguir tildes ni mayúsculas),
+     * ordenados por relevancia y limitados a {@code limite} resultados.
+     */
+    public List<Producto> buscarPorNombre(String fragmento, int limite) {
+        List<Producto> resultado = new ArrayList<>();
+        for (String codigo : indiceNombres.buscar(fragmento, limite)) {
+            Producto p = buscar(codigo);
+            if (p != null) resultado.add(p);
+        }
+        return resultado;
+    }
+
+    public synchronized void guardar(ProductoDatos producto) {
+        if (producto != null && producto.codigo() != null) {
+            porCodigo.put(producto.codigo(), producto);
+            indiceNombres.indexar(producto.codigo(), producto.nombre());
+            registrarCambio(producto.codigo());
+        }
+    }
+
+    public synchronized void quitar(String codigo) {
+        if (codigo == null) return;
+        porCodigo.remove(codigo.trim());
+        indiceNombres.quitar(codigo.trim());
+        registrarCambio(codigo.trim());
+    }
+
+    /**
+     * Suma (o resta) la cantidad al stock del producto en memoria.
+     * Se llama solo después de que el cambio quedó confirmado en la BD. Se registra como
+     * cambio aunque el producto todavía no esté cargado (ver {@link #cargar(Collection, long)}).
+     */
+    public synchronized void ajustarStock(String codigo, int cantidad) {
+        if (codigo == null) return;
+        porCodigo.computeIfPresent(codigo.trim(), (k, p) -> p.conStock(p.stock() + cantidad));
+        registrarCambio(codigo.trim());
+    }
+
+    /**
+     * Copia de todos los productos del catálogo (para escribir la instantánea en disco).
+     */
+    public List<ProductoDatos> todos() {
+        return new ArrayList<>(porCodigo.values());
+    }
+
+    public int size() {
+        return porCodigo.size();
+    }
+}
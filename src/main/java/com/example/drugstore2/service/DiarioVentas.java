@@ -0,0 +1,329 @@
+package com.example.drugstore2.service;
+
+import com.example.drugstore2.model.LineaTicket;
+import com.example.drugstore2.model.Producto;
+import com.example.drugstore2.model.ProductoManual;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Diario local de ventas que no se pudieron registrar en la base por falta de conexión.
+ *
+ * Cada venta se agrega al final del archivo como una línea de texto (con su CRC, para descartar
+ * una línea cortada por un corte de luz) y {@link #registrar} vuelve recién cuando quedó en disco.
+ * Los fsync se agrupan: si varias ventas se escriben a la vez, un solo fsync las cubre a todas.
+ * Cuando la venta se aplica en la base (o se detecta que ya estaba) se agrega una marca; las
+ * marcas no esperan al fsync porque reenviar una venta ya aplicada se detecta por su clave.
+ *
+ * Las ventas que no se pueden aplicar (ej. sin stock en la base) quedan como conflicto en el
+ * diario para revisarlas a mano. Al abrir, el archivo se compacta dejando solo pendientes y conflictos.
+ */
+public class DiarioVentas implements AutoCloseable {
+
+    private static final String VENTA = "V";
+    private static final String APLICADA = "A";
+    private static final String CONFLICTO = "C";
+
+    /**
+     * Una línea del ticket tal como se guarda en el diario. Incluye costo y categoría del momento
+     * de la venta, que usa el resumen diario al registrarla.
+     */
+    public record LineaDiario(String codigo, String nombre, double precio, double costo, String categoria,
+                              int cantidad, boolean manual) {
+
+        public static LineaDiario desde(LineaTicket linea) {
+            Producto p = linea.producto();
+            return new LineaDiario(p.getCodigo(), p.getNombre(), p.getPrecioVenta(), p.getPrecioCosto(),
+                    p.getCategoriaNombre(), linea.cantidad(), p instanceof ProductoManual);
+        }
+
+        public LineaTicket aLineaTicket() {
+            Producto p = manual ? new ProductoManual(nombre, precio)
+                    : new Producto(codigo, nombre, precio, costo, 0, categoria, 0);
+            return new LineaTicket(LineaTicket.claveDe(p), p, cantidad);
+        }
+    }
+
+    /** Una venta del diario: clave del ticket, momento en que se hizo la venta y sus líneas. */
+    public record VentaDiario(String clave, LocalDateTime fechaHora, double total, List<LineaDiario> lineas) {
+
+        public static VentaDiario desde(String clave, LocalDateTime fechaHora, List<LineaTicket> lineas) {
+            List<LineaDiario> enDiario = new ArrayList<>(lineas.size());
+            double total = 0;
+            for (LineaTicket linea : lineas) {
+                enDiario.add(LineaDiario.desde(linea));
+                total += linea.getSubtotal();
+            }
+            return new VentaDiario(clave, fechaHora, total, List.copyOf(enDiario));
+        }
+
+        public List<LineaTicket> lineasTicket() {
+            List<LineaTicket> resultado = new ArrayList<>(lineas.size());
+            for (LineaDiario linea : lineas) resultado.add(linea.aLineaTicket());
+            return resultado;
+        }
+    }
+
+    /** Venta que no se pudo aplicar en la base, con el motivo. */
+    public record Conflicto(VentaDiario venta, String motivo) {}
+
+    private final Path archivo;
+    private final FileChannel canal;
+    // clave -> venta, en el orden en que se registraron
+    private final Map<String, VentaDiario> pendientes = new LinkedHashMap<>();
+    private final Map<String, Conflicto> conflictos = new LinkedHashMap<>();
+
+    // Fsync agrupado: número de la última escritura y de la última que quedó en disco
+    private long escritas = 0;
+    private long sincronizadas = 0;
+    private final Object sincronizacion = new Object();
+
+    private DiarioVentas(Path archivo, FileChannel canal) {
+        this.archivo = archivo;
+        this.canal = canal;
+    }
+
+    /**
+     * Abre (o crea) el diario, recupera las ventas pendientes y conflictos, y lo compacta.
+     */
+    public static DiarioVentas abrir(Path archivo) throws IOException {
+        if (archivo.getParent() != null) Files.createDirectories(archivo.getParent());
+        Map<String, VentaDiario> pendientes = new LinkedHashMap<>();
+        Map<String, Conflicto> conflictos = new LinkedHashMap<>();
+        int descartadas = 0;
+        if (Files.exists(archivo)) {
+            try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+                String linea;
+                while ((linea = lector.readLine()) != null) {
+                    if (linea.isEmpty()) continue;
+                    String[] campos = leerLinea(linea);
+                    if (campos == null) {
+                        descartadas++;
+                        continue;
+                    }
+                    switch (campos[0]) {
+                        case VENTA -> pendientes.put(campos[1], leerVenta(campos));
+                        case APLICADA -> pendientes.remove(campos[1]);
+                        case CONFLICTO -> {
+                            VentaDiario venta = pendientes.remove(campos[1]);
+                            if (venta != null) conflictos.put(campos[1], new Conflicto(venta, campos[2]));
+                        }
+                        default -> descartadas++;
+                    }
+                }
+            }
+        }
+        if (descartadas > 0) {
+            System.err.println("⚠️ Diario de ventas: se descartaron " + descartadas + " línea(s) incompletas o dañadas.");
+        }
+
+        // Compactar: reescribir solo lo que sigue vigente
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (FileChannel nuevo = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (VentaDiario venta : pendientes.values()) escribirTodo(nuevo, lineaVenta(venta));
+            for (Conflicto c : conflictos.values()) {
+                escribirTodo(nuevo, lineaVenta(c.venta()));
+                escribirTodo(nuevo, linea(CONFLICTO, c.venta().clave(), c.motivo()));
+            }
+            nuevo.force(true);
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        DiarioVentas diario = new DiarioVentas(archivo,
+                FileChannel.open(archivo, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        diario.pendientes.putAll(pendientes);
+        diario.conflictos.putAll(conflictos);
+        if (!pendientes.isEmpty() || !conflictos.isEmpty()) {
+            System.out.println("ℹ️ Diario de ventas: " + pendientes.size() + " venta(s) pendiente(s) de enviar, "
+                    + conflictos.size() + " en conflicto.");
+        }
+        return diario;
+    }
+
+    /**
+     * Agrega la venta al diario. Cuando vuelve, la venta ya está en disco.
+     */
+    public void registrar(VentaDiario venta) throws IOException {
+        long numero;
+        synchronized (this) {
+            escribirTodo(canal, lineaVenta(venta));
+            pendientes.put(venta.clave(), venta);
+            numero = ++escritas;
+        }
+        sincronizarHasta(numero);
+    }
+
+    /** Marca la venta como registrada en la base (aplicada ahora o encontrada por su clave). */
+    public synchronized void marcarAplicada(String clave) throws IOException {
+        if (pendientes.remove(clave) == null) return;
+        escribirTodo(canal, linea(APLICADA, clave));
+        escritas++;
+    }
+
+    /** Marca la venta como conflicto: no se reintenta y queda en el diario para revisarla. */
+    public synchronized void marcarConflicto(String clave, String motivo) throws IOException {
+        VentaDiario venta = pendientes.remove(clave);
+        if (venta == null) return;
+        escribirTodo(canal, linea(CONFLICTO, clave, motivo));
+        escritas++;
+        conflictos.put(clave, new Conflicto(venta, motivo));
+    }
+
+    /** Si la venta con esa clave está en el diario (pendiente o en conflicto). */
+    public synchronized boolean contiene(String clave) {
+        return pendientes.containsKey(clave) || conflictos.containsKey(clave);
+    }
+
+    /** Ventas pendientes de enviar, en el orden en que se hicieron. */
+    public synchronized List<VentaDiario> getPendientes() {
+        return new ArrayList<>(pendientes.values());
+    }
+
+    public synchronized List<Conflicto> getConflictos() {
+        return new ArrayList<>(conflictos.values());
+    }
+
+    public synchronized int cantidadPendientes() {
+        return pendientes.size();
+    }
+
+    public synchronized int cantidadConflictos() {
+        return conflictos.size();
+    }
+
+    public Path getArchivo() {
+        return archivo;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            canal.force(true); // Las marcas escritas sin fsync
+            canal.close();
+        }
+    }
+
+    // Un solo fsync cubre todas las escrituras hechas hasta ese momento; los que llegan
+    // mientras otro sincroniza esperan y, al entrar, ya suelen estar cubiertos
+    private void sincronizarHasta(long numero) throws IOException {
+        synchronized (sincronizacion) {
+            if (sincronizadas >= numero) return;
+            long hasta;
+            synchronized (this) {
+                hasta = escritas;
+            }
+            canal.force(false);
+            sincronizadas = hasta;
+        }
+    }
+
+    // --- Formato: campos separados por tabulación, el primero es el CRC32 del resto ---
+
+    private static String lineaVenta(VentaDiario venta) {
+        List<String> campos = new ArrayList<>();
+        campos.add(VENTA);
+        campos.add(venta.clave());
+        campos.add(venta.fechaHora().toString());
+        campos.add(numero(venta.total()));
+        campos.add(String.valueOf(venta.lineas().size()));
+        for (LineaDiario l : venta.lineas()) {
+            campos.add(l.codigo());
+            campos.add(l.nombre());
+            campos.add(numero(l.precio()));
+            campos.add(numero(l.costo()));
+            campos.add(l.categoria());
+            campos.add(String.valueOf(l.cantidad()));
+            campos.add(l.manual() ? "1" : "0");
+        }
+        return linea(campos.toArray(new String[0]));
+    }
+
+    private static VentaDiario leerVenta(String[] campos) {
+        int cantidadLineas = Integer.parseInt(campos[4]);
+        List<LineaDiario> lineas = new ArrayList<>(cantidadLineas);
+        for (int i = 0, c = 5; i < cantidadLineas; i++, c += 7) {
+            String categoria = campos[c + 4].isEmpty() ? null : campos[c + 4];
+            lineas.add(new LineaDiario(campos[c], campos[c + 1], Double.parseDouble(campos[c + 2]),
+                    Double.parseDouble(campos[c + 3]), categoria, Integer.parseInt(campos[c + 5]), "1".equals(campos[c + 6])));
+        }
+        return new VentaDiario(campos[1], LocalDateTime.parse(campos[2]), Double.parseDouble(campos[3]), List.copyOf(lineas));
+    }
+
+    private static String numero(double valor) {
+        return Double.toString(valor); // Sin separadores según el idioma
+    }
+
+    private static String linea(String... campos) {
+        StringBuilder cuerpo = new StringBuilder();
+        for (int i = 0; i < campos.length; i++) {
+            if (i > 0) cuerpo.append('\t');
+            cuerpo.append(escapar(campos[i]));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(cuerpo.toString().getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue()) + '\t' + cuerpo + '\n';
+    }
+
+    // Campos de la línea, o null si el CRC no coincide (línea cortada o dañada)
+    private static String[] leerLinea(String linea) {
+        int tab = linea.indexOf('\t');
+        if (tab != 8) return null;
+        String cuerpo = linea.substring(tab + 1);
+        CRC32 crc = new CRC32();
+        crc.update(cuerpo.getBytes(StandardCharsets.UTF_8));
+        if (!String.format("%08x", crc.getValue()).equals(linea.substring(0, tab))) return null;
+        try {
+            String[] campos = cuerpo.split("\t", -1);
+            for (int i = 0; i < campos.length; i++) campos[i] = desescapar(campos[i]);
+            if (VENTA.equals(campos[0])) leerVenta(campos); // Validar que se pueda leer completa
+            return campos;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String escapar(String texto) {
+        if (texto == null) return "";
+        return texto.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String desescapar(String texto) {
+        if (texto.indexOf('\\') < 0) return texto;
+        StringBuilder sb = new StringBuilder(texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '\\' && i + 1 < texto.length()) {
+                char siguiente = texto.charAt(++i);
+                sb.append(switch (siguiente) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> siguiente;
+                });
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void escribirTodo(FileChannel canal, String texto) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) canal.write(buffer);
+    }
+}
@@ -1,7 +1,12 @@
 package com.example.drugstore2.service;
 
+import com.example.drugstore2.util.Metricas;
+
+import javax.sql.DataSource;
 import java.sql.*;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -9,127 +14,88 @@ import java.util.Optional;
 
 public class EstadisticasService {
 
-    private Connection connection;
-
+    private DataSource dataSource;
+    // Latencia y errores de cada método público (panel de diagnóstico)
+    private static final Metricas metricas = Metricas.de("EstadisticasService");
+    // Tiempo límite de cada consulta en segundos (0 = sin límite); lo fija el panel que las lanza
+    private volatile int timeoutConsultaSeg = 0;
 
-    // Recibe la conexión de la base de datos al ser creado
-    public EstadisticasService(Connection connection) {
-        this.connection = connection;
-        if (this.connection == null) {
+    // Recibe el pool de conexiones compartido al ser creado
+    public EstadisticasService(DataSource dataSource) {
+        this.dataSource = dataSource;
+        if (this.dataSource == null) {
             // Considera una mejor gestión de errores aquí
-            System.err.println("❌ Error: La conexión a la base de datos es nula en EstadisticasService.");
+            System.err.println("❌ Error: El pool de conexiones es nulo en EstadisticasService.");
             // Podrías lanzar una excepción o intentar reconectar
         }
     }
-    public double getVentasPorRangoFechas(LocalDate inicio, LocalDate fin) {
-        double total = 0.0;
-        String sql = "SELECT SUM(dv.subtotal) AS total_periodo " +
-                "FROM detalle_ventas dv " +
-                "JOIN ventas v ON dv.venta_id = v.id " +
-                "WHERE DATE(v.fecha_hora) BETWEEN ? AND ?";
 
-        if (connection == null || inicio == null || fin == null || fin.isBefore(inicio)) {
-            System.err.println("⚠️ Parámetros inválidos para getVentasPorRangoFechas.");
-            return total; // Retorna 0 si los parámetros no son válidos
-        }
+    /**
+     * Tiempo límite de cada consulta. Al pasarlo la base cancela la sentencia y libera la conexión
+     * y el hilo que la ejecutaba (dejar de esperar el resultado no alcanza). Se redondea a segundos.
+     */
+    public void setTimeoutConsulta(long timeoutMs) {
+        this.timeoutConsultaSeg = timeoutMs <= 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, (timeoutMs + 999) / 1000);
+    }
 
+    // Las cifras de ventas salen de resumen_ventas_diario (una fila por día y producto),
+    // que ResumenVentasService mantiene al guardar cada venta.
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDate(1, Date.valueOf(inicio));
-            stmt.setDate(2, Date.valueOf(fin));
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                // rs.getDouble puede devolver 0 si el SUM es NULL (no hubo ventas)
-                total = rs.getDouble("total_periodo");
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ Error al calcular ventas por rango de fechas: " + e.getMessage());
-            e.printStackTrace();
+    public double getVentasPorRangoFechas(LocalDate inicio, LocalDate fin) {
+        if (dataSource == null || inicio == null || fin == null || fin.isBefore(inicio)) {
+            System.err.println("⚠️ Parámetros inválidos para getVentasPorRangoFechas.");
+            return 0.0; // Retorna 0 si los parámetros no son válidos
         }
-        return total;
+        return metricas.medir("getVentasPorRangoFechas", () -> sumarResumen("SUM(ingresos)", inicio, fin, "calcular ventas por rango de fechas"));
     }
     public double getGananciaBrutaPorRangoFechas(LocalDate inicio, LocalDate fin) {
-        double gananciaBruta = 0.0;
-        String sql = "SELECT SUM(dv.subtotal) AS total_ventas, " +
-                "       SUM(dv.cantidad * COALESCE(p.precio_costo, 0)) AS total_costos " +
-                "FROM detalle_ventas dv " +
-                "JOIN ventas v ON dv.venta_id = v.id " +
-                "LEFT JOIN productos p ON dv.producto_codigo = p.codigo " + // LEFT JOIN por si el producto ya no existe pero la venta sí
-                "WHERE DATE(v.fecha_hora) BETWEEN ? AND ?";
-
-        if (connection == null || inicio == null || fin == null || fin.isBefore(inicio)) {
+        if (dataSource == null || inicio == null || fin == null || fin.isBefore(inicio)) {
             System.err.println("⚠️ Parámetros inválidos para getGananciaBrutaPorRangoFechas.");
             return 0.0;
         }
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDate(1, Date.valueOf(inicio));
-            stmt.setDate(2, Date.valueOf(fin));
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                double totalVentas = rs.getDouble("total_ventas"); // Será 0 si no hay ventas
-                double totalCostos = rs.getDouble("total_costos"); // Será 0 si no hay ventas o costos
-                gananciaBruta = totalVentas - totalCostos;
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ Error SQL al calcular ganancia bruta por rango: " + e.getMessage());
-            e.printStackTrace();
-        }
-        return gananciaBruta;
+        return metricas.medir("getGananciaBrutaPorRangoFechas", () -> sumarResumen("SUM(ingresos) - SUM(costo)", inicio, fin, "calcular ganancia bruta por rango"));
     }
     public Map<String, Double> getVentasPorCategoria(LocalDate inicio, LocalDate fin) {
-        Map<String, Double> ventasCategoria = new LinkedHashMap<>(); // Usar LinkedHashMap para mantener orden
-
-        // ----- NUEVA CONSULTA SQL -----
-        String sql = "SELECT " +
-                "    CASE " +
-                "        WHEN dv.producto_codigo = 'MANUAL' THEN 'Otros' " + // Si el código es 'MANUAL', categoría es 'Otros'
-                "        ELSE COALESCE(c.nombre, 'Sin Categoría') " + // Si no, usa la categoría del producto o 'Sin Categoría'
-                "    END AS categoria_final, " + // Nombre de la columna resultante
-                "    SUM(dv.subtotal) AS total_categoria " + // Suma de subtotales
-                "FROM " +
-                "    detalle_ventas dv " +
-                "JOIN " +
-                "    ventas v ON dv.venta_id = v.id " +
-                // Se sigue necesitando LEFT JOIN para obtener la categoría de productos NO manuales
-                "LEFT JOIN " +
-                "    productos p ON dv.producto_codigo = p.codigo " +
-                "LEFT JOIN " +
-                "    categorias c ON p.categoria_id = c.id " +
-                "WHERE " +
-                "    DATE(v.fecha_hora) BETWEEN ? AND ? " + // Filtro de fecha
-                "GROUP BY " +
-                "    categoria_final " + // Agrupar por el nombre de categoría calculado
-                "ORDER BY " +
-                "    categoria_final"; // Ordenar alfabéticamente por categoría
+        return metricas.medir("getVentasPorCategoria", () -> getVentasPorCategoriaInterno(inicio, fin));
+    }
 
-        // ----- FIN NUEVA CONSULTA SQL -----
+    private Map<String, Double> getVentasPorCategoriaInterno(LocalDate inicio, LocalDate fin) {
+        Map<String, Double> ventasCategoria = new LinkedHashMap<>(); // Usar LinkedHashMap para mantener orden
 
+        // La categoría ya viene resuelta en el resumen ('Otros' para las ventas manuales)
+        String sql = "SELECT categoria, SUM(ingresos) AS total_categoria " +
+                "FROM resumen_ventas_diario " +
+                "WHERE fecha BETWEEN ? AND ? " +
+                "GROUP BY categoria " +
+                "ORDER BY categoria"; // Ordenar alfabéticamente por categoría
 
-        if (connection == null || inicio == null || fin == null || fin.isBefore(inicio)) {
+        if (dataSource == null || inicio == null || fin == null || fin.isBefore(inicio)) {
             System.err.println("⚠️ Parámetros inválidos para getVentasPorCategoria.");
             return ventasCategoria; // Devuelve mapa vacío
         }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             Limite limite = limitar(stmt)) {
             stmt.setDate(1, Date.valueOf(inicio));
             stmt.setDate(2, Date.valueOf(fin));
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                // Usar el alias 'categoria_final' que definimos en la consulta CASE
-                String categoria = rs.getString("categoria_final");
-                double total = rs.getDouble("total_categoria");
-                ventasCategoria.put(categoria, total);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ventasCategoria.put(rs.getString("categoria"), rs.getDouble("total_categoria"));
+                }
             }
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al obtener ventas por categoría: " + e.getMessage());
             e.printStackTrace();
         }
         return ventasCategoria;
     }
     public double getStockValorizado() {
+        return metricas.medir("getStockValorizado", () -> getStockValorizadoInterno());
+    }
+
+    private double getStockValorizadoInterno() {
         double valorTotal = 0.0;
         // Suma la multiplicación de stock por precio_costo para todos los productos activos
         // COALESCE es importante por si algun precio_costo es NULL, lo trate como 0
@@ -137,18 +103,21 @@ public class EstadisticasService {
                 "FROM productos " +
                 "WHERE activo = TRUE";
 
-        if (connection == null) {
+        if (dataSource == null) {
             System.err.println("⚠️ No hay conexión para calcular stock valorizado.");
             return 0.0;
         }
 
-        try (Statement stmt = connection.createStatement();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             Limite limite = limitar(stmt);
              ResultSet rs = stmt.executeQuery(sql)) {
 
             if (rs.next()) {
                 valorTotal = rs.getDouble("valor_inventario"); // Será 0 si no hay productos activos
             }
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al calcular stock valorizado: " + e.getMessage());
             e.printStackTrace();
         }
@@ -156,82 +125,42 @@ public class EstadisticasService {
     }
 
     public double getVentasDiarias(LocalDate fecha) {
-        String sql = "SELECT SUM(dv.subtotal) AS total_dia " +
-                "FROM detalle_ventas dv " +
-                "JOIN ventas v ON dv.venta_id = v.id " +
-                "WHERE DATE(v.fecha_hora) = ?";
-        double total = 0.0;
-
-        if (connection == null) return total;
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDate(1, Date.valueOf(fecha));
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                total = rs.getDouble("total_dia");
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ Error al calcular ventas diarias: " + e.getMessage());
-            e.printStackTrace();
-        }
-        return total;
+        if (dataSource == null || fecha == null) return 0.0;
+        return metricas.medir("getVentasDiarias", () -> sumarResumen("SUM(ingresos)", fecha, fecha, "calcular ventas diarias"));
     }
 
-    // Calcula las ventas totales para la semana actual
+    // Calcula las ventas totales para la semana actual (lunes a domingo)
     public double getVentasSemanales() {
-        String sql = "SELECT SUM(dv.subtotal) AS total_semana " +
-                "FROM detalle_ventas dv " +
-                "JOIN ventas v ON dv.venta_id = v.id " +
-                "WHERE YEAR(v.fecha_hora) = YEAR(CURDATE()) AND WEEK(v.fecha_hora, 1) = WEEK(CURDATE(), 1)";
-        double total = 0.0;
-
-        if (connection == null) return total;
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                total = rs.getDouble("total_semana");
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ Error al calcular ventas semanales: " + e.getMessage());
-            e.printStackTrace();
-        }
-        return total;
+        if (dataSource == null) return 0.0;
+        LocalDate lunes = LocalDate.now().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return metricas.medir("getVentasSemanales", () -> sumarResumen("SUM(ingresos)", lunes, lunes.plusDays(6), "calcular ventas semanales"));
     }
     // Calcula las ventas totales para el mes actual
     public double getVentasMensuales() {
-        String sql = "SELECT SUM(dv.subtotal) AS total_mes " +
-                "FROM detalle_ventas dv " +
-                "JOIN ventas v ON dv.venta_id = v.id " +
-                "WHERE YEAR(v.fecha_hora) = YEAR(CURDATE()) AND MONTH(v.fecha_hora) = MONTH(CURDATE())";
-        double total = 0.0;
-
-        if (connection == null) return total;
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                total = rs.getDouble("total_mes");
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ Error al calcular ventas mensuales: " + e.getMessage());
-            e.printStackTrace();
-        }
-        return total;
+        if (dataSource == null) return 0.0;
+        LocalDate hoy = LocalDate.now();
+        return metricas.medir("getVentasMensuales", () -> sumarResumen("SUM(ingresos)", hoy.withDayOfMonth(1), hoy.withDayOfMonth(hoy.lengthOfMonth()), "calcular ventas mensuales"));
     }
 
     // Obtiene el producto más vendido (basado en cantidad total vendida)
     // Podría extenderse para filtrar por período
     public Optional<Map.Entry<String, Integer>> getProductoMasVendido() {
-        String sql = "SELECT dv.producto_codigo, p.nombre, SUM(dv.cantidad) AS total_cantidad " +
-                "FROM detalle_ventas dv " +
-                "JOIN productos p ON dv.producto_codigo = p.codigo " +
-                "GROUP BY dv.producto_codigo, p.nombre " +
-                "ORDER BY total_cantidad DESC " +
+        return metricas.medir("getProductoMasVendido", () -> getProductoMasVendidoInterno());
+    }
+
+    private Optional<Map.Entry<String, Integer>> getProductoMasVendidoInterno() {
+        String sql = "SELECT r.producto_codigo, p.nombre, r.total_cantidad " +
+                "FROM (SELECT producto_codigo, SUM(unidades) AS total_cantidad " +
+                "      FROM resumen_ventas_diario " +
+                "      GROUP BY producto_codigo) r " +
+                "JOIN productos p ON r.producto_codigo = p.codigo " +
+                "ORDER BY r.total_cantidad DESC " +
                 "LIMIT 1";
-        if (connection == null) return Optional.empty();
+        if (dataSource == null) return Optional.empty();
 
-        try (Statement stmt = connection.createStatement();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             Limite limite = limitar(stmt);
              ResultSet rs = stmt.executeQuery(sql)) {
             if (rs.next()) {
                 String nombreProducto = rs.getString("nombre");
@@ -241,6 +170,7 @@ public class EstadisticasService {
                 return Optional.of(resultado.entrySet().iterator().next());
             }
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error al obtener producto más vendido: " + e.getMessage());
             e.printStackTrace();
         }
@@ -249,40 +179,49 @@ public class EstadisticasService {
 
     // Calcula los ingresos totales (histórico)
     public double getIngresosTotales() {
-        String sql = "SELECT SUM(subtotal) AS ingresos_totales FROM detalle_ventas";
-        double total = 0.0;
-        if (connection == null) return total;
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                total = rs.getDouble("ingresos_totales");
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ Error al calcular ingresos totales: " + e.getMessage());
-            e.printStackTrace();
-        }
-        return total;
+        if (dataSource == null) return 0.0;
+        return metricas.medir("getIngresosTotales", () -> sumarResumen("SUM(ingresos)", null, null, "calcular ingresos totales"));
     }
     public double getGananciaBrutaTotal() {
-        double gananciaBruta = 0.0;
-        String sql = "SELECT SUM(dv.subtotal) AS total_ventas, " +
-                "       SUM(dv.cantidad * COALESCE(p.precio_costo, 0)) AS total_costos " +
-                "FROM detalle_ventas dv " +
-                "LEFT JOIN productos p ON dv.producto_codigo = p.codigo "; // Sin filtro de fecha
-
-        if (connection == null) return 0.0;
+        if (dataSource == null) return 0.0;
+        return metricas.medir("getGananciaBrutaTotal", () -> sumarResumen("SUM(ingresos) - SUM(costo)", null, null, "calcular ganancia bruta total"));
+    }
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                double totalVentas = rs.getDouble("total_ventas");
-                double totalCostos = rs.getDouble("total_costos");
-                gananciaBruta = totalVentas - totalCostos;
+    // Evalúa una suma sobre el resumen diario, entre dos fechas inclusive (o sobre todo si son null)
+    private double sumarResumen(String expresion, LocalDate inicio, LocalDate fin, String descripcion) {
+        String sql = "SELECT COALESCE(" + expresion + ", 0) AS total FROM resumen_ventas_diario" +
+                (inicio != null ? " WHERE fecha BETWEEN ? AND ?" : "");
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             Limite limite = limitar(stmt)) {
+            if (inicio != null) {
+                stmt.setDate(1, Date.valueOf(inicio));
+                stmt.setDate(2, Date.valueOf(fin));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) return rs.getDouble("total");
             }
         } catch (SQLException e) {
-            System.err.println("❌ Error SQL al calcular ganancia bruta total: " + e.getMessage());
+            Metricas.marcarError();
+            System.err.println("❌ Error SQL al " + descripcion + ": " + e.getMessage());
             e.printStackTrace();
         }
-        return gananciaBruta;
+        return 0.0;
+    }
+
+    // Quita el tiempo límite de la sentencia al cerrarse
+    private interface Limite extends AutoCloseable {
+        @Override
+        void close() throws SQLException;
+    }
+
+    // Aplica el tiempo límite a la sentencia. Va en el try-with-resources después de ella, así se
+    // quita antes de cerrarla: H2 guarda el límite en la sesión, que vuelve al pool con la conexión
+    // y lo aplicaría a cualquier otra sentencia (ej. guardar una venta).
+    private Limite limitar(Statement stmt) throws SQLException {
+        int segundos = timeoutConsultaSeg;
+        if (segundos <= 0) return () -> { };
+        stmt.setQueryTimeout(segundos);
+        return () -> stmt.setQueryTimeout(0);
     }
-}
\ No newline at end of file
+}
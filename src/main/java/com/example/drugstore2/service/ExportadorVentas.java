@@ -0,0 +1,87 @@
+package com.example.drugstore2.service;
+
+import com.example.drugstore2.model.LineaVenta;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exporta las ventas de un período a CSV leyendo y escribiendo fila por fila,
+ * de modo que la memoria usada no depende del tamaño del período.
+ * Puede escribir el archivo comprimido con gzip.
+ */
+public class ExportadorVentas {
+
+    public static final String[] ENCABEZADOS = { "FechaHora", "CodProducto", "NombreProducto", "Cantidad", "PrecioUnitario", "Subtotal" };
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // Cada cuántas filas se informa el progreso
+    private static final int INTERVALO_PROGRESO = 1000;
+
+    @FunctionalInterface
+    public interface Progreso {
+        void actualizar(long escritas, long total);
+    }
+
+    private final VentaService ventaService;
+
+    public ExportadorVentas(VentaService ventaService) {
+        this.ventaService = ventaService;
+    }
+
+    /**
+     * Escribe el CSV en {@code destino}. Si se cancela o falla, borra el archivo incompleto.
+     * @return filas escritas (sin contar el encabezado); menos que el total si se canceló
+     */
+    public long exportar(LocalDate inicio, LocalDate fin, Path destino, boolean gzip,
+                         Progreso progreso, BooleanSupplier cancelado) throws IOException, SQLException {
+        final long total = ventaService.contarLineasPorRango(inicio, fin);
+        progreso.actualizar(0, total);
+
+        boolean completo = false;
+        long escritas;
+        try (OutputStream salida = abrir(destino, gzip);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+             CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(ENCABEZADOS).build())) {
+
+            final long[] contador = {0};
+            escritas = ventaService.recorrerVentasPorRango(inicio, fin,
+                    linea -> {
+                        escribirFila(csvPrinter, linea);
+                        if (++contador[0] % INTERVALO_PROGRESO == 0) {
+                            progreso.actualizar(contador[0], Math.max(total, contador[0]));
+                        }
+                    }, cancelado);
+            csvPrinter.flush();
+            completo = !cancelado.getAsBoolean();
+        } finally {
+            if (!completo) Files.deleteIfExists(destino);
+        }
+        progreso.actualizar(escritas, Math.max(total, escritas));
+        return escritas;
+    }
+
+    /**
+     * Escribe una línea de venta como fila del CSV (mismas columnas que {@link #ENCABEZADOS}).
+     */
+    public static void escribirFila(CSVPrinter csvPrinter, LineaVenta linea) throws IOException {
+        csvPrinter.printRecord(linea.fechaHora().format(FORMATO_FECHA), linea.codigo(), linea.nombre(),
+                linea.cantidad(), linea.precioUnitario(), linea.subtotal());
+    }
+
+    private static OutputStream abrir(Path destino, boolean gzip) throws IOException {
+        OutputStream salida = Files.newOutputStream(destino);
+        return gzip ? new GZIPOutputStream(salida, 64 * 1024) : salida;
+    }
+}
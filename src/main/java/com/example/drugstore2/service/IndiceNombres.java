@@ -0,0 +1,128 @@
+package com.example.drugstore2.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de trigramas sobre los nombres de producto para búsquedas por fragmento
+ * (equivalente a LIKE '%frag%' pero sin recorrer la tabla).
+ *
+ * Los nombres se normalizan sin tildes ni mayúsculas ("Ibuprofeno Niños" ~ "ibuprofeno ninos"),
+ * los candidatos salen de la intersección de trigramas y luego se verifican como subcadena.
+ * Los resultados se ordenan: coincidencia al inicio del nombre, al inicio de una palabra,
+ * posición de la coincidencia y largo del nombre.
+ */
+class IndiceNombres {
+
+    private static final Pattern MARCAS_DIACRITICAS = Pattern.compile("\\p{M}+");
+    private static final Pattern NO_ALFANUMERICO = Pattern.compile("[^a-z0-9]+");
+
+    // trigrama -> códigos de producto cuyo nombre lo contiene
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    // código -> nombre normalizado (para verificar y para quitar al actualizar)
+    private final Map<String, String> nombres = new HashMap<>();
+
+    /**
+     * Agrega o actualiza el nombre de un producto en el índice.
+     */
+    public synchronized void indexar(String codigo, String nombre) {
+        quitar(codigo);
+        String normalizado = normalizar(nombre);
+        nombres.put(codigo, normalizado);
+        for (String t : trigramas(normalizado)) {
+            postings.computeIfAbsent(t, k -> new HashSet<>()).add(codigo);
+        }
+    }
+
+    public synchronized void quitar(String codigo) {
+        String anterior = nombres.remove(codigo);
+        if (anterior == null) return;
+        for (String t : trigramas(anterior)) {
+            Set<String> codigos = postings.get(t);
+            if (codigos != null) {
+                codigos.remove(codigo);
+                if (codigos.isEmpty()) postings.remove(t);
+            }
+        }
+    }
+
+    /**
+     * Devuelve hasta {@code limite} códigos cuyo nombre contiene el fragmento, ordenados por relevancia.
+     */
+    public synchronized List<String> buscar(String fragmento, int limite) {
+        String consulta = normalizar(fragmento);
+        if (consulta.isEmpty() || limite <= 0) return List.of();
+
+        Set<String> candidatos;
+        if (consulta.length() < 3) {
+            // Muy corto para trigramas: se verifica contra todos los nombres
+            candidatos = nombres.keySet();
+        } else {
+            candidatos = intersectar(trigramas(consulta));
+        }
+
+        List<Coincidencia> coincidencias = new ArrayList<>();
+        for (String codigo : candidatos) {
+            String nombre = nombres.get(codigo);
+            int pos = nombre.indexOf(consulta);
+            if (pos < 0) continue; // Falso positivo del índice
+            boolean inicioPalabra = pos == 0 || nombre.charAt(pos - 1) == ' ';
+            coincidencias.add(new Coincidencia(codigo, nombre, pos, inicioPalabra));
+        }
+        coincidencias.sort(Comparator
+                .comparing((Coincidencia c) -> c.posicion() != 0)
+                .thenComparing(c -> !c.inicioPalabra())
+                .thenComparingInt(Coincidencia::posicion)
+                .thenComparingInt(c -> c.nombre().length())
+                .thenComparing(Coincidencia::nombre));
+
+        List<String> resultado = new ArrayList<>(Math.min(limite, coincidencias.size()));
+        for (int i = 0; i < coincidencias.size() && i < limite; i++) {
+            resultado.add(coincidencias.get(i).codigo());
+        }
+        return resultado;
+    }
+
+    // Intersección de las listas de cada trigrama, empezando por la más corta
+    private Set<String> intersectar(Set<String> trigramas) {
+        List<Set<String>> listas = new ArrayList<>();
+        for (String t : trigramas) {
+            Set<String> codigos = postings.get(t);
+            if (codigos == null) return Set.of(); // Algún trigrama no aparece en ningún nombre
+            listas.add(codigos);
+        }
+        listas.sort(Comparator.comparingInt(Set::size));
+        Set<String> resultado = new HashSet<>(listas.get(0));
+        for (int i = 1; i < listas.size() && !resultado.isEmpty(); i++) {
+            resultado.retainAll(listas.get(i));
+        }
+        return resultado;
+    }
+
+    /**
+     * Minúsculas, sin tildes/diéresis y con cualquier separador reducido a un espacio.
+     */
+    static String normalizar(String texto) {
+        if (texto == null) return "";
+        String sinTildes = MARCAS_DIACRITICAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return NO_ALFANUMERICO.matcher(sinTildes.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static Set<String> trigramas(String normalizado) {
+        Set<String> resultado = new HashSet<>();
+        for (int i = 0; i + 3 <= normalizado.length(); i++) {
+            resultado.add(normalizado.substring(i, i + 3));
+        }
+        return resultado;
+    }
+
+    private record Coincidencia(String codigo, String nombre, int posicion, boolean inicioPalabra) {}
+}
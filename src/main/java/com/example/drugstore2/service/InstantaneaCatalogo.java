@@ -0,0 +1,223 @@
+package com.example.drugstore2.service;
+
+import com.example.drugstore2.model.ProductoDatos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Copia en disco del catálogo de productos activos, en un formato binario compacto que se abre
+ * mapeado en memoria: al iniciar, los escaneos se resuelven desde el archivo sin esperar a que
+ * se lea la tabla de productos.
+ *
+ * Formato: encabezado (mágico, fecha de escritura, versión, cantidad), tabla de posiciones
+ * ordenada por código (búsqueda binaria) y los registros. La versión es el CRC32 de tabla y
+ * registros: si el catálogo leído de la BD da la misma versión no hace falta reescribir.
+ *
+ * Se escribe en un archivo ".nuevo" y se renombra; si el renombrado falla (en Windows un
+ * archivo mapeado no se puede reemplazar) queda pendiente y se aplica en el próximo {@link #abrir}.
+ */
+public final class InstantaneaCatalogo {
+
+    private static final int MAGICO = 0x44534331; // "DSC1"
+    // mágico + escrita (ms) + versión + cantidad
+    private static final int ENCABEZADO = 4 + 8 + 8 + 4;
+
+    private final ByteBuffer datos;
+    private final long escritaEn;
+    private final long version;
+    private final int cantidad;
+    private final int inicioRegistros;
+
+    private InstantaneaCatalogo(ByteBuffer datos, long escritaEn, long version, int cantidad) {
+        this.datos = datos;
+        this.escritaEn = escritaEn;
+        this.version = version;
+        this.cantidad = cantidad;
+        this.inicioRegistros = ENCABEZADO + cantidad * 4;
+    }
+
+    /**
+     * Abre la instantánea mapeada en memoria (solo lectura).
+     *
+     * @return null si el archivo no existe
+     * @throws IOException si no se puede leer o está incompleta/dañada
+     */
+    public static InstantaneaCatalogo abrir(Path archivo) throws IOException {
+        aplicarPendiente(archivo);
+        if (!Files.isRegularFile(archivo)) return null;
+
+        MappedByteBuffer mapa;
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        if (mapa.capacity() < ENCABEZADO || mapa.getInt(0) != MAGICO) {
+            throw new IOException("Formato de instantánea desconocido: " + archivo);
+        }
+        long escritaEn = mapa.getLong(4);
+        long version = mapa.getLong(12);
+        int cantidad = mapa.getInt(20);
+        if (cantidad < 0 || ENCABEZADO + (long) cantidad * 4 > mapa.capacity()
+                || calcularCrc(mapa.slice(ENCABEZADO, mapa.capacity() - ENCABEZADO)) != version) {
+            throw new IOException("Instantánea incompleta o dañada: " + archivo);
+        }
+        return new InstantaneaCatalogo(mapa, escritaEn, version, cantidad);
+    }
+
+    /**
+     * Escribe la instantánea de estos productos, salvo que su versión sea {@code versionPrevia}
+     * (el contenido no cambió).
+     *
+     * @return la versión del contenido (escrito o no)
+     */
+    public static long escribir(Path archivo, Collection<ProductoDatos> productos, long versionPrevia) throws IOException {
+        List<ProductoDatos> ordenados = new ArrayList<>(productos.size());
+        for (ProductoDatos p : productos) {
+            if (p != null && p.codigo() != null) ordenados.add(p);
+        }
+        ordenados.sort(Comparator.comparing(ProductoDatos::codigo));
+
+        ByteArrayOutputStream registros = new ByteArrayOutputStream(ordenados.size() * 64);
+        DataOutputStream salida = new DataOutputStream(registros);
+        ByteBuffer posiciones = ByteBuffer.allocate(ordenados.size() * 4);
+        for (ProductoDatos p : ordenados) {
+            posiciones.putInt(salida.size());
+            escribirTexto(salida, p.codigo());
+            escribirTexto(salida, p.nombre());
+            salida.writeDouble(p.precioVenta());
+            salida.writeDouble(p.precioCosto());
+            salida.writeInt(p.stock());
+            escribirTexto(salida, p.categoriaNombre());
+            salida.writeInt(p.stockMinimo());
+        }
+        salida.flush();
+
+        byte[] cuerpo = registros.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(posiciones.array());
+        crc.update(cuerpo);
+        long version = crc.getValue();
+        if (version == versionPrevia && Files.isRegularFile(archivo)) return version;
+
+        ByteBuffer encabezado = ByteBuffer.allocate(ENCABEZADO)
+                .putInt(MAGICO)
+                .putLong(System.currentTimeMillis())
+                .putLong(version)
+                .putInt(ordenados.size())
+                .flip();
+
+        Path nuevo = pendiente(archivo);
+        if (archivo.getParent() != null) Files.createDirectories(archivo.getParent());
+        try (FileChannel canal = FileChannel.open(nuevo, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer[] partes = {encabezado, posiciones.flip(), ByteBuffer.wrap(cuerpo)};
+            while (partes[2].hasRemaining()) canal.write(partes);
+            canal.force(true);
+        }
+        aplicarPendiente(archivo);
+        return version;
+    }
+
+    /**
+     * Busca un producto por código (búsqueda binaria sobre el archivo mapeado).
+     */
+    public ProductoDatos buscar(String codigo) {
+        if (codigo == null) return null;
+        String buscado = codigo.trim();
+        int desde = 0;
+        int hasta = cantidad - 1;
+        while (desde <= hasta) {
+            int medio = (desde + hasta) >>> 1;
+            int posicion = inicioRegistros + datos.getInt(ENCABEZADO + medio * 4);
+            int comparacion = leerTexto(posicion).compareTo(buscado);
+            if (comparacion == 0) return leerRegistro(posicion);
+            if (comparacion < 0) desde = medio + 1;
+            else hasta = medio - 1;
+        }
+        return null;
+    }
+
+    public int size() { return cantidad; }
+
+    /** CRC32 del contenido: dos instantáneas con la misma versión tienen los mismos productos. */
+    public long getVersion() { return version; }
+
+    /** Fecha de escritura (ms desde epoch). */
+    public long getEscritaEn() { return escritaEn; }
+
+    private ProductoDatos leerRegistro(int posicion) {
+        int[] cursor = {posicion};
+        String codigo = leerTexto(cursor);
+        String nombre = leerTexto(cursor);
+        double precioVenta = datos.getDouble(cursor[0]);
+        double precioCosto = datos.getDouble(cursor[0] + 8);
+        int stock = datos.getInt(cursor[0] + 16);
+        cursor[0] += 20;
+        String categoria = leerTexto(cursor);
+        int stockMinimo = datos.getInt(cursor[0]);
+        return new ProductoDatos(codigo, nombre, precioVenta, precioCosto, stock, categoria, stockMinimo);
+    }
+
+    private String leerTexto(int posicion) {
+        return leerTexto(new int[]{posicion});
+    }
+
+    // Lee un texto (largo + UTF-8; largo -1 = null) con lecturas absolutas y avanza el cursor
+    private String leerTexto(int[] cursor) {
+        short largo = datos.getShort(cursor[0]);
+        cursor[0] += 2;
+        if (largo < 0) return null;
+        byte[] bytes = new byte[largo];
+        datos.get(cursor[0], bytes);
+        cursor[0] += largo;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void escribirTexto(DataOutputStream salida, String texto) throws IOException {
+        if (texto == null) {
+            salida.writeShort(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) throw new IOException("Texto demasiado largo para la instantánea");
+        salida.writeShort(bytes.length);
+        salida.write(bytes);
+    }
+
+    private static long calcularCrc(ByteBuffer contenido) {
+        CRC32 crc = new CRC32();
+        crc.update(contenido);
+        return crc.getValue();
+    }
+
+    private static Path pendiente(Path archivo) {
+        return archivo.resolveSibling(archivo.getFileName() + ".nuevo");
+    }
+
+    // Reemplaza la instantánea por la versión pendiente, si hay una
+    private static void aplicarPendiente(Path archivo) {
+        Path nuevo = pendiente(archivo);
+        if (!Files.exists(nuevo)) return;
+        try {
+            Files.move(nuevo, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo reemplazar la instantánea del catálogo (" + e.getMessage()
+                    + "); se reemplaza en el próximo inicio.");
+        }
+    }
+}
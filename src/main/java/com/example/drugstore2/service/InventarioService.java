@@ -1,87 +1,275 @@
 package com.example.drugstore2.service;
+import com.example.drugstore2.db.ErroresBD;
 import com.example.drugstore2.model.Producto;
+import com.example.drugstore2.model.ProductoDatos;
+import com.example.drugstore2.util.Log;
+import com.example.drugstore2.util.Metricas;
 
-import java.sql.*; // Para Connection, DriverManager, PreparedStatement, ResultSet, SQLException, Statement
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.*; // Para Connection, PreparedStatement, ResultSet, SQLException, Statement
 import java.util.*; // O importa Map, List, HashMap, ArrayList individualmente
 
 public class InventarioService {
-    private Connection connection;
+    // Máximo de resultados para la búsqueda por nombre mientras se escribe
+    public static final int LIMITE_BUSQUEDA_NOMBRE = 50;
 
-    // Constructor (sin cambios)
-    public InventarioService() {
-        // ... (código existente del constructor)
+    private final DataSource dataSource;
+    // Índice en memoria por código de barras (evita ir a la BD en cada escaneo)
+    private final CatalogoProductos catalogo = new CatalogoProductos();
+    // Eventos de log_eventos: se escriben en segundo plano, por lotes
+    private final RegistroAuditoria auditoria;
+    // Latencia y errores de cada método público (panel de diagnóstico)
+    private static final Metricas metricas = Metricas.de("InventarioService");
+    private static final Log log = Log.de(InventarioService.class);
+
+    // Copia en disco del catálogo: resuelve escaneos al iniciar, hasta que termina la carga desde la BD
+    private final Path archivoInstantanea;
+    private volatile InstantaneaCatalogo instantanea;
+    private volatile long versionInstantanea = -1;
+    // true cuando el catálogo en memoria tiene todos los productos activos (lectura completa de la BD)
+    private volatile boolean catalogoCompleto = false;
+
+    // Recibe el pool de conexiones compartido (cada método pide y devuelve su conexión)
+    public InventarioService(DataSource dataSource) {
+        this(dataSource, new RegistroAuditoria(dataSource));
+    }
+
+    public InventarioService(DataSource dataSource, RegistroAuditoria auditoria) {
+        this(dataSource, auditoria, null);
+    }
+
+    /**
+     * @param archivoInstantanea copia en disco del catálogo (null = sin instantánea). Si existe, el
+     *                           constructor vuelve enseguida y el catálogo se lee de la BD en segundo
+     *                           plano; mientras tanto los escaneos se resuelven desde el archivo.
+     */
+    public InventarioService(DataSource dataSource, RegistroAuditoria auditoria, Path archivoInstantanea) {
+        this.dataSource = dataSource;
+        this.auditoria = auditoria;
+        this.archivoInstantanea = archivoInstantanea;
+        if (this.dataSource == null) {
+            System.err.println("❌ Error: El pool de conexiones es nulo en InventarioService.");
+        } else if (abrirInstantanea()) {
+            Thread reconciliacion = new Thread(this::recargarCatalogo, "catalogo-reconciliacion");
+            reconciliacion.setDaemon(true);
+            reconciliacion.start();
+        } else {
+            recargarCatalogo(); // Precarga del catálogo para los escaneos
+        }
+    }
+
+    // Abre la instantánea del catálogo si hay una válida
+    private boolean abrirInstantanea() {
+        if (archivoInstantanea == null) return false;
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            String url = "jdbc:mysql://localhost:3306/drugstore?useSSL=false&serverTimezone=UTC";
-            String usuario = "root";
-            String clave = "";
-            connection = DriverManager.getConnection(url, usuario, clave);
-            System.out.println("✅ Conexión a MySQL establecida.");
-        } catch (ClassNotFoundException e) {
-            System.out.println("❌ Driver MySQL no encontrado.");
-            e.printStackTrace();
+            InstantaneaCatalogo abierta = InstantaneaCatalogo.abrir(archivoInstantanea);
+            if (abierta == null) return false;
+            long minutos = (System.currentTimeMillis() - abierta.getEscritaEn()) / 60_000;
+            System.out.println("ℹ️ Catálogo desde instantánea en disco: " + abierta.size()
+                    + " productos (escrita hace " + minutos + " min). Se actualiza desde la BD en segundo plano.");
+            versionInstantanea = abierta.getVersion();
+            instantanea = abierta;
+            return true;
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo abrir la instantánea del catálogo, se lee de la BD: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Vuelve a leer todos los productos activos y resincroniza el catálogo en memoria
+     * (útil si otra terminal modificó productos). Después actualiza la instantánea en disco.
+     */
+    public void recargarCatalogo() {
+        metricas.medir("recargarCatalogo", () -> recargarCatalogoInterno());
+    }
+
+    private void recargarCatalogoInterno() {
+        try {
+            long marca = catalogo.marca(); // Antes de leer: lo que cambie durante la lectura no se pisa
+            cargarCatalogo(leerProductosActivos(), marca);
         } catch (SQLException e) {
-            System.out.println("❌ Error al conectar BD:");
+            Metricas.marcarError();
+            // Si había instantánea, se sigue usando hasta la próxima recarga
+            System.err.println("❌ Error SQL al cargar el catálogo: " + e.getMessage());
             e.printStackTrace();
+            return;
+        }
+        System.out.println("Catálogo en memoria cargado. Productos: " + catalogo.size());
+        guardarInstantanea(catalogo.todos());
+    }
+
+    // Carga en el catálogo una lectura completa hecha después de 'marca'. Los productos que cambiaron
+    // mientras tanto (ej. stock de una venta confirmada durante la lectura) se vuelven a leer uno por uno.
+    private void cargarCatalogo(List<ProductoDatos> productos, long marca) {
+        Set<String> pendientes = catalogo.cargar(productos, marca);
+        try {
+            for (int pasada = 0; !pendientes.isEmpty() && pasada < 3; pasada++) {
+                Set<String> siguen = new HashSet<>();
+                for (String codigo : pendientes) {
+                    long marcaProducto = catalogo.marca();
+                    if (!catalogo.guardarSiNoCambio(buscarProductoEnBD(codigo), codigo, marcaProducto)) siguen.add(codigo);
+                }
+                pendientes = siguen;
+            }
+        } catch (SQLException e) {
+            Metricas.marcarError();
+            // Los que faltan quedan como estaban en memoria: cambiaron después de la lectura completa
+            System.err.println("⚠️ No se pudieron releer " + pendientes.size() + " producto(s) modificados durante la carga: " + e.getMessage());
+        }
+        catalogoCompleto = true;
+        instantanea = null; // El catálogo en memoria ya está al día
+    }
+
+    /**
+     * true cuando el catálogo en memoria ya se leyó completo de la BD. Antes (arranque desde la
+     * instantánea) los escaneos funcionan pero la búsqueda por nombre todavía no tiene resultados.
+     */
+    public boolean isCatalogoCompleto() {
+        return catalogoCompleto;
+    }
+
+    /**
+     * Escribe la instantánea del catálogo con el contenido actual en memoria (incluye los cambios
+     * de stock confirmados). Se llama al cerrar; no hace nada si el catálogo no llegó a cargarse
+     * completo o si no hay archivo configurado.
+     */
+    public void guardarInstantanea() {
+        if (catalogoCompleto) guardarInstantanea(catalogo.todos());
+    }
+
+    private void guardarInstantanea(Collection<ProductoDatos> productos) {
+        if (archivoInstantanea == null) return;
+        try {
+            long version = InstantaneaCatalogo.escribir(archivoInstantanea, productos, versionInstantanea);
+            if (version != versionInstantanea) {
+                System.out.println("✅ Instantánea del catálogo actualizada (" + productos.size() + " productos).");
+                versionInstantanea = version;
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo escribir la instantánea del catálogo: " + e.getMessage());
         }
     }
 
-    public Connection getConnection() { return connection; }
+    public DataSource getDataSource() { return dataSource; }
+    /**
+     * Productos activos como objetos observables (para tablas editables como la de stock).
+     */
     public Map<String, Producto> getProductos() {
+        return metricas.medir("getProductos", () -> getProductosInterno());
+    }
+
+    private Map<String, Producto> getProductosInterno() {
         Map<String, Producto> productos = new HashMap<>();
+        for (ProductoDatos p : listarProductos()) {
+            productos.put(p.codigo(), p.aProducto());
+        }
+        return productos;
+    }
+
+    /**
+     * Lee de la BD todos los productos activos, sin crear propiedades JavaFX
+     * (exportaciones y cálculos). No toca el catálogo en memoria: eso lo hace {@link #recargarCatalogo()}.
+     */
+    public List<ProductoDatos> listarProductos() {
+        return metricas.medir("listarProductos", () -> listarProductosInterno());
+    }
+
+    private List<ProductoDatos> listarProductosInterno() {
+        try {
+            return leerProductosActivos();
+        } catch (SQLException e) {
+            Metricas.marcarError();
+            System.err.println("❌ Error SQL al obtener productos: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    private List<ProductoDatos> leerProductosActivos() throws SQLException {
+        List<ProductoDatos> productos = new ArrayList<>();
         String sql = "SELECT p.*, c.nombre AS categoria, p.stock_minimo, p.precio_costo " + // <-- Añadido p.precio_costo
                 "FROM productos p " +
                 "LEFT JOIN categorias c ON p.categoria_id = c.id " +
                 "WHERE p.activo = TRUE";
-        try (Statement stmt = connection.createStatement();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                String codigo = rs.getString("codigo");
-                String nombre = rs.getString("nombre");
-                double precioVenta = rs.getDouble("precio_venta");
-                double precioCosto = rs.getDouble("precio_costo"); // <-- LEER precio_costo
-                int stock = rs.getInt("stock");
-                String categoria = rs.getString("categoria");
-                int stockMinimo = rs.getInt("stock_minimo");
-                // Usar el constructor actualizado de Producto
-                productos.put(codigo, new Producto(codigo, nombre, precioVenta, precioCosto, stock, categoria, stockMinimo));
+                productos.add(leerProducto(rs));
             }
-        } catch (SQLException e) {
-            System.err.println("❌ Error SQL al obtener productos: " + e.getMessage());
-            e.printStackTrace();
         }
         return productos;
     }
 
+    private static ProductoDatos leerProducto(ResultSet rs) throws SQLException {
+        return new ProductoDatos(
+                rs.getString("codigo"),
+                rs.getString("nombre"),
+                rs.getDouble("precio_venta"),
+                rs.getDouble("precio_costo"),
+                rs.getInt("stock"),
+                rs.getString("categoria"),
+                rs.getInt("stock_minimo"));
+    }
+
+    /**
+     * Busca un producto activo por código. Se resuelve desde el catálogo en memoria;
+     * solo consulta la BD si el código no está cargado (ej. alta hecha en otra terminal).
+     */
     public Producto buscarProductoPorCodigo(String codigo) {
+        return metricas.medir("buscarProductoPorCodigo", () -> buscarProductoPorCodigoInterno(codigo));
+    }
+
+    private Producto buscarProductoPorCodigoInterno(String codigo) {
         if (codigo == null || codigo.trim().isEmpty()) return null;
+        Producto enCatalogo = catalogo.buscar(codigo);
+        if (enCatalogo != null) return enCatalogo;
+        // Recién iniciado: mientras se carga el catálogo, responder desde la instantánea en disco
+        InstantaneaCatalogo enDisco = instantanea;
+        if (enDisco != null) {
+            ProductoDatos p = enDisco.buscar(codigo);
+            if (p != null) return p.aProducto();
+        }
+
+        ProductoDatos enBD;
+        try {
+            enBD = buscarProductoEnBD(codigo);
+        } catch (SQLException e) {
+            Metricas.marcarError();
+            System.err.println("❌ Error al buscar producto por código " + codigo + ": " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+        if (enBD == null) return null;
+        catalogo.guardar(enBD);
+        return enBD.aProducto();
+    }
+
+    // Producto activo con ese código, o null si no existe. Un error de la BD se lanza: no es lo mismo que "no existe"
+    private ProductoDatos buscarProductoEnBD(String codigo) throws SQLException {
         // Añadir p.precio_costo a la consulta
         String sql = "SELECT p.*, c.nombre AS categoria, p.stock_minimo, p.precio_costo " + // <-- Añadido p.precio_costo
                 "FROM productos p " +
                 "LEFT JOIN categorias c ON p.categoria_id = c.id " +
                 "WHERE p.codigo = ? AND p.activo = TRUE"; // Solo activos
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, codigo.trim());
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                return new Producto(
-                        rs.getString("codigo"),
-                        rs.getString("nombre"),
-                        rs.getDouble("precio_venta"),
-                        // ... aquí puede estar el problema ...
-                        rs.getDouble("precio_costo"), // ¿Está este argumento en la posición correcta?
-                        rs.getInt("stock"),
-                        rs.getString("categoria"),   // ¿Es este el nombre correcto de la columna/alias?
-                        rs.getInt("stock_minimo")
-                );
+                return leerProducto(rs);
             }
-        } catch (SQLException e) {
-            System.err.println("❌ Error al buscar producto por código " + codigo + ": " + e.getMessage());
-            e.printStackTrace();
         }
         return null;
     }
     public void agregarProducto(String codigo, String nombre, double precioVenta, double precioCosto, int stock, int categoriaId, int stockMinimo) { // <-- Nuevo parámetro precioCosto
+        metricas.medir("agregarProducto", () -> agregarProductoInterno(codigo, nombre, precioVenta, precioCosto, stock, categoriaId, stockMinimo));
+    }
+
+    private void agregarProductoInterno(String codigo, String nombre, double precioVenta, double precioCosto, int stock, int categoriaId, int stockMinimo) {
         if (buscarProductoPorCodigo(codigo) != null) {
             System.err.println("⚠️ Intento de agregar producto con código duplicado: " + codigo);
             return;
@@ -89,7 +277,8 @@ public class InventarioService {
 
         String sql = "INSERT INTO productos (codigo, nombre, precio_venta, precio_costo, stock, categoria_id, activo, stock_minimo) " + // <-- Añadido precio_costo
                 "VALUES (?, ?, ?, ?, ?, ?, TRUE, ?)"; // Añadido ? para precio_costo
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, codigo);
             stmt.setString(2, nombre);
             stmt.setDouble(3, precioVenta);
@@ -100,27 +289,34 @@ public class InventarioService {
             int filasAfectadas = stmt.executeUpdate();
             if (filasAfectadas > 0) {
                 System.out.println("✅ Producto agregado con éxito: " + nombre + " (Costo: " + precioCosto + ")");
+                recargarEnCatalogo(codigo);
                 // Ajustar el mensaje de log si es necesario
                 registrarEvento("INSERT", "productos", "Agregado: " + nombre + " (Cod: " + codigo + ", Costo: " + precioCosto + ", Stock: " + stock + ", Min: " + stockMinimo + ")");
             } else {
                 System.err.println("❌ No se pudo agregar el producto: " + nombre);
             }
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al agregar producto " + codigo + ": " + e.getMessage());
             e.printStackTrace();
         }
     }
     public boolean modificarProducto(String codigo, String nuevoNombre, double nuevoPrecioVenta, double nuevoPrecioCosto, int nuevaCategoriaId, int nuevoStockMinimo) { // <-- Nuevo parámetro nuevoPrecioCosto
+        return metricas.medir("modificarProducto", () -> modificarProductoInterno(codigo, nuevoNombre, nuevoPrecioVenta, nuevoPrecioCosto, nuevaCategoriaId, nuevoStockMinimo));
+    }
+
+    private boolean modificarProductoInterno(String codigo, String nuevoNombre, double nuevoPrecioVenta, double nuevoPrecioCosto, int nuevaCategoriaId, int nuevoStockMinimo) {
         // Añadir precio_costo al UPDATE
         String sql = "UPDATE productos SET nombre = ?, precio_venta = ?, precio_costo = ?, categoria_id = ?, stock_minimo = ? " + // <-- Añadido precio_costo = ?
                 "WHERE codigo = ? AND activo = TRUE";
 
-        if (connection == null || codigo == null || codigo.trim().isEmpty() || nuevoNombre == null || nuevoNombre.trim().isEmpty() || nuevoPrecioVenta <= 0 || nuevoPrecioCosto < 0 || nuevoStockMinimo < 0) { // Permitir costo 0
+        if (dataSource == null || codigo == null || codigo.trim().isEmpty() || nuevoNombre == null || nuevoNombre.trim().isEmpty() || nuevoPrecioVenta <= 0 || nuevoPrecioCosto < 0 || nuevoStockMinimo < 0) { // Permitir costo 0
             System.err.println("⚠️ Datos inválidos para modificar producto.");
             return false;
         }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, nuevoNombre.trim());
             stmt.setDouble(2, nuevoPrecioVenta);
             stmt.setDouble(3, nuevoPrecioCosto); // <-- Establecer nuevo precio_costo
@@ -133,45 +329,148 @@ public class InventarioService {
                 // Ajustar el mensaje de log si es necesario
                 registrarEvento("UPDATE", "productos", "Modificado: " + nuevoNombre + " (Cod: " + codigo + ", Costo: " + nuevoPrecioCosto + ", Min: " + nuevoStockMinimo + ")");
                 System.out.println("✅ Producto modificado con éxito: " + codigo);
+                recargarEnCatalogo(codigo);
                 return true;
             } else {
                 System.out.println("⚠️ No se encontró el producto activo a modificar o no hubo cambios: " + codigo);
                 return false;
             }
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al modificar producto " + codigo + ": " + e.getMessage());
             e.printStackTrace();
             return false;
         }
     }
     public boolean actualizarStock(String codigo, int cantidad) {
+        return metricas.medir("actualizarStock", () -> actualizarStockInterno(codigo, cantidad));
+    }
+
+    private boolean actualizarStockInterno(String codigo, int cantidad) {
+        if (dataSource == null || codigo == null || codigo.trim().isEmpty()) {
+            System.err.println("⚠️ Datos inválidos para actualizar stock.");
+            return false;
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean exito = actualizarStock(conn, codigo, cantidad);
+            if (exito) catalogo.ajustarStock(codigo, cantidad);
+            return exito;
+        } catch (SQLException e) {
+            Metricas.marcarError();
+            ErroresBD.registrar(e);
+            System.err.println("❌ Error SQL al actualizar stock para " + codigo + ": " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Actualiza el stock usando una conexión ya abierta, para poder participar
+     * en una transacción del llamador (ej. guardarVenta).
+     * Los errores SQL se propagan para que el llamador haga rollback.
+     * No toca el catálogo en memoria: el llamador debe invocar
+     * {@link #aplicarStockConfirmado(String, int)} después del commit.
+     */
+    public boolean actualizarStock(Connection conn, String codigo, int cantidad) throws SQLException {
+        return metricas.medir("actualizarStockEnTransaccion", () -> actualizarStockInterno(conn, codigo, cantidad));
+    }
+
+    private boolean actualizarStockInterno(Connection conn, String codigo, int cantidad) throws SQLException {
         String sql = "UPDATE productos SET stock = stock + ? WHERE codigo = ? AND (stock + ?) >= 0";
-        if (connection == null || codigo == null || codigo.trim().isEmpty()) {
+        if (conn == null || codigo == null || codigo.trim().isEmpty()) {
             System.err.println("⚠️ Datos inválidos para actualizar stock.");
             return false;
         }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, cantidad);
             stmt.setString(2, codigo.trim());
             stmt.setInt(3, cantidad); // Para la condición WHERE
             int filasAfectadas = stmt.executeUpdate();
             if (filasAfectadas > 0) {
-                System.out.println("   (Stock actualizado para " + codigo + " en: " + cantidad + ")"); // Log interno
+                log.debug(() -> "Stock actualizado para " + codigo + " en: " + cantidad);
                 return true;
             } else {
                 // Esto puede ocurrir si el producto no existe o si la actualización resultaría en stock negativo
                 System.err.println("⚠️ No se pudo actualizar stock para " + codigo + " (quizás stock insuficiente o producto no encontrado). Cantidad: " + cantidad);
                 return false; // Indicar fallo
             }
+        }
+    }
+
+    /**
+     * Descuenta el stock de varios productos en un solo lote (una ida a la BD),
+     * usando la conexión/transacción del llamador (ej. guardarVenta).
+     * Cada UPDATE solo se aplica si hay stock suficiente; se devuelven los códigos
+     * que no pudieron descontarse (stock insuficiente o producto inexistente) para
+     * que el llamador haga rollback. No toca el catálogo en memoria.
+     *
+     * Si el driver no informa cuántas filas cambió algún UPDATE (SUCCESS_NO_INFO) no se puede
+     * saber si se respetó el stock: se lanza SQLException para que el llamador revierta la venta.
+     *
+     * @param cantidades código -> unidades a descontar (positivas)
+     * @return códigos que habrían quedado con stock negativo; vacía si todo se aplicó
+     */
+    public List<String> descontarStockLote(Connection conn, Map<String, Integer> cantidades) throws SQLException {
+        return metricas.medir("descontarStockLote", () -> descontarStockLoteInterno(conn, cantidades));
+    }
+
+    private List<String> descontarStockLoteInterno(Connection conn, Map<String, Integer> cantidades) throws SQLException {
+        List<String> fallidos = new ArrayList<>();
+        if (cantidades == null || cantidades.isEmpty()) return fallidos;
+
+        // Orden fijo por código: varias terminales bloquean las filas en el mismo orden (evita deadlocks)
+        List<Map.Entry<String, Integer>> lineas = new ArrayList<>(new TreeMap<>(cantidades).entrySet());
+        String sql = "UPDATE productos SET stock = stock - ? WHERE codigo = ? AND stock >= ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Integer> linea : lineas) {
+                stmt.setInt(1, linea.getValue());
+                stmt.setString(2, linea.getKey());
+                stmt.setInt(3, linea.getValue());
+                stmt.addBatch();
+            }
+            int[] resultados = stmt.executeBatch();
+            for (int i = 0; i < resultados.length; i++) {
+                // 0 filas = sin stock suficiente o inexistente
+                if (resultados[i] == 0) fallidos.add(lineas.get(i).getKey());
+                else if (resultados[i] == Statement.SUCCESS_NO_INFO) {
+                    // El UPDATE con "stock >= ?" es lo único que evita vender sin stock: sin conteo no se confirma
+                    throw new SQLException("El driver no informó las filas actualizadas al descontar el stock de "
+                            + lineas.get(i).getKey() + "; la venta se revierte.");
+                }
+            }
+        }
+        return fallidos;
+    }
+
+    /**
+     * Refleja en el catálogo en memoria un cambio de stock ya confirmado en la BD
+     * por una transacción externa (ej. una venta).
+     */
+    public void aplicarStockConfirmado(String codigo, int cantidad) {
+        catalogo.ajustarStock(codigo, cantidad);
+    }
+
+    // Relee un producto de la BD y actualiza (o quita) su entrada en el catálogo
+    private void recargarEnCatalogo(String codigo) {
+        ProductoDatos p;
+        try {
+            p = buscarProductoEnBD(codigo);
         } catch (SQLException e) {
-            System.err.println("❌ Error SQL al actualizar stock para " + codigo + ": " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            // Sin saber si sigue activo, se deja la entrada como estaba
+            System.err.println("⚠️ No se pudo releer el producto " + codigo + " para el catálogo: " + e.getMessage());
+            return;
         }
+        if (p != null) catalogo.guardar(p);
+        else catalogo.quitar(codigo);
     }
 
     public boolean ajustarStockManual(String codigo, int cantidadAjuste, String motivo) {
+        return metricas.medir("ajustarStockManual", () -> ajustarStockManualInterno(codigo, cantidadAjuste, motivo));
+    }
+
+    private boolean ajustarStockManualInterno(String codigo, int cantidadAjuste, String motivo) {
         if (cantidadAjuste == 0) {
             System.out.println("Ajuste manual de stock con cantidad 0, no se realiza acción.");
             return true; // No es un error, pero no hace nada
@@ -189,14 +488,20 @@ public class InventarioService {
         return exito;
     }
     public boolean desactivarProducto(String codigo) {
+        return metricas.medir("desactivarProducto", () -> desactivarProductoInterno(codigo));
+    }
+
+    private boolean desactivarProductoInterno(String codigo) {
         // ... (código existente)
         String sql = "UPDATE productos SET activo = FALSE WHERE codigo = ? AND activo = TRUE";
-        if (connection == null || codigo == null || codigo.trim().isEmpty()) return false;
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        if (dataSource == null || codigo == null || codigo.trim().isEmpty()) return false;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, codigo.trim());
             int filasAfectadas = stmt.executeUpdate();
             if (filasAfectadas > 0) {
                 registrarEvento("DEACTIVATE", "productos", "Se desactivó el producto con código: " + codigo);
+                catalogo.quitar(codigo);
                 System.out.println("✅ Producto desactivado con éxito: " + codigo);
                 return true;
             } else {
@@ -204,6 +509,7 @@ public class InventarioService {
                 return false;
             }
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al desactivar producto " + codigo + ": " + e.getMessage());
             e.printStackTrace();
             return false;
@@ -211,56 +517,55 @@ public class InventarioService {
     }
 
     public List<String> obtenerCategorias() {
+        return metricas.medir("obtenerCategorias", () -> obtenerCategoriasInterno());
+    }
+
+    private List<String> obtenerCategoriasInterno() {
         // ... (código existente)
         List<String> c = new ArrayList<>();
-        try (Statement s = connection.createStatement(); ResultSet r = s.executeQuery("SELECT nombre FROM categorias ORDER BY nombre")) {
+        try (Connection conn = dataSource.getConnection(); Statement s = conn.createStatement(); ResultSet r = s.executeQuery("SELECT nombre FROM categorias ORDER BY nombre")) {
             while (r.next()) c.add(r.getString("nombre"));
-        } catch (Exception e) { e.printStackTrace(); }
+        } catch (Exception e) { Metricas.marcarError(); e.printStackTrace(); }
         return c;
     }
     public int obtenerCategoriaId(String nombre) {
+        return metricas.medir("obtenerCategoriaId", () -> obtenerCategoriaIdInterno(nombre));
+    }
+
+    private int obtenerCategoriaIdInterno(String nombre) {
         // ... (código existente)
-        try (PreparedStatement s = connection.prepareStatement("SELECT id FROM categorias WHERE nombre = ?")) {
+        try (Connection conn = dataSource.getConnection(); PreparedStatement s = conn.prepareStatement("SELECT id FROM categorias WHERE nombre = ?")) {
             s.setString(1, nombre);
             ResultSet r = s.executeQuery();
             if (r.next()) return r.getInt("id");
-        } catch (Exception e) { e.printStackTrace(); }
+        } catch (Exception e) { Metricas.marcarError(); e.printStackTrace(); }
         return -1;
     }
+    // Solo encola el evento; RegistroAuditoria lo inserta en log_eventos sin demorar la operación
     private void registrarEvento(String tipo, String tabla, String descripcion) {
-        // ... (código existente)
-        try (PreparedStatement s = connection.prepareStatement("INSERT INTO log_eventos (tipo_evento, tabla_afectada, descripcion) VALUES (?, ?, ?)")) {
-            s.setString(1, tipo); s.setString(2, tabla); s.setString(3, descripcion); s.executeUpdate();
-        } catch (SQLException e) { System.err.println("❌ Error al registrar evento: "+e.getMessage()); }
+        auditoria.registrar(tipo, tabla, descripcion);
     }
+
+    public RegistroAuditoria getAuditoria() { return auditoria; }
+
+    /**
+     * Busca productos activos cuyo nombre contiene el fragmento, usando el índice de
+     * trigramas en memoria (no consulta la BD). Ignora tildes y mayúsculas y devuelve
+     * los resultados más relevantes primero.
+     */
     public List<Producto> buscarProductosPorNombre(String nombreFragmento) {
-        List<Producto> productosEncontrados = new ArrayList<>();
-        if (nombreFragmento == null || nombreFragmento.trim().isEmpty() || connection == null) {
-            return productosEncontrados;
-        }
-        String sql = "SELECT p.*, c.nombre AS categoria, p.stock_minimo, p.precio_costo " + // <-- Añadido p.precio_costo
-                "FROM productos p " +
-                "LEFT JOIN categorias c ON p.categoria_id = c.id " +
-                "WHERE LOWER(p.nombre) LIKE LOWER(?) AND p.activo = TRUE";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, "%" + nombreFragmento.trim() + "%");
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                productosEncontrados.add(new Producto(
-                        rs.getString("codigo"),
-                        rs.getString("nombre"),
-                        rs.getDouble("precio_venta"),
-                        rs.getDouble("precio_costo"), // <-- LEER precio_costo
-                        rs.getInt("stock"),
-                        rs.getString("categoria"),
-                        rs.getInt("stock_minimo")
-                ));
-            }
-        } catch (SQLException e) {
-            System.err.println("❌ Error SQL al buscar productos por nombre '" + nombreFragmento + "': " + e.getMessage());
-            e.printStackTrace();
+        return buscarProductosPorNombre(nombreFragmento, LIMITE_BUSQUEDA_NOMBRE);
+    }
+
+    public List<Producto> buscarProductosPorNombre(String nombreFragmento, int limite) {
+        return metricas.medir("buscarProductosPorNombre", () -> buscarProductosPorNombreInterno(nombreFragmento, limite));
+    }
+
+    private List<Producto> buscarProductosPorNombreInterno(String nombreFragmento, int limite) {
+        if (nombreFragmento == null || nombreFragmento.trim().isEmpty()) {
+            return new ArrayList<>();
         }
-        return productosEncontrados;
+        return catalogo.buscarPorNombre(nombreFragmento.trim(), limite);
     }
 
 }
\ No newline at end of file
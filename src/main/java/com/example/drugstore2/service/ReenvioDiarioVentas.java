@@ -0,0 +1,226 @@
+package com.example.drugstore2.service;
+
+import com.example.drugstore2.model.LineaTicket;
+import com.example.drugstore2.service.DiarioVentas.Conflicto;
+import com.example.drugstore2.service.DiarioVentas.VentaDiario;
+import com.example.drugstore2.service.VentaService.ResultadoVenta;
+import com.example.drugstore2.util.Metricas;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Envía a la base, en segundo plano, las ventas que están en el {@link DiarioVentas}: las que
+ * quedaron ahí mientras no había conexión y las confirmadas con {@link #encolar} (confirmación
+ * asincrónica: la caja sigue con el próximo cliente apenas la venta está en disco).
+ *
+ * Cada {@code intervaloMs}, o enseguida si se encola una venta, registra las pendientes en orden
+ * por el camino normal ({@link VentaService#registrarVenta}, con su fecha y hora original):
+ * <ul>
+ *   <li>confirmada, o ya registrada con esa clave (duplicado): se marca como aplicada;</li>
+ *   <li>sin stock en la base, o la clave ya registrada con otro contenido: queda como conflicto
+ *       (auditoría y diario) para revisarla a mano;</li>
+ *   <li>sin conexión: se corta la pasada y se reintenta en la siguiente;</li>
+ *   <li>bloqueos que siguen después de los reintentos de registrarVenta: se corta la pasada y se
+ *       reintenta en la siguiente; tras {@link #MAX_INTENTOS} pasadas bloqueadas pasa a conflicto;</li>
+ *   <li>otro error: pasa enseguida a conflicto, para no frenar las ventas que vienen detrás.</li>
+ * </ul>
+ * El {@link Oyente} se entera de cada venta aplicada o en conflicto (desde el hilo de reenvío).
+ */
+public class ReenvioDiarioVentas implements AutoCloseable {
+
+    public static final long INTERVALO_POR_DEFECTO_MS = Long.getLong("diario.intervaloReenvioMs", 5000L);
+    public static final int MAX_INTENTOS = 5;
+
+    /**
+     * Recibe el resultado de las ventas enviadas. Se llama desde el hilo de reenvío:
+     * la UI debe pasar al hilo de JavaFX.
+     */
+    public interface Oyente {
+        void ventaAplicada(VentaDiario venta, long latenciaMs);
+        void ventaEnConflicto(Conflicto conflicto);
+    }
+
+    // encolar: escritura en el diario (fsync); confirmacion: desde que se encoló hasta el commit
+    private static final Metricas metricas = Metricas.de("ColaVentas");
+
+    private final DiarioVentas diario;
+    private final VentaService ventaService;
+    private final RegistroAuditoria auditoria;
+    private final ScheduledExecutorService ejecutor;
+    // Pasadas cortadas por bloqueos en cada clave
+    private final Map<String, Integer> intentos = new HashMap<>();
+    // Hay una pasada pedida por encolar() que todavía no empezó (evita apilar pasadas)
+    private final AtomicBoolean pasadaPedida = new AtomicBoolean();
+    private volatile Oyente oyente;
+    // Se está cerrando: la pasada en curso termina después de la venta actual
+    private volatile boolean cerrando;
+
+    private final AtomicLong reenviadas = new AtomicLong();
+    private final AtomicLong duplicadas = new AtomicLong();
+    private volatile long ultimaLatenciaMs = -1;
+
+    public ReenvioDiarioVentas(DiarioVentas diario, VentaService ventaService, RegistroAuditoria auditoria) {
+        this(diario, ventaService, auditoria, INTERVALO_POR_DEFECTO_MS);
+    }
+
+    public ReenvioDiarioVentas(DiarioVentas diario, VentaService ventaService, RegistroAuditoria auditoria, long intervaloMs) {
+        this.diario = diario;
+        this.ventaService = ventaService;
+        this.auditoria = auditoria;
+        this.ejecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "diario-ventas-reenvio");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Math.max(100, intervaloMs);
+        // La primera pasada enseguida: envía lo que quedó de la ejecución anterior
+        ejecutor.scheduleWithFixedDelay(this::reenviarPendientes, 0, intervalo, TimeUnit.MILLISECONDS);
+    }
+
+    public void setOyente(Oyente oyente) {
+        this.oyente = oyente;
+    }
+
+    /**
+     * Confirmación asincrónica: guarda la venta en el diario y pide una pasada de envío.
+     * Cuando vuelve, la venta ya está en disco (no se pierde aunque se corte la luz);
+     * el resultado del commit llega después al {@link Oyente}. Encolar de nuevo una clave
+     * que sigue en el diario no hace nada.
+     *
+     * @param clave clave del ticket ({@link VentaStateService#getClaveTicket()})
+     * @throws IOException si no se pudo escribir el diario (la venta no quedó guardada)
+     */
+    public void encolar(String clave, List<LineaTicket> lineas) throws IOException {
+        try (Metricas.Medicion medicion = metricas.iniciar("encolar")) {
+            if (diario.contiene(clave)) return; // Doble confirmación del mismo ticket
+            try {
+                diario.registrar(VentaDiario.desde(clave, LocalDateTime.now(), lineas));
+            } catch (IOException e) {
+                medicion.error();
+                throw e;
+            }
+            if (pasadaPedida.compareAndSet(false, true)) {
+                ejecutor.execute(this::reenviarPendientes);
+            }
+        }
+    }
+
+    /**
+     * Una pasada sobre las ventas pendientes. Devuelve cuántas quedaron aplicadas.
+     * Corre en el hilo de reenvío; es pública para forzar un reenvío (ej. desde un benchmark).
+     */
+    public synchronized int reenviarPendientes() {
+        pasadaPedida.set(false); // Lo que se encole desde ahora pide otra pasada
+        int aplicadas = 0;
+        if (cerrando) return aplicadas; // El diario se cierra enseguida
+        try {
+            for (VentaDiario venta : diario.getPendientes()) {
+                if (cerrando) break;
+                ResultadoVenta resultado = ventaService.registrarVenta(venta.clave(), venta.fechaHora(), venta.lineasTicket());
+                switch (resultado) {
+                    case CONFIRMADA, DUPLICADA -> {
+                        diario.marcarAplicada(venta.clave());
+                        intentos.remove(venta.clave());
+                        (resultado == ResultadoVenta.CONFIRMADA ? reenviadas : duplicadas).incrementAndGet();
+                        aplicadas++;
+                        long latenciaMs = registrarLatencia(venta, false);
+                        ultimaLatenciaMs = latenciaMs;
+                        Oyente o = oyente;
+                        if (o != null) o.ventaAplicada(venta, latenciaMs);
+                    }
+                    case SIN_STOCK -> conflicto(venta, "Stock insuficiente en la base");
+                    case OTRO_CONTENIDO -> conflicto(venta, "La clave ya está registrada con otro contenido");
+                    case SIN_CONEXION -> {
+                        return aplicadas; // Todavía sin base: esperar a la próxima pasada
+                    }
+                    case BLOQUEO -> {
+                        int fallos = intentos.merge(venta.clave(), 1, Integer::sum);
+                        if (fallos < MAX_INTENTOS) return aplicadas; // Mantener el orden: reintentar después
+                        conflicto(venta, "Bloqueos en la base (" + fallos + " intentos)");
+                    }
+                    case EN_DIARIO, ERROR -> conflicto(venta, "Error al registrar la venta");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Error al actualizar el diario de ventas: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Que un error inesperado no cancele las próximas pasadas
+            System.err.println("❌ Error inesperado al reenviar ventas del diario: " + e.getMessage());
+            e.printStackTrace();
+        }
+        if (aplicadas > 0) {
+            System.out.println("✅ Diario de ventas: " + aplicadas + " venta(s) enviada(s) a la base ("
+                    + diario.cantidadPendientes() + " pendiente(s)).");
+        }
+        return aplicadas;
+    }
+
+    private void conflicto(VentaDiario venta, String motivo) throws IOException {
+        diario.marcarConflicto(venta.clave(), motivo);
+        intentos.remove(venta.clave());
+        registrarLatencia(venta, true);
+        String descripcion = String.format("Venta del diario no aplicada (%s): clave %s, %s, total %.2f",
+                motivo, venta.clave(), venta.fechaHora(), venta.total());
+        System.err.println("⚠️ " + descripcion);
+        if (auditoria != null) auditoria.registrar("VENTA_CONFLICTO", "ventas", descripcion);
+        Oyente o = oyente;
+        if (o != null) o.ventaEnConflicto(new Conflicto(venta, motivo));
+    }
+
+    // Tiempo desde que la venta se hizo (quedó en el diario) hasta su resultado en la base
+    private static long registrarLatencia(VentaDiario venta, boolean error) {
+        Duration latencia = Duration.between(venta.fechaHora(), LocalDateTime.now());
+        metricas.registrar("confirmacion", latencia.toNanos(), error);
+        return latencia.toMillis();
+    }
+
+    /** Ventas en el diario que todavía no se confirmaron en la base. */
+    public int getPendientes() {
+        return diario.cantidadPendientes();
+    }
+
+    /** Latencia de la última venta confirmada (desde que se encoló), o -1 si todavía no hubo. */
+    public long getUltimaLatenciaMs() {
+        return ultimaLatenciaMs;
+    }
+
+    /** Estado para el panel de diagnóstico. */
+    public String getEstado() {
+        return String.format("pendientes=%d, enviadas=%d, duplicadas=%d, conflictos=%d",
+                diario.cantidadPendientes(), reenviadas.get(), duplicadas.get(), diario.cantidadConflictos());
+    }
+
+    /**
+     * Detiene el reenvío y espera a que termine la pasada en curso (después de la venta que esté
+     * registrando), así el diario se puede cerrar sin que nadie siga escribiendo en él.
+     */
+    @Override
+    public void close() {
+        cerrando = true;
+        ejecutor.shutdown();
+        try {
+            boolean avisado = false;
+            // La venta en curso espera la base como máximo el timeout del pool
+            while (!ejecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                if (!avisado) System.err.println("⚠️ Esperando que termine el reenvío de ventas del diario...");
+                avisado = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Una pasada pedida desde otro hilo (reenviarPendientes es pública) también debe terminar
+        synchronized (this) {
+            System.out.println("✅ Reenvío de ventas del diario detenido. " + getEstado());
+        }
+    }
+}
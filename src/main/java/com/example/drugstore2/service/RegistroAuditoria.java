@@ -0,0 +1,162 @@
+package com.example.drugstore2.service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registro de eventos de auditoría (tabla log_eventos) con escritura diferida.
+ *
+ * {@link #registrar} solo encola el evento y vuelve enseguida; un hilo de fondo los
+ * inserta por lotes cuando se juntan {@code tamanoLote} eventos o pasa {@code intervaloMs}
+ * desde el primero pendiente. La cola es acotada: si se llena (BD caída o muy lenta)
+ * el evento se descarta y se cuenta, en lugar de frenar la operación que lo generó.
+ * {@link #close()} vacía lo pendiente antes de terminar.
+ */
+public class RegistroAuditoria implements AutoCloseable {
+
+    private static final String SQL_INSERT = "INSERT INTO log_eventos (tipo_evento, tabla_afectada, descripcion) VALUES (?, ?, ?)";
+
+    public static final int CAPACIDAD_POR_DEFECTO = Integer.getInteger("auditoria.capacidad", 10_000);
+    public static final int LOTE_POR_DEFECTO = Integer.getInteger("auditoria.tamanoLote", 100);
+    public static final long INTERVALO_POR_DEFECTO_MS = Long.getLong("auditoria.intervaloMs", 1000L);
+    // Tiempo máximo que se espera al cerrar para volcar lo pendiente
+    private static final long ESPERA_CIERRE_MS = 5000;
+
+    private final DataSource dataSource;
+    private final BlockingQueue<Evento> cola;
+    private final int tamanoLote;
+    private final long intervaloMs;
+    private final Thread escritor;
+    private volatile boolean cerrando = false;
+
+    // --- Métricas ---
+    private final AtomicLong encolados = new AtomicLong();
+    private final AtomicLong escritos = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+
+    private record Evento(String tipo, String tabla, String descripcion) {}
+
+    public RegistroAuditoria(DataSource dataSource) {
+        this(dataSource, CAPACIDAD_POR_DEFECTO, LOTE_POR_DEFECTO, INTERVALO_POR_DEFECTO_MS);
+    }
+
+    public RegistroAuditoria(DataSource dataSource, int capacidad, int tamanoLote, long intervaloMs) {
+        this.dataSource = dataSource;
+        this.cola = new ArrayBlockingQueue<>(Math.max(1, capacidad));
+        this.tamanoLote = Math.max(1, tamanoLote);
+        this.intervaloMs = Math.max(1, intervaloMs);
+        this.escritor = new Thread(this::procesar, "auditoria-escritor");
+        this.escritor.setDaemon(true); // No impedir el cierre si no se llama a close()
+        this.escritor.start();
+    }
+
+    /**
+     * Encola un evento. Nunca bloquea: si la cola está llena el evento se descarta.
+     */
+    public void registrar(String tipo, String tabla, String descripcion) {
+        if (cerrando) {
+            descartados.incrementAndGet();
+            return;
+        }
+        if (cola.offer(new Evento(tipo, tabla, descripcion))) {
+            encolados.incrementAndGet();
+        } else if (descartados.incrementAndGet() == 1) {
+            System.err.println("⚠️ Cola de auditoría llena: se descartan eventos de log_eventos.");
+        }
+    }
+
+    private void procesar() {
+        List<Evento> lote = new ArrayList<>(tamanoLote);
+        while (!cerrando || !cola.isEmpty()) {
+            try {
+                Evento primero = cola.poll(intervaloMs, TimeUnit.MILLISECONDS);
+                if (primero == null) continue;
+                lote.add(primero);
+                // Juntar más eventos hasta completar el lote o agotar el intervalo
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+                while (lote.size() < tamanoLote && !cerrando) {
+                    long restante = limite - System.nanoTime();
+                    if (restante <= 0) break;
+                    Evento e = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (e == null) break;
+                    lote.add(e);
+                }
+                cola.drainTo(lote, tamanoLote - lote.size());
+            } catch (InterruptedException ex) {
+                // Hilo interrumpido: se escribe lo que quede y se termina
+                cerrando = true;
+                cola.drainTo(lote, tamanoLote - lote.size());
+            }
+            escribir(lote);
+            lote.clear();
+        }
+    }
+
+    private void escribir(List<Evento> lote) {
+        if (lote.isEmpty()) return;
+        if (dataSource == null) {
+            fallidos.addAndGet(lote.size());
+            return;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SQL_INSERT)) {
+            for (Evento e : lote) {
+                ps.setString(1, e.tipo());
+                ps.setString(2, e.tabla());
+                ps.setString(3, e.descripcion());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            escritos.addAndGet(lote.size());
+            lotes.incrementAndGet();
+        } catch (SQLException ex) {
+            fallidos.addAndGet(lote.size());
+            System.err.println("❌ Error al registrar " + lote.size() + " evento(s) de auditoría: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Deja de aceptar eventos, escribe lo pendiente y detiene el hilo de fondo.
+     */
+    @Override
+    public void close() {
+        if (cerrando && !escritor.isAlive()) return;
+        cerrando = true; // El escritor termina al vaciar la cola (como mucho un intervalo de espera)
+        try {
+            escritor.join(ESPERA_CIERRE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (escritor.isAlive()) {
+            System.err.println("⚠️ La auditoría no terminó de escribir a tiempo. Pendientes: " + cola.size());
+        }
+        System.out.println("Registro de auditoría cerrado. " + getMetricas());
+    }
+
+    public Metricas getMetricas() {
+        return new Metricas(cola.size(), encolados.get(), escritos.get(), descartados.get(), fallidos.get(), lotes.get());
+    }
+
+    /**
+     * @param enCola      eventos esperando ser escritos
+     * @param descartados eventos perdidos por cola llena o registrados durante el cierre
+     * @param fallidos    eventos cuyo lote falló al insertarse
+     */
+    public record Metricas(int enCola, long encolados, long escritos, long descartados, long fallidos, long lotes) {
+        @Override
+        public String toString() {
+            return String.format("en cola=%d, encolados=%d, escritos=%d, descartados=%d, fallidos=%d, lotes=%d",
+                    enCola, encolados, escritos, descartados, fallidos, lotes);
+        }
+    }
+}
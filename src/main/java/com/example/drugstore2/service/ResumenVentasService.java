@@ -0,0 +1,167 @@
+package com.example.drugstore2.service;
+
+import com.example.drugstore2.model.DetalleVenta;
+import com.example.drugstore2.model.Producto;
+import com.example.drugstore2.model.ProductoManual;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resumen diario de ventas por producto (tabla resumen_ventas_diario): unidades, ingresos y costo.
+ *
+ * Se actualiza dentro de la misma transacción que guarda cada venta, así las estadísticas
+ * se calculan sobre unas pocas filas por día en lugar de recorrer todo detalle_ventas.
+ * El costo y la categoría se guardan tal como eran al momento de la venta.
+ * {@link #reconstruir()} vuelve a generar el resumen a partir del historial completo.
+ */
+public class ResumenVentasService {
+
+    // Código y categoría con que se registran las ventas de productos manuales
+    static final String CODIGO_MANUAL = "MANUAL";
+    static final String CATEGORIA_MANUAL = "Otros";
+    static final String SIN_CATEGORIA = "Sin Categoría";
+
+    private static final String SQL_ACUMULAR =
+            "INSERT INTO resumen_ventas_diario (fecha, producto_codigo, categoria, unidades, ingresos, costo) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE unidades = unidades + VALUES(unidades), " +
+            "ingresos = ingresos + VALUES(ingresos), costo = costo + VALUES(costo)";
+
+    // Reconstrucción desde el historial (usa el costo y la categoría actuales de cada producto)
+    private static final String SQL_RECONSTRUIR =
+            "INSERT INTO resumen_ventas_diario (fecha, producto_codigo, categoria, unidades, ingresos, costo) " +
+            "SELECT DATE(v.fecha_hora), dv.producto_codigo, " +
+            "       MAX(CASE WHEN dv.producto_codigo = '" + CODIGO_MANUAL + "' THEN '" + CATEGORIA_MANUAL + "' " +
+            "                ELSE COALESCE(c.nombre, '" + SIN_CATEGORIA + "') END), " +
+            "       SUM(dv.cantidad), SUM(dv.subtotal), SUM(dv.cantidad * COALESCE(p.precio_costo, 0)) " +
+            "FROM detalle_ventas dv " +
+            "JOIN ventas v ON dv.venta_id = v.id " +
+            "LEFT JOIN productos p ON dv.producto_codigo = p.codigo " +
+            "LEFT JOIN categorias c ON p.categoria_id = c.id " +
+            "GROUP BY DATE(v.fecha_hora), dv.producto_codigo";
+
+    private final DataSource dataSource;
+
+    public ResumenVentasService(DataSource dataSource) {
+        this.dataSource = dataSource;
+        if (this.dataSource == null) {
+            System.err.println("❌ Error: El pool de conexiones es nulo en ResumenVentasService.");
+        }
+    }
+
+    /**
+     * Si la tabla está vacía pero hay ventas, la completa desde el historial.
+     * Se llama una vez al iniciar la aplicación, después de las migraciones (que crean la tabla).
+     */
+    public void inicializar() {
+        if (dataSource == null) return;
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            boolean vacio;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM resumen_ventas_diario LIMIT 1")) {
+                vacio = !rs.next();
+            }
+            boolean hayVentas;
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM detalle_ventas LIMIT 1")) {
+                hayVentas = rs.next();
+            }
+            if (vacio && hayVentas) {
+                System.out.println("ℹ️ Resumen de ventas vacío: se genera desde el historial...");
+                reconstruir();
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ Error al inicializar el resumen de ventas: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Suma las líneas de una venta al resumen del día. Debe llamarse con la conexión de la
+     * transacción de la venta, así el resumen se confirma o se revierte junto con ella.
+     */
+    public void registrarVenta(Connection conn, LocalDate fecha, Collection<DetalleVenta> detalles) throws SQLException {
+        // Agrupar por código (los manuales comparten 'MANUAL') y ordenar para bloquear siempre en el mismo orden
+        Map<String, Acumulado> porCodigo = new TreeMap<>();
+        for (DetalleVenta d : detalles) {
+            Producto p = d.getProducto();
+            boolean manual = p instanceof ProductoManual || CODIGO_MANUAL.equals(p.getCodigo());
+            String categoria = manual ? CATEGORIA_MANUAL
+                    : (p.getCategoriaNombre() != null && !p.getCategoriaNombre().isBlank() ? p.getCategoriaNombre() : SIN_CATEGORIA);
+            double costo = manual ? 0.0 : d.getCantidad() * p.getPrecioCosto();
+            porCodigo.computeIfAbsent(p.getCodigo(), k -> new Acumulado(categoria))
+                    .sumar(d.getCantidad(), d.getSubtotal(), costo);
+        }
+        if (porCodigo.isEmpty()) return;
+
+        try (PreparedStatement ps = conn.prepareStatement(SQL_ACUMULAR)) {
+            Date dia = Date.valueOf(fecha);
+            for (Map.Entry<String, Acumulado> e : porCodigo.entrySet()) {
+                Acumulado a = e.getValue();
+                ps.setDate(1, dia);
+                ps.setString(2, e.getKey());
+                ps.setString(3, a.categoria);
+                ps.setInt(4, a.unidades);
+                ps.setDouble(5, a.ingresos);
+                ps.setDouble(6, a.costo);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Borra y regenera todo el resumen a partir de ventas/detalle_ventas, en una sola transacción.
+     * @return filas generadas, o -1 si falló
+     */
+    public int reconstruir() {
+        if (dataSource == null) return -1;
+        long inicio = System.nanoTime();
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            int filas;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM resumen_ventas_diario");
+                filas = stmt.executeUpdate(SQL_RECONSTRUIR);
+            }
+            conn.commit();
+            System.out.printf("✅ Resumen de ventas reconstruido: %d filas en %.0f ms.%n", filas, (System.nanoTime() - inicio) / 1_000_000.0);
+            return filas;
+        } catch (SQLException e) {
+            System.err.println("❌ Error al reconstruir el resumen de ventas: " + e.getMessage());
+            e.printStackTrace();
+            try { if (conn != null) conn.rollback(); } catch (SQLException ex) { ex.printStackTrace(); }
+            return -1;
+        } finally {
+            try {
+                if (conn != null) {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                }
+            } catch (SQLException e) { e.printStackTrace(); }
+        }
+    }
+
+    private static class Acumulado {
+        final String categoria;
+        int unidades;
+        double ingresos;
+        double costo;
+
+        Acumulado(String categoria) {
+            this.categoria = categoria;
+        }
+
+        void sumar(int unidades, double ingresos, double costo) {
+            this.unidades += unidades;
+            this.ingresos += ingresos;
+            this.costo += costo;
+        }
+    }
+}
@@ -1,93 +1,241 @@
 package com.example.drugstore2.service;
 
+import com.example.drugstore2.db.ErroresBD;
 import com.example.drugstore2.model.DetalleVenta;
+import com.example.drugstore2.model.LineaTicket;
+import com.example.drugstore2.model.LineaVenta;
 import com.example.drugstore2.model.Producto;
 import com.example.drugstore2.model.ProductoManual;
-import com.example.drugstore2.model.Venta;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import com.example.drugstore2.model.VentaTemporal;
+import com.example.drugstore2.util.Metricas;
 
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap; // Necesario para agrupar productos
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
 
 public class VentaService {
+    // Ventas por página del historial (configurable con -Dhistorial.tamanoPagina=N)
+    public static final int TAMANO_PAGINA_HISTORIAL = Integer.getInteger("historial.tamanoPagina", 100);
+    // Reintentos automáticos de una venta que chocó con otra caja (bloqueo mutuo o espera agotada)
+    public static final int MAX_REINTENTOS = Integer.getInteger("ventas.reintentos", 3);
+    private static final long ESPERA_REINTENTO_MS = 50;
+
     private InventarioService inventarioService;
-    private Connection connection;
-    private ObservableList<Venta> historialVentas; // Mantenemos la lista observable
+    private DataSource dataSource;
+    // Resumen diario para estadísticas, actualizado en la misma transacción de cada venta
+    private final ResumenVentasService resumenVentas;
+    // Latencia y errores de cada método público (panel de diagnóstico)
+    private static final Metricas metricas = Metricas.de("VentaService");
+    // Ventas confirmadas y revertidas (las revertidas por bloqueos quedan además en ErroresBD)
+    private final LongAdder ventasConfirmadas = new LongAdder();
+    private final LongAdder ventasRevertidas = new LongAdder();
+    private final LongAdder ventasReintentadas = new LongAdder();
+    // Ventas hechas sin conexión, pendientes de enviar (null = sin diario: la venta falla)
+    private final DiarioVentas diario;
 
     public VentaService(InventarioService inventarioService) {
+        this(inventarioService, new ResumenVentasService(inventarioService.getDataSource()));
+    }
+
+    public VentaService(InventarioService inventarioService, ResumenVentasService resumenVentas) {
+        this(inventarioService, resumenVentas, null);
+    }
+
+    public VentaService(InventarioService inventarioService, ResumenVentasService resumenVentas, DiarioVentas diario) {
         this.inventarioService = inventarioService;
-        this.connection = inventarioService.getConnection();
-        if (this.connection == null) {
-            // Considerar lanzar una excepción o manejarlo mejor si la conexión es nula al inicio
-            System.err.println("CRÍTICO: La conexión a la base de datos es NULA en VentaService.");
+        this.resumenVentas = resumenVentas;
+        this.diario = diario;
+        this.dataSource = inventarioService.getDataSource();
+        if (this.dataSource == null) {
+            // Considerar lanzar una excepción o manejarlo mejor si el pool es nulo al inicio
+            System.err.println("CRÍTICO: El pool de conexiones es NULO en VentaService.");
         }
-        this.historialVentas = FXCollections.observableArrayList();
-        // Cargamos el historial inicial desde la BD al crear el servicio
-        cargarHistorialDesdeDB();
+        // El historial ya no se carga completo: se pide por páginas (obtenerPaginaHistorial)
     }
 
     /**
-     * Guarda una venta completa (con múltiples productos) en la base de datos
-     * utilizando transacciones SQL. Actualiza el stock solo para productos del inventario.
+     * Guarda una venta a partir de una lista de unidades sueltas (un Producto por unidad).
+     * Las agrupa en líneas y delega en {@link #guardarTicket(List)}.
      *
      * @param productos La lista de todos los productos (instancias individuales) en la venta.
      * @return true si la venta se registró exitosamente, false en caso contrario.
      */
-    // Dentro de la clase VentaService
-
     public boolean guardarVenta(List<Producto> productos) {
+        return metricas.medir("guardarVenta", () -> guardarVentaInterno(productos));
+    }
+
+    private boolean guardarVentaInterno(List<Producto> productos) {
         if (productos == null || productos.isEmpty()) {
             System.out.println("Intento de guardar venta vacía.");
             return false;
         }
-        if (connection == null) {
-            System.err.println("Error: No se puede guardar la venta, no hay conexión a la BD.");
-            return false;
-        }
+        VentaTemporal ticket = new VentaTemporal();
+        productos.forEach(ticket::agregarProducto);
+        return guardarTicket(ticket.getLineas());
+    }
 
-        // --- 1. Agrupar productos y calcular total (Sin cambios) ---
-        Map<String, DetalleVenta> detallesAgrupados = new HashMap<>();
-        double totalVentaCalculado = 0.0;
-        // ... (lógica de agrupación igual que antes) ...
-        for (Producto p : productos) {
-            String codigoKey = p.getCodigo();
-            if (p instanceof ProductoManual) {
-                // Usar código fijo 'MANUAL' + nombre específico para agrupar iguales manuales
-                codigoKey = "MANUAL_" + p.getNombre() + "_" + p.getPrecioVenta();
+    /**
+     * Guarda una venta completa (con múltiples productos) en la base de datos
+     * utilizando transacciones SQL. Actualiza el stock solo para productos del inventario.
+     * Si la base no está disponible y hay diario de ventas, la venta queda en el diario
+     * (en disco) para enviarla cuando vuelva la conexión, y se considera guardada.
+     *
+     * @param lineas Las líneas del ticket (producto + cantidad), ya agrupadas.
+     * @return true si la venta se registró exitosamente, false en caso contrario.
+     */
+    public boolean guardarTicket(List<LineaTicket> lineas) {
+        return guardarTicket(UUID.randomUUID().toString(), lineas).guardada();
+    }
+
+    /**
+     * Igual que {@link #guardarTicket(List)} con la clave del ticket (ver
+     * {@link VentaStateService#getClaveTicket()}): volver a guardar el mismo ticket, por un doble
+     * clic o un reintento después de un error, no registra la venta dos veces. Si con esa clave
+     * ya se registró un ticket con otros productos o cantidades devuelve
+     * {@link ResultadoVenta#OTRO_CONTENIDO}.
+     *
+     * @return el resultado; {@link ResultadoVenta#EN_DIARIO} si quedó en el diario por falta de conexión
+     */
+    public ResultadoVenta guardarTicket(String clave, List<LineaTicket> lineas) {
+        if (lineas == null || lineas.isEmpty()) {
+            System.out.println("Intento de guardar venta vacía.");
+            return ResultadoVenta.ERROR;
+        }
+        LocalDateTime fechaHora = LocalDateTime.now();
+        ResultadoVenta resultado = registrarVenta(clave, fechaHora, lineas);
+        if (resultado == ResultadoVenta.SIN_CONEXION && diario != null) {
+            try {
+                diario.registrar(DiarioVentas.VentaDiario.desde(clave, fechaHora, lineas));
+                System.err.println("⚠️ Sin conexión con la base: venta guardada en el diario local ("
+                        + diario.cantidadPendientes() + " pendiente(s) de enviar).");
+                return ResultadoVenta.EN_DIARIO;
+            } catch (IOException e) {
+                System.err.println("❌ No se pudo guardar la venta en el diario local: " + e.getMessage());
+                return ResultadoVenta.SIN_CONEXION;
             }
-            DetalleVenta detalleExistente = detallesAgrupados.get(codigoKey);
-            if (detalleExistente != null) {
-                int nuevaCantidad = detalleExistente.getCantidad() + 1;
-                detallesAgrupados.put(codigoKey, new DetalleVenta(p, nuevaCantidad));
-            } else {
-                detallesAgrupados.put(codigoKey, new DetalleVenta(p, 1));
+        }
+        return resultado;
+    }
+
+    /**
+     * Resultado de intentar registrar una venta en la base.
+     */
+    public enum ResultadoVenta {
+        CONFIRMADA,
+        /** Ya había una venta con esa clave de ticket (reenvío de una venta ya registrada). */
+        DUPLICADA,
+        /**
+         * Ya había una venta con esa clave pero con otros productos, cantidades o total (el ticket se
+         * modificó después de un error que igual llegó a registrarlo). No se registra nada.
+         */
+        OTRO_CONTENIDO,
+        /** Algún producto no tenía stock suficiente (o no existe): la venta se revirtió. */
+        SIN_STOCK,
+        /** No se pudo hablar con la base (conexión caída o pool sin conexiones). */
+        SIN_CONEXION,
+        /** Chocó con otra caja (bloqueo mutuo o espera de bloqueo agotada) también en los reintentos. */
+        BLOQUEO,
+        /** Sin conexión: quedó en el diario local y se envía cuando vuelva la base (solo guardarTicket). */
+        EN_DIARIO,
+        ERROR;
+
+        /** La venta quedó en la base (ahora o antes). */
+        public boolean registrada() {
+            return this == CONFIRMADA || this == DUPLICADA;
+        }
+
+        /** La venta no se pierde: está en la base o en el diario local. */
+        public boolean guardada() {
+            return registrada() || this == EN_DIARIO;
+        }
+    }
+
+    /**
+     * Registra la venta en una transacción: venta, detalles, descuento de stock y resumen diario.
+     * La clave del ticket se guarda en ventas (índice único): si ya hay una venta con esa clave
+     * no se registra de nuevo y devuelve {@link ResultadoVenta#DUPLICADA} (u
+     * {@link ResultadoVenta#OTRO_CONTENIDO} si la huella del contenido no coincide). Por eso, si la
+     * transacción choca con otra caja, se reintenta sola hasta {@link #MAX_REINTENTOS} veces.
+     *
+     * @param clave     identificador del ticket (null = sin control de duplicados)
+     * @param fechaHora momento de la venta (en un reenvío, el original)
+     */
+    public ResultadoVenta registrarVenta(String clave, LocalDateTime fechaHora, List<LineaTicket> lineas) {
+        ResultadoVenta resultado = metricas.medir("guardarTicket", () -> intentarRegistrarVenta(clave, fechaHora, lineas));
+        for (int intento = 1; resultado == ResultadoVenta.BLOQUEO && intento <= MAX_REINTENTOS; intento++) {
+            ventasReintentadas.increment();
+            try {
+                // Espera creciente y algo aleatoria, para que las cajas no vuelvan a chocar a la vez
+                Thread.sleep(ESPERA_REINTENTO_MS * intento + ThreadLocalRandom.current().nextLong(ESPERA_REINTENTO_MS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
-            totalVentaCalculado += p.getPrecioVenta();
+            System.err.println("ℹ️ Reintentando la venta " + clave + " (intento " + (intento + 1) + ")...");
+            resultado = metricas.medir("guardarTicket", () -> intentarRegistrarVenta(clave, fechaHora, lineas));
         }
+        return resultado;
+    }
 
+    private ResultadoVenta intentarRegistrarVenta(String clave, LocalDateTime fechaHora, List<LineaTicket> lineas) {
+        if (lineas == null || lineas.isEmpty()) {
+            System.out.println("Intento de guardar venta vacía.");
+            return ResultadoVenta.ERROR;
+        }
+        if (dataSource == null) {
+            System.err.println("Error: No se puede guardar la venta, no hay conexión a la BD.");
+            return ResultadoVenta.ERROR;
+        }
+
+        // --- 1. Las líneas ya vienen agrupadas por producto: solo pasarlas a detalles y sumar el total ---
+        List<DetalleVenta> detalles = new ArrayList<>(lineas.size());
+        double totalVentaCalculado = 0.0;
+        for (LineaTicket linea : lineas) {
+            detalles.add(linea.aDetalle());
+            totalVentaCalculado += linea.getSubtotal();
+        }
+        String huella = clave == null ? null : huellaTicket(lineas, totalVentaCalculado);
 
-        LocalDateTime fechaHora = LocalDateTime.now();
         Timestamp fechaHoraSql = Timestamp.valueOf(fechaHora);
+        boolean sinStockSuficiente = false;
 
+        Connection connection = null;
         PreparedStatement ventaStmt = null;
         PreparedStatement detalleStmt = null;
         ResultSet generatedKeys = null;
 
         try {
-            // --- 2. Iniciar Transacción (Sin cambios) ---
+            // --- 2. Iniciar Transacción en una conexión del pool ---
+            connection = dataSource.getConnection();
             connection.setAutoCommit(false);
 
-            // --- 3. Guardar Venta General (Sin cambios) ---
-            String sqlVenta = "INSERT INTO ventas (fecha_hora, total) VALUES (?, ?)";
+            ResultadoVenta yaRegistrada = clave == null ? null : compararConRegistrada(connection, clave, huella);
+            if (yaRegistrada != null) {
+                connection.rollback();
+                return yaRegistrada;
+            }
+
+            // --- 3. Guardar Venta General ---
+            String sqlVenta = "INSERT INTO ventas (fecha_hora, total, clave_ticket, huella_ticket) VALUES (?, ?, ?, ?)";
             ventaStmt = connection.prepareStatement(sqlVenta, Statement.RETURN_GENERATED_KEYS);
             ventaStmt.setTimestamp(1, fechaHoraSql);
             ventaStmt.setDouble(2, totalVentaCalculado);
+            ventaStmt.setString(3, clave);
+            ventaStmt.setString(4, huella);
             ventaStmt.executeUpdate();
 
             generatedKeys = ventaStmt.getGeneratedKeys();
@@ -102,8 +250,10 @@ public class VentaService {
             //   **** MODIFICACIÓN AQUÍ: Añadir la nueva columna al INSERT ****
             String sqlDetalle = "INSERT INTO detalle_ventas (venta_id, producto_codigo, cantidad, subtotal, descripcion_manual) VALUES (?, ?, ?, ?, ?)";
             detalleStmt = connection.prepareStatement(sqlDetalle);
+            // Unidades a descontar por código (solo productos de inventario)
+            Map<String, Integer> stockADescontar = new HashMap<>();
 
-            for (DetalleVenta detalle : detallesAgrupados.values()) {
+            for (DetalleVenta detalle : detalles) {
                 Producto productoDetalle = detalle.getProducto();
                 int cantidadVendida = detalle.getCantidad();
                 double subtotalDetalle = detalle.getSubtotal();
@@ -127,29 +277,41 @@ public class VentaService {
 
                 detalleStmt.addBatch(); // Añadir a ejecución por lotes
 
-                // ii. Actualizar Stock (SOLO si no es manual) - Sin cambios aquí
+                // ii. Acumular stock a descontar (SOLO si no es manual)
                 if (!(productoDetalle instanceof ProductoManual)) {
-                    boolean stockActualizado = inventarioService.actualizarStock(productoDetalle.getCodigo(), -cantidadVendida);
-                    if (!stockActualizado) {
-                        throw new SQLException("No se pudo actualizar el stock para el producto: " + productoDetalle.getCodigo() + ". Venta revertida.");
-                    }
+                    stockADescontar.merge(productoDetalle.getCodigo(), cantidadVendida, Integer::sum);
                 }
             }
             // Ejecutar todas las inserciones de detalles
             detalleStmt.executeBatch();
 
+            // iii. Descontar todo el stock en un solo lote, dentro de la misma transacción
+            List<String> sinStock = inventarioService.descontarStockLote(connection, stockADescontar);
+            if (!sinStock.isEmpty()) {
+                sinStockSuficiente = true;
+                throw new SQLException("Stock insuficiente o producto inexistente para: " + String.join(", ", sinStock) + ". Venta revertida.");
+            }
+
+            // iv. Acumular en el resumen diario (se revierte junto con la venta si algo falla)
+            resumenVentas.registrarVenta(connection, fechaHora.toLocalDate(), detalles);
+
             // --- 5. Confirmar Transacción (Sin cambios) ---
             connection.commit();
+            ventasConfirmadas.increment();
             System.out.println("✅ Venta registrada exitosamente en BD (ID: " + ventaId + ")");
 
-            // --- 6. ACTUALIZAR HISTORIAL EN MEMORIA (Sin cambios) ---
-            System.out.println("-> Actualizando lista de historial en memoria...");
-            cargarHistorialDesdeDB();
-            System.out.println("-> Lista de historial actualizada.");
+            // Reflejar el stock vendido en el catálogo en memoria (solo tras el commit)
+            for (DetalleVenta detalle : detalles) {
+                if (!(detalle.getProducto() instanceof ProductoManual)) {
+                    inventarioService.aplicarStockConfirmado(detalle.getProducto().getCodigo(), -detalle.getCantidad());
+                }
+            }
 
-            return true; // Éxito
+            return ResultadoVenta.CONFIRMADA; // Éxito
 
         } catch (SQLException e) {
+            Metricas.marcarError();
+            ErroresBD.Tipo tipo = ErroresBD.registrar(e);
             // ---> MEJORADO: Log más detallado del error <---
             System.err.println("❌ Error SQL al guardar la venta: " + e.getMessage());
             e.printStackTrace(); // Imprime toda la traza del error
@@ -160,13 +322,28 @@ public class VentaService {
                 if (connection != null) {
                     System.err.println("Intentando hacer rollback...");
                     connection.rollback();
+                    ventasRevertidas.increment();
                     System.err.println("Rollback completado.");
                 }
             } catch (SQLException ex) {
                 System.err.println("❌ Error CRÍTICO al intentar hacer rollback: " + ex.getMessage());
                 ex.printStackTrace();
             }
-            return false; // Falla
+            if (sinStockSuficiente) return ResultadoVenta.SIN_STOCK;
+            if (tipo == ErroresBD.Tipo.SIN_CONEXION) return ResultadoVenta.SIN_CONEXION;
+            if (tipo == ErroresBD.Tipo.BLOQUEO_MUTUO || tipo == ErroresBD.Tipo.ESPERA_AGOTADA) {
+                return ResultadoVenta.BLOQUEO;
+            }
+            // Otra terminal registró la misma clave entre la consulta y el INSERT
+            if (clave != null && connection != null && tipo == ErroresBD.Tipo.VIOLACION_CLAVE) {
+                try {
+                    ResultadoVenta yaRegistrada = compararConRegistrada(connection, clave, huella);
+                    if (yaRegistrada != null) return yaRegistrada;
+                } catch (SQLException ex) {
+                    System.err.println("❌ No se pudo verificar la venta ya registrada: " + ex.getMessage());
+                }
+            }
+            return ResultadoVenta.ERROR; // Falla
 
         } finally {
             // --- Cerrar recursos y restaurar auto-commit (Sin cambios) ---
@@ -181,141 +358,297 @@ public class VentaService {
                 System.err.println("Error al restaurar auto-commit: " + e.getMessage());
                 e.printStackTrace();
             }
+            // Devolver la conexión al pool
+            try { if (connection != null) connection.close(); } catch (SQLException e) { e.printStackTrace(); }
         }
-    } // Fin del método guardarVenta // Fin del método guardarVenta
+    } // Fin del método intentarRegistrarVenta
 
+    /**
+     * Si ya hay una venta con esa clave: DUPLICADA si su huella coincide (o es anterior a la
+     * huella y no la tiene), OTRO_CONTENIDO si no. Null si la clave no está registrada.
+     */
+    private static ResultadoVenta compararConRegistrada(Connection connection, String clave, String huella) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT huella_ticket FROM ventas WHERE clave_ticket = ?")) {
+            stmt.setString(1, clave);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) return null;
+                String registrada = rs.getString(1);
+                if (registrada == null || registrada.equals(huella)) {
+                    System.out.println("ℹ️ La venta con clave " + clave + " ya estaba registrada.");
+                    return ResultadoVenta.DUPLICADA;
+                }
+                System.err.println("⚠️ La clave " + clave + " ya está registrada con otro contenido: no se registra.");
+                return ResultadoVenta.OTRO_CONTENIDO;
+            }
+        }
+    }
 
-    // Método para obtener el historial (sigue igual, lee de la lista)
-    public ObservableList<Venta> getHistorialVentas() {
-        // Opcionalmente, podríamos llamar a cargarHistorialDesdeDB() aquí cada vez
-        // para asegurar que siempre esté actualizado, a costa de rendimiento.
-        // Por ahora, lo dejamos como está (carga al inicio).
-        return historialVentas;
+    // Huella del contenido del ticket: líneas (clave y cantidad, en orden) y total en centavos.
+    // Un reenvío del diario rearma las mismas líneas, así que da la misma huella.
+    private static String huellaTicket(List<LineaTicket> lineas, double total) {
+        List<String> partes = new ArrayList<>(lineas.size() + 1);
+        for (LineaTicket linea : lineas) {
+            partes.add(LineaTicket.claveDe(linea.producto()) + "x" + linea.cantidad());
+        }
+        Collections.sort(partes);
+        partes.add(Long.toString(Math.round(total * 100)));
+        CRC32 crc = new CRC32();
+        crc.update(String.join("\n", partes).getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
     }
 
-    // Cargar (o recargar) historial desde la Base de Datos
-    // Este método es AHORA la única fuente de datos para el historial
-    // Dentro de la clase VentaService
+    /** Diario de ventas sin conexión, o null si no se usa. */
+    public DiarioVentas getDiario() { return diario; }
 
-    private void cargarHistorialDesdeDB() {
-        historialVentas.clear();
+    /** Ventas confirmadas desde el inicio. */
+    public long getVentasConfirmadas() { return ventasConfirmadas.sum(); }
 
-        // **** MODIFICACIÓN AQUÍ: Cambiar cómo se obtiene el nombre del producto ****
-        String sql = "SELECT v.fecha_hora, dv.cantidad, dv.subtotal, dv.producto_codigo, " +
-                // Seleccionar el nombre: Prioridad a descripcion_manual, luego nombre del producto, y si no, el código
-                "COALESCE(dv.descripcion_manual, p.nombre, dv.producto_codigo) AS nombre_a_mostrar, " +
-                // Obtener precio unitario (sin cambios)
-                "COALESCE(p.precio_venta, dv.subtotal / dv.cantidad) AS precio_unitario " +
-                "FROM ventas v " +
-                "JOIN detalle_ventas dv ON v.id = dv.venta_id " +
-                // LEFT JOIN con productos sigue siendo útil para obtener nombre/precio de productos de inventario
-                "LEFT JOIN productos p ON dv.producto_codigo = p.codigo " +
-                "ORDER BY v.fecha_hora DESC";
+    /** Ventas revertidas (rollback) desde el inicio: falta de stock, bloqueos o cualquier error SQL. */
+    public long getVentasRevertidas() { return ventasRevertidas.sum(); }
 
-        if (connection == null) {
-            System.err.println("Error: No se puede cargar historial, no hay conexión a la BD.");
-            return;
-        }
+    /** Reintentos automáticos por bloqueos desde el inicio. */
+    public long getVentasReintentadas() { return ventasReintentadas.sum(); }
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+    // --- Historial paginado (keyset sobre fecha_hora, id) ---
 
-            while (rs.next()) {
-                Timestamp ts = rs.getTimestamp("fecha_hora");
-                LocalDateTime fechaHora = (ts != null) ? ts.toLocalDateTime() : null;
+    /**
+     * Posición en el historial: una venta identificada por su fecha/hora e ID.
+     * El historial se recorre de la más nueva a la más antigua.
+     */
+    public record CursorHistorial(LocalDateTime fechaHora, int ventaId) {}
 
-                // **** USA EL NUEVO ALIAS para obtener el nombre correcto ****
-                String nombreMostrado = rs.getString("nombre_a_mostrar");
-                String codigo = rs.getString("producto_codigo"); // El código se mantiene
-                double precio = rs.getDouble("precio_unitario");
-                int cantidad = rs.getInt("cantidad");
+    /**
+     * Una página del historial: las líneas (una por detalle) de un grupo de ventas.
+     * @param primera   cursor de la venta más nueva de la página (null si está vacía)
+     * @param ultima    cursor de la venta más antigua de la página; se usa para pedir la siguiente
+     * @param ventas    cantidad de ventas leídas
+     * @param hayMas    true si puede haber ventas más antiguas
+     */
+    public record PaginaHistorial(List<LineaVenta> lineas, CursorHistorial primera, CursorHistorial ultima,
+                                  int ventas, boolean hayMas) {}
 
-                // Crear objeto Producto temporal para el historial.
-                // Usamos el nombreMostrado que ya tiene la lógica de COALESCE.
-                Producto productoHistorial = new Producto(codigo, nombreMostrado, precio, 0.0, 0, null, 0);
+    /**
+     * Devuelve hasta {@code tamanoPagina} ventas más antiguas que {@code despuesDe}
+     * (o las más recientes si es null). Usa paginación por clave, así el costo no
+     * depende de cuántas páginas se hayan recorrido. Un error de la BD se lanza (no es lo mismo que
+     * "no hay más ventas").
+     */
+    public PaginaHistorial obtenerPaginaHistorial(CursorHistorial despuesDe, int tamanoPagina) throws SQLException {
+        return metricas.medir("obtenerPaginaHistorial", () -> leerPaginaHistorial(despuesDe, null, null, Math.max(1, tamanoPagina)));
+    }
 
-                DetalleVenta detalle = new DetalleVenta(productoHistorial, cantidad);
+    /**
+     * Vuelve a leer las ventas entre dos cursores: más antiguas que {@code despuesDe}
+     * (sin límite si es null) y hasta {@code hasta} inclusive. Sirve para recargar una
+     * página ya vista sin que se corran los límites por ventas nuevas.
+     */
+    public PaginaHistorial obtenerRangoHistorial(CursorHistorial despuesDe, CursorHistorial hasta) throws SQLException {
+        return metricas.medir("obtenerRangoHistorial", () -> leerPaginaHistorial(despuesDe, hasta, null, 0));
+    }
 
-                if (fechaHora != null) {
-                    historialVentas.add(new Venta(fechaHora, detalle));
-                } else {
-                    System.err.println("Advertencia: Se encontró una venta con fecha/hora nula en la BD.");
-                }
-            }
-            System.out.println("Historial de ventas cargado/recargado desde la BD. Items: " + historialVentas.size());
-        } catch (SQLException e) {
-            System.err.println("❌ Error SQL al cargar historial desde BD: " + e.getMessage());
-            e.printStackTrace();
-        } catch (Exception e) {
-            System.err.println("❌ Error inesperado al cargar historial desde BD: " + e.getMessage());
-            e.printStackTrace();
-        }
-    } // Fin del método cargarHistorialDesdeDB
+    /**
+     * Las {@code tamanoPagina} ventas más recientes entre las más nuevas que {@code masNuevaVista},
+     * con el mismo orden (fecha/hora, ID) que las páginas. Si la página viene llena (hayMas) puede
+     * haber más ventas nuevas entre ella y {@code masNuevaVista}.
+     * No se compara solo el ID: una venta reenviada desde el diario se inserta con su fecha y hora
+     * original y un ID nuevo, y debe quedar en su lugar del historial, no arriba de todo.
+     */
+    public PaginaHistorial obtenerVentasNuevas(CursorHistorial masNuevaVista, int tamanoPagina) throws SQLException {
+        return metricas.medir("obtenerVentasNuevas", () -> leerPaginaHistorial(null, null, masNuevaVista, Math.max(1, tamanoPagina)));
+    }
 
+    private PaginaHistorial leerPaginaHistorial(CursorHistorial despuesDe, CursorHistorial hasta, CursorHistorial masNuevaQue, int limite) throws SQLException {
+        List<LineaVenta> lineas = new ArrayList<>();
+        if (dataSource == null) {
+            throw new SQLException("No se puede cargar historial, no hay conexión a la BD.");
+        }
 
+        // Primero se eligen las ventas de la página (subconsulta con ORDER BY + LIMIT sobre ventas)
+        // y luego se traen sus detalles. LEFT JOIN para que una venta sin detalles igual avance el cursor.
+        StringBuilder ventasSql = new StringBuilder("SELECT id, fecha_hora FROM ventas WHERE 1 = 1 ");
+        if (despuesDe != null) ventasSql.append("AND (fecha_hora < ? OR (fecha_hora = ? AND id < ?)) ");
+        if (hasta != null) ventasSql.append("AND (fecha_hora > ? OR (fecha_hora = ? AND id >= ?)) ");
+        if (masNuevaQue != null) ventasSql.append("AND (fecha_hora > ? OR (fecha_hora = ? AND id > ?)) ");
+        ventasSql.append("ORDER BY fecha_hora DESC, id DESC ");
+        if (limite > 0) ventasSql.append("LIMIT ?");
 
-    public List<Venta> getVentasDetalladasPorRango(LocalDate inicio, LocalDate fin) {
-        List<Venta> ventasDetalladas = new ArrayList<>();
-        // La consulta es similar a cargarHistorialDesdeDB pero con filtro de fecha
-        String sql = "SELECT v.fecha_hora, dv.cantidad, dv.subtotal, dv.producto_codigo, " +
-                "COALESCE(p.nombre, dv.producto_codigo) AS nombre_producto, " +
+        String sql = "SELECT v.id, v.fecha_hora, dv.cantidad, dv.subtotal, dv.producto_codigo, " +
+                // Seleccionar el nombre: Prioridad a descripcion_manual, luego nombre del producto, y si no, el código
+                "COALESCE(dv.descripcion_manual, p.nombre, dv.producto_codigo) AS nombre_a_mostrar, " +
                 "COALESCE(p.precio_venta, dv.subtotal / dv.cantidad) AS precio_unitario " +
-                "FROM ventas v " +
-                "JOIN detalle_ventas dv ON v.id = dv.venta_id " +
+                "FROM (" + ventasSql + ") v " +
+                "LEFT JOIN detalle_ventas dv ON v.id = dv.venta_id " +
+                // LEFT JOIN con productos sigue siendo útil para obtener nombre/precio de productos de inventario
                 "LEFT JOIN productos p ON dv.producto_codigo = p.codigo " +
-                "WHERE DATE(v.fecha_hora) BETWEEN ? AND ? " + // Filtro por rango
-                "ORDER BY v.fecha_hora ASC"; // Ordenar por fecha para el reporte
+                "ORDER BY v.fecha_hora DESC, v.id DESC";
+
+        CursorHistorial primera = null;
+        CursorHistorial ultima = null;
+        int ventas = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int i = 1;
+            if (despuesDe != null) {
+                Timestamp ts = Timestamp.valueOf(despuesDe.fechaHora());
+                stmt.setTimestamp(i++, ts);
+                stmt.setTimestamp(i++, ts);
+                stmt.setInt(i++, despuesDe.ventaId());
+            }
+            if (hasta != null) {
+                Timestamp ts = Timestamp.valueOf(hasta.fechaHora());
+                stmt.setTimestamp(i++, ts);
+                stmt.setTimestamp(i++, ts);
+                stmt.setInt(i++, hasta.ventaId());
+            }
+            if (masNuevaQue != null) {
+                Timestamp ts = Timestamp.valueOf(masNuevaQue.fechaHora());
+                stmt.setTimestamp(i++, ts);
+                stmt.setTimestamp(i++, ts);
+                stmt.setInt(i++, masNuevaQue.ventaId());
+            }
+            if (limite > 0) stmt.setInt(i, limite);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp ts = rs.getTimestamp("fecha_hora");
+                    if (ts == null) {
+                        System.err.println("Advertencia: Se encontró una venta con fecha/hora nula en la BD.");
+                        continue;
+                    }
+                    LocalDateTime fechaHora = ts.toLocalDateTime();
+                    int ventaId = rs.getInt("id");
+                    if (ultima == null || ultima.ventaId() != ventaId) {
+                        ultima = new CursorHistorial(fechaHora, ventaId);
+                        if (primera == null) primera = ultima;
+                        ventas++;
+                    }
 
-        if (connection == null || inicio == null || fin == null || fin.isBefore(inicio)) {
-            System.err.println("⚠️ Parámetros inválidos para getVentasDetalladasPorRango.");
-            return ventasDetalladas;
-        }
+                    String codigo = rs.getString("producto_codigo");
+                    if (codigo == null) continue; // Venta sin detalles
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDate(1, Date.valueOf(inicio));
-            stmt.setDate(2, Date.valueOf(fin));
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Timestamp ts = rs.getTimestamp("fecha_hora");
-                LocalDateTime fechaHora = (ts != null) ? ts.toLocalDateTime() : null;
-                String nombre = rs.getString("nombre_producto");
-                String codigo = rs.getString("producto_codigo");
-                double precio = rs.getDouble("precio_unitario");
-                int cantidad = rs.getInt("cantidad");
-
-                Producto productoHistorial;
-                if (codigo.startsWith("MANUAL-")) {
-                    productoHistorial = new ProductoManual(nombre, precio);
-                } else {
-                    // Usamos el constructor más completo con 0 para costo/stock/minimo ya que no son relevantes aquí
-                    productoHistorial = new Producto(codigo, nombre, precio, 0.0, 0, null, 0);
+                    // nombre_a_mostrar ya tiene la lógica de COALESCE (descripción manual, nombre o código)
+                    lineas.add(new LineaVenta(ventaId, fechaHora, codigo, rs.getString("nombre_a_mostrar"),
+                            rs.getInt("cantidad"), rs.getDouble("precio_unitario"), rs.getDouble("subtotal")));
                 }
+            }
+        }
+        return new PaginaHistorial(lineas, primera, ultima, ventas, limite > 0 && ventas == limite);
+    }
 
-                DetalleVenta detalle = new DetalleVenta(productoHistorial, cantidad);
 
-                if (fechaHora != null) {
-                    ventasDetalladas.add(new Venta(fechaHora, detalle));
-                } else {
-                    System.err.println("Advertencia: Se encontró una venta con fecha/hora nula en la BD durante la exportación.");
-                }
-            }
+
+    /**
+     * Todas las líneas de venta del período, en orden de fecha. Para períodos largos
+     * conviene {@link #recorrerVentasPorRango}, que no las junta en memoria.
+     */
+    public List<LineaVenta> getVentasDetalladasPorRango(LocalDate inicio, LocalDate fin) {
+        return metricas.medir("getVentasDetalladasPorRango", () -> getVentasDetalladasPorRangoInterno(inicio, fin));
+    }
+
+    private List<LineaVenta> getVentasDetalladasPorRangoInterno(LocalDate inicio, LocalDate fin) {
+        List<LineaVenta> ventasDetalladas = new ArrayList<>();
+        try {
+            recorrerVentasPorRango(inicio, fin, ventasDetalladas::add, () -> false);
         } catch (SQLException e) {
+            Metricas.marcarError();
             System.err.println("❌ Error SQL al obtener ventas detalladas por rango: " + e.getMessage());
             e.printStackTrace();
-        } catch (Exception e) {
-            System.err.println("❌ Error inesperado al obtener ventas detalladas por rango: " + e.getMessage());
-            e.printStackTrace();
+        } catch (IOException e) {
+            // No ocurre: agregar a una lista no hace E/S
+            throw new UncheckedIOException(e);
         }
         return ventasDetalladas;
     }
 
+    // --- Lectura en streaming para exportaciones ---
 
+    /**
+     * Recibe las líneas de venta una por una mientras se leen de la BD.
+     */
+    @FunctionalInterface
+    public interface ConsumidorLineaVenta {
+        void aceptar(LineaVenta linea) throws IOException;
+    }
 
+    // Filas pedidas al servidor por cada viaje al recorrer una exportación
+    private static final int FETCH_SIZE_EXPORTACION = 500;
 
+    /**
+     * Cantidad de líneas de detalle en el rango (para mostrar el progreso de una exportación).
+     */
+    public int contarLineasPorRango(LocalDate inicio, LocalDate fin) {
+        return metricas.medir("contarLineasPorRango", () -> contarLineasPorRangoInterno(inicio, fin));
+    }
 
+    private int contarLineasPorRangoInterno(LocalDate inicio, LocalDate fin) {
+        String sql = "SELECT COUNT(*) FROM ventas v JOIN detalle_ventas dv ON v.id = dv.venta_id " +
+                "WHERE v.fecha_hora >= ? AND v.fecha_hora < ?";
+        if (dataSource == null || inicio == null || fin == null || fin.isBefore(inicio)) return 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(inicio.atStartOfDay()));
+            stmt.setTimestamp(2, Timestamp.valueOf(fin.plusDays(1).atStartOfDay()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            Metricas.marcarError();
+            System.err.println("❌ Error SQL al contar líneas de venta: " + e.getMessage());
+            return 0;
+        }
+    }
 
+    /**
+     * Recorre las líneas de venta del rango en orden de fecha y las entrega al consumidor a medida
+     * que llegan, sin juntarlas en memoria. Usa un cursor de solo avance con fetch size, así el
+     * driver trae las filas por bloques. Se detiene (devolviendo lo procesado) si {@code cancelado} da true.
+     * @return cantidad de líneas entregadas
+     */
+    public long recorrerVentasPorRango(LocalDate inicio, LocalDate fin, ConsumidorLineaVenta consumidor,
+                                       BooleanSupplier cancelado) throws SQLException, IOException {
+        // Dos excepciones controladas: se mide a mano en lugar de con medir()
+        try (Metricas.Medicion medicion = metricas.iniciar("recorrerVentasPorRango")) {
+            try {
+                return recorrerVentasPorRangoInterno(inicio, fin, consumidor, cancelado);
+            } catch (SQLException | IOException | RuntimeException e) {
+                medicion.error();
+                throw e;
+            }
+        }
+    }
 
+    private long recorrerVentasPorRangoInterno(LocalDate inicio, LocalDate fin, ConsumidorLineaVenta consumidor,
+                                               BooleanSupplier cancelado) throws SQLException, IOException {
+        String sql = "SELECT v.id, v.fecha_hora, dv.cantidad, dv.subtotal, dv.producto_codigo, " +
+                "COALESCE(dv.descripcion_manual, p.nombre, dv.producto_codigo) AS nombre_producto, " +
+                "COALESCE(p.precio_venta, dv.subtotal / dv.cantidad) AS precio_unitario " +
+                "FROM ventas v " +
+                "JOIN detalle_ventas dv ON v.id = dv.venta_id " +
+                "LEFT JOIN productos p ON dv.producto_codigo = p.codigo " +
+                "WHERE v.fecha_hora >= ? AND v.fecha_hora < ? " +
+                "ORDER BY v.fecha_hora ASC, v.id ASC";
+        if (dataSource == null || inicio == null || fin == null || fin.isBefore(inicio)) {
+            System.err.println("⚠️ Parámetros inválidos para recorrerVentasPorRango.");
+            return 0;
+        }
 
-
-}
\ No newline at end of file
+        long lineas = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(FETCH_SIZE_EXPORTACION);
+            stmt.setTimestamp(1, Timestamp.valueOf(inicio.atStartOfDay()));
+            stmt.setTimestamp(2, Timestamp.valueOf(fin.plusDays(1).atStartOfDay()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (cancelado.getAsBoolean()) break;
+                    Timestamp ts = rs.getTimestamp("fecha_hora");
+                    if (ts == null) continue;
+                    consumidor.aceptar(new LineaVenta(rs.getInt("id"), ts.toLocalDateTime(), rs.getString("producto_codigo"),
+                            rs.getString("nombre_producto"), rs.getInt("cantidad"), rs.getDouble("precio_unitario"), rs.getDouble("subtotal")));
+                    lineas++;
+                }
+            }
+        }
+        return lineas;
+    }
+}
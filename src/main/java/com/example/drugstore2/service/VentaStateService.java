@@ -1,34 +1,53 @@
 package com.example.drugstore2.service;
+import com.example.drugstore2.model.LineaTicket;
 import com.example.drugstore2.model.Producto;
-import com.example.drugstore2.model.ProductoManual;
 import com.example.drugstore2.model.VentaTemporal;
-import javafx.application.Platform;
+import com.example.drugstore2.util.CoalescedorUI;
+import com.example.drugstore2.util.Log;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
-import java.util.ArrayList;
-import java.util.Comparator; // Para ordenar ticket
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
+import java.util.UUID;
 
 /**
  * Servicio simple para mantener y compartir el estado de la venta actual (ticket temporal)
  * entre diferentes controladores.
+ *
+ * La lista observable del ticket se actualiza línea por línea a partir de los avisos de
+ * VentaTemporal: al escanear un producto que ya está en el ticket solo se reemplaza esa fila.
+ * Los avisos no tocan la UI directamente: marcan qué cambió y un {@link CoalescedorUI}
+ * aplica todo junto una vez por pulso, así una ráfaga de escaneos no inunda el hilo de JavaFX.
  */
-public class VentaStateService {
+public class VentaStateService implements VentaTemporal.Oyente {
 
     private final VentaTemporal ventaTemporal = new VentaTemporal();
     // Lista observable para la UI del ticket (solo una lista compartida)
-    private final ObservableList<String> ticketItems = FXCollections.observableArrayList();
+    private final ObservableList<LineaTicket> ticketItems = FXCollections.observableArrayList();
     private String totalText = "Total: $0.00";
 
     // Referencias a los componentes de UI que mostrarán el ticket
     // (Normalmente solo los de la pestaña Venta Escáner)
-    private ListView<String> ticketListViewRef;
+    private ListView<LineaTicket> ticketListViewRef;
     private Label totalLabelRef;
 
+    private static final Log log = Log.de(VentaStateService.class);
+
+    // Cambios pendientes de llevar a la UI (solo se usan en el hilo de JavaFX)
+    private final CoalescedorUI coalescedor = new CoalescedorUI(this::aplicarCambios);
+    private final BitSet lineasModificadas = new BitSet();
+    private boolean resincronizar = false; // Se quitaron líneas: más simple copiar todo
+
+    // Identifica el ticket en curso al guardarlo (ventas.clave_ticket); cambia al limpiar la venta
+    private String claveTicket = UUID.randomUUID().toString();
+
+    public VentaStateService() {
+        ventaTemporal.setOyente(this);
+    }
+
     /**
      * Obtiene el objeto VentaTemporal que contiene los productos.
      * @return La instancia de VentaTemporal.
@@ -38,10 +57,10 @@ public class VentaStateService {
     }
 
     /**
-     * Obtiene la lista observable de strings formateados para mostrar en el ListView del ticket.
-     * @return La ObservableList de items del ticket.
+     * Obtiene la lista observable de líneas del ticket para mostrar en el ListView.
+     * @return La ObservableList de líneas del ticket.
      */
-    public ObservableList<String> getTicketItems() {
+    public ObservableList<LineaTicket> getTicketItems() {
         return ticketItems;
     }
 
@@ -58,16 +77,22 @@ public class VentaStateService {
      * Automáticamente vincula la lista observable interna a este ListView.
      * @param ticketListViewRef El ListView de la UI.
      */
-    public void setTicketListViewRef(ListView<String> ticketListViewRef) {
+    public void setTicketListViewRef(ListView<LineaTicket> ticketListViewRef) {
         this.ticketListViewRef = ticketListViewRef;
         if (this.ticketListViewRef != null) {
             // Asegurarse que el ListView use la lista observable de este servicio
             this.ticketListViewRef.setItems(ticketItems);
-            System.out.println("DEBUG (VentaStateService): Referencia a ticketListView establecida.");
+            this.ticketListViewRef.setCellFactory(lv -> new ListCell<>() {
+                @Override protected void updateItem(LineaTicket linea, boolean empty) {
+                    super.updateItem(linea, empty);
+                    setText(empty || linea == null ? null : linea.getTexto());
+                }
+            });
+            log.debug("Referencia a ticketListView establecida.");
             // Actualizar por si ya había items al establecer la referencia
             actualizarUIVenta();
         } else {
-            System.err.println("WARN (VentaStateService): setTicketListViewRef recibió null.");
+            log.warn("setTicketListViewRef recibió null.");
         }
     }
 
@@ -80,20 +105,29 @@ public class VentaStateService {
         this.totalLabelRef = totalLabelRef;
         if (this.totalLabelRef != null) {
             this.totalLabelRef.setText(totalText); // Establecer texto actual
-            System.out.println("DEBUG (VentaStateService): Referencia a totalLabel establecida.");
+            log.debug("Referencia a totalLabel establecida.");
         } else {
-            System.err.println("WARN (VentaStateService): setTotalLabelRef recibió null.");
+            log.warn("setTotalLabelRef recibió null.");
         }
     }
 
     /**
-     * Agrega un producto a la venta temporal compartida y actualiza la UI.
+     * Agrega una unidad del producto a la venta temporal compartida.
+     * La UI se actualiza con el aviso de VentaTemporal (solo la línea afectada).
      * @param producto El producto a agregar.
      */
     public void agregarProducto(Producto producto) {
         if (producto != null) {
             ventaTemporal.agregarProducto(producto);
-            actualizarUIVenta(); // Actualiza la UI después de agregar
+        }
+    }
+
+    /**
+     * Quita una unidad de la línea indicada (la línea desaparece al llegar a cero).
+     */
+    public void quitarUnidad(LineaTicket linea) {
+        if (linea != null) {
+            ventaTemporal.quitarUnidad(linea.clave());
         }
     }
 
@@ -102,86 +136,112 @@ public class VentaStateService {
      */
     public void limpiarVenta() {
         ventaTemporal.limpiar();
-        actualizarUIVenta(); // Actualiza la UI después de limpiar
+        claveTicket = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Clave del ticket en curso, generada al empezarlo. Guardar dos veces el mismo ticket
+     * (doble clic, reintento tras un error o un corte) registra una sola venta.
+     */
+    public String getClaveTicket() {
+        return claveTicket;
+    }
+
+    /**
+     * Da una clave nueva al ticket en curso sin vaciarlo: confirmarlo otra vez registra una venta
+     * aparte (después de que la clave anterior resultó registrada con otro contenido).
+     */
+    public void renovarClaveTicket() {
+        claveTicket = UUID.randomUUID().toString();
     }
 
     /**
-     * Obtiene la lista de productos actualmente en la venta temporal.
-     * @return Lista de Productos.
+     * Líneas (producto + cantidad) de la venta temporal.
      */
-    public List<Producto> getProductos() {
-        return ventaTemporal.getProductos();
+    public List<LineaTicket> getLineas() {
+        return ventaTemporal.getLineas();
+    }
+
+    public boolean estaVacia() {
+        return ventaTemporal.estaVacia();
     }
 
     /**
-     * Método centralizado para actualizar la UI del ticket (ListView y Label)
-     * basándose en el estado actual de ventaTemporal. Debe ser llamado
-     * después de cualquier cambio en ventaTemporal.
+     * Vuelve a sincronizar toda la UI del ticket con VentaTemporal (en el próximo pulso).
+     * Los cambios normales no lo necesitan: llegan línea por línea por los métodos del Oyente.
      */
     public void actualizarUIVenta() {
-        final double total = ventaTemporal.getTotal();
-        final List<Producto> productosActuales = new ArrayList<>(ventaTemporal.getProductos());
-
-        // --- Agrupar productos para mostrar cantidad ---
-        final Map<String, Integer> conteoProductos = new HashMap<>();
-        final Map<String, Producto> productosUnicos = new HashMap<>();
-
-        for (Producto p : productosActuales) {
-            if (p == null) continue;
-            String codigoKey = p.getCodigo();
-            // Usar una clave única para productos manuales basada en nombre y precio
-            if (p instanceof ProductoManual) {
-                codigoKey = "MANUAL_" + p.getNombre() + "_" + p.getPrecioVenta();
-            }
-            if (codigoKey == null) continue; // Evitar errores si el código es null
-            conteoProductos.put(codigoKey, conteoProductos.getOrDefault(codigoKey, 0) + 1);
-            productosUnicos.putIfAbsent(codigoKey, p);
-        }
+        resincronizar = true;
+        coalescedor.marcar();
+    }
 
-        // --- Preparar las líneas de texto a añadir (ordenadas por nombre) ---
-        final List<String> itemsToAdd = new ArrayList<>();
-        // Crear lista de entradas para ordenar
-        List<Map.Entry<String, Integer>> sortedEntries = new ArrayList<>(conteoProductos.entrySet());
-        // Ordenar usando el nombre del producto asociado a la clave única
-        sortedEntries.sort(Comparator.comparing(entry -> productosUnicos.get(entry.getKey()).getNombre()));
-
-        System.out.println("DEBUG (VentaStateService): Preparando items para UI. Items agrupados: " + sortedEntries.size());
-
-        for (Map.Entry<String, Integer> entry : sortedEntries) {
-            Producto productoInfo = productosUnicos.get(entry.getKey());
-            if (productoInfo != null) {
-                String linea = String.format("%d x %s ($%.2f c/u)",
-                        entry.getValue(), productoInfo.getNombre(), productoInfo.getPrecioVenta());
-                itemsToAdd.add(linea);
-                System.out.println("  -> Item a añadir: " + linea);
-            } else {
-                System.err.println("WARN (VentaStateService): No se encontró info para la clave: " + entry.getKey());
-            }
-        }
+    /**
+     * Aplica ya los cambios pendientes, sin esperar al próximo pulso (hilo de JavaFX).
+     */
+    public void aplicarPendientes() {
+        coalescedor.vaciar();
+    }
 
-        // --- Actualizar la Interfaz Gráfica en el Hilo de JavaFX ---
-        Platform.runLater(() -> {
-            try {
-                // Actualizar la lista observable (esto refresca el ListView vinculado)
-                ticketItems.setAll(itemsToAdd);
-
-                // Actualizar el texto del total
-                totalText = String.format("Total: $%.2f", total);
-                if (totalLabelRef != null) {
-                    totalLabelRef.setText(totalText); // Actualiza el label si la referencia existe
-                } else {
-                    // Advertir si el label no está seteado, pero no es crítico si no se necesita mostrar ahí
-                    // System.err.println("WARN (VentaStateService): totalLabelRef es NULL al actualizar UI.");
-                }
-                // El ListView (ticketListViewRef) se actualiza automáticamente porque está vinculado a ticketItems
+    // --- Avisos de VentaTemporal: solo registran qué cambió; la UI se actualiza una vez por pulso ---
+    // VentaTemporal se modifica desde el hilo de JavaFX, igual que estos avisos.
+
+    @Override
+    public void lineaAgregada(int posicion, LineaTicket linea) {
+        // Las líneas nuevas siempre van al final: al aplicar se agregan las que falten
+        log.trace(() -> "Línea agregada en " + posicion + ": " + linea.getTexto());
+        coalescedor.marcar();
+    }
+
+    @Override
+    public void lineaModificada(int posicion, LineaTicket linea) {
+        log.trace(() -> "Línea modificada en " + posicion + ": " + linea.getTexto());
+        lineasModificadas.set(posicion);
+        coalescedor.marcar();
+    }
+
+    @Override
+    public void lineaQuitada(int posicion) {
+        resincronizar = true;
+        coalescedor.marcar();
+    }
 
-                System.out.println("DEBUG (VentaStateService): UI de venta actualizada en Platform.runLater. Items: " + ticketItems.size() + ", Total: " + totalText);
+    @Override
+    public void ticketLimpio() {
+        resincronizar = true;
+        coalescedor.marcar();
+    }
 
-            } catch (Exception e) {
-                System.err.println("ERROR CRITICO durante Platform.runLater en VentaStateService.actualizarUIVenta: " + e.getMessage());
-                e.printStackTrace();
+    // Lleva a la lista observable todos los cambios acumulados desde el último pulso
+    private void aplicarCambios() {
+        List<LineaTicket> lineas = ventaTemporal.getLineas();
+        if (resincronizar) {
+            ticketItems.setAll(lineas);
+        } else {
+            for (int i = lineasModificadas.nextSetBit(0); i >= 0 && i < ticketItems.size(); i = lineasModificadas.nextSetBit(i + 1)) {
+                ticketItems.set(i, lineas.get(i));
+            }
+            if (lineas.size() > ticketItems.size()) {
+                ticketItems.addAll(lineas.subList(ticketItems.size(), lineas.size()));
             }
-        });
-    } // Fin del método actualizarUIVenta
+        }
+        resincronizar = false;
+        lineasModificadas.clear();
+        actualizarTotal();
+        log.trace(() -> "UI del ticket actualizada. Líneas: " + ticketItems.size() + ", " + totalText);
+    }
+
+    private void actualizarTotal() {
+        totalText = String.format("Total: $%.2f", ventaTemporal.getTotal());
+        if (totalLabelRef != null) {
+            totalLabelRef.setText(totalText); // Actualiza el label si la referencia existe
+        }
+    }
+
+    /**
+     * Veces que se pidió actualizar el ticket y veces que realmente se redibujó.
+     */
+    public String getEstadisticasUI() {
+        return "cambios=" + coalescedor.getMarcas() + ", refrescos=" + coalescedor.getRefrescos();
+    }
 
-} // Fin de la clase VentaStateService
\ No newline at end of file
+} // Fin de la clase VentaStateService
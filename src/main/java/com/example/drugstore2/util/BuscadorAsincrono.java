@@ -0,0 +1,156 @@
+package com.example.drugstore2.util;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Ejecuta búsquedas mientras el usuario escribe sin bloquear el hilo de JavaFX.
+ *
+ * - Espera una pausa en la escritura (debounce) antes de buscar.
+ * - La búsqueda corre en un hilo de fondo propio.
+ * - Cada texto nuevo invalida las búsquedas anteriores: las que siguen en curso se
+ *   cancelan y su resultado se descarta, así solo se publica el último.
+ * - El resultado se entrega en el hilo de JavaFX.
+ *
+ * {@link #solicitar(String)} y {@link #cancelar()} deben llamarse desde el hilo de JavaFX.
+ */
+public class BuscadorAsincrono<R> {
+
+    private final Function<String, R> busqueda;
+    private final Consumer<R> alPublicar;
+    private final PauseTransition debounce;
+    private final ExecutorService executor;
+    private final AtomicLong generacion = new AtomicLong();
+
+    private String textoPendiente;
+    private long solicitadoNanos;
+    private Future<?> enCurso;
+
+    // --- Métricas ---
+    private final AtomicLong publicadas = new AtomicLong();
+    private final AtomicLong descartadas = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private final AtomicLong ejecutadas = new AtomicLong();
+    private final AtomicLong ejecucionTotalNanos = new AtomicLong();
+    private final LongAccumulator ejecucionMaximaNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong respuestaTotalNanos = new AtomicLong();
+    private final LongAccumulator respuestaMaximaNanos = new LongAccumulator(Math::max, 0);
+    private volatile long ultimaRespuestaNanos;
+
+    /**
+     * @param nombre     nombre del hilo de fondo (para diagnóstico)
+     * @param esperaMs   pausa en la escritura antes de lanzar la búsqueda
+     * @param busqueda   función que resuelve el texto (se ejecuta fuera del hilo de JavaFX)
+     * @param alPublicar recibe el resultado de la última búsqueda, en el hilo de JavaFX
+     */
+    public BuscadorAsincrono(String nombre, long esperaMs, Function<String, R> busqueda, Consumer<R> alPublicar) {
+        this.busqueda = busqueda;
+        this.alPublicar = alPublicar;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, nombre);
+            t.setDaemon(true); // No impedir el cierre de la aplicación
+            return t;
+        });
+        this.debounce = new PauseTransition(Duration.millis(esperaMs));
+        this.debounce.setOnFinished(e -> lanzar());
+    }
+
+    /**
+     * Registra un nuevo texto a buscar. Reinicia la espera y deja obsoletas las búsquedas anteriores.
+     */
+    public void solicitar(String texto) {
+        generacion.incrementAndGet();
+        textoPendiente = texto;
+        solicitadoNanos = System.nanoTime();
+        debounce.playFromStart();
+    }
+
+    /**
+     * Descarta la búsqueda pendiente o en curso (ej. el campo quedó vacío).
+     */
+    public void cancelar() {
+        generacion.incrementAndGet();
+        debounce.stop();
+        textoPendiente = null;
+        if (enCurso != null) enCurso.cancel(true);
+    }
+
+    public void cerrar() {
+        cancelar();
+        executor.shutdownNow();
+    }
+
+    private void lanzar() {
+        if (textoPendiente == null) return;
+        final String texto = textoPendiente;
+        final long gen = generacion.get();
+        final long desdeTecla = solicitadoNanos;
+        textoPendiente = null;
+        if (enCurso != null) enCurso.cancel(true); // La anterior ya no interesa
+
+        enCurso = executor.submit(() -> {
+            if (gen != generacion.get()) { descartadas.incrementAndGet(); return; }
+            long inicio = System.nanoTime();
+            R resultado;
+            try {
+                resultado = busqueda.apply(texto);
+            } catch (RuntimeException ex) {
+                errores.incrementAndGet();
+                System.err.println("❌ Error en búsqueda '" + texto + "': " + ex.getMessage());
+                return;
+            }
+            long ejecucion = System.nanoTime() - inicio;
+            ejecutadas.incrementAndGet();
+            ejecucionTotalNanos.addAndGet(ejecucion);
+            ejecucionMaximaNanos.accumulate(ejecucion);
+            if (gen != generacion.get() || Thread.currentThread().isInterrupted()) {
+                descartadas.incrementAndGet();
+                return;
+            }
+            Platform.runLater(() -> {
+                if (gen != generacion.get()) { descartadas.incrementAndGet(); return; } // Llegó tarde
+                long respuesta = System.nanoTime() - desdeTecla;
+                ultimaRespuestaNanos = respuesta;
+                respuestaTotalNanos.addAndGet(respuesta);
+                respuestaMaximaNanos.accumulate(respuesta);
+                publicadas.incrementAndGet();
+                alPublicar.accept(resultado);
+            });
+        });
+    }
+
+    /**
+     * Métricas acumuladas. "Ejecución" es el tiempo de la búsqueda en sí;
+     * "respuesta" va desde la última tecla hasta que se muestra el resultado (incluye el debounce).
+     */
+    public Metricas getMetricas() {
+        long n = publicadas.get();
+        long e = ejecutadas.get();
+        return new Metricas(n, descartadas.get(), errores.get(),
+                e == 0 ? 0.0 : ejecucionTotalNanos.get() / 1_000_000.0 / e,
+                ejecucionMaximaNanos.get() / 1_000_000.0,
+                n == 0 ? 0.0 : respuestaTotalNanos.get() / 1_000_000.0 / n,
+                respuestaMaximaNanos.get() / 1_000_000.0,
+                ultimaRespuestaNanos / 1_000_000.0);
+    }
+
+    public record Metricas(long publicadas, long descartadas, long errores,
+                           double ejecucionPromedioMs, double ejecucionMaximaMs,
+                           double respuestaPromedioMs, double respuestaMaximaMs, double ultimaRespuestaMs) {
+        @Override
+        public String toString() {
+            return String.format("publicadas=%d, descartadas=%d, errores=%d, ejecución prom=%.2fms (máx %.2fms), respuesta prom=%.2fms (máx %.2fms, última %.2fms)",
+                    publicadas, descartadas, errores, ejecucionPromedioMs, ejecucionMaximaMs,
+                    respuestaPromedioMs, respuestaMaximaMs, ultimaRespuestaMs);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.drugstore2.util;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Ejecuta en paralelo las consultas de un panel (ej. estadísticas) sin bloquear el hilo de JavaFX.
+ *
+ * Cada consulta corre en un executor propio con su tiempo límite y entrega su resultado
+ * en el hilo de JavaFX apenas termina, así cada widget se completa por separado. Si una
+ * consulta falla o se pasa del límite, solo ese widget muestra el error. Pasado el límite el
+ * cargador solo deja de esperar: la consulta tiene que tener su propio límite (ej.
+ * {@code Statement.setQueryTimeout} con {@link #getTimeoutMs()}) para que no siga ocupando un hilo.
+ * Al empezar una nueva carga ({@link #nuevaCarga()}) los resultados de la anterior que
+ * lleguen tarde se descartan.
+ */
+public class CargadorPanel {
+
+    private final ExecutorService executor;
+    private final long timeoutMs;
+    private final AtomicLong generacion = new AtomicLong();
+
+    /**
+     * @param nombre    prefijo de los hilos (para diagnóstico)
+     * @param hilos     consultas simultáneas como máximo
+     * @param timeoutMs tiempo límite de cada consulta
+     */
+    public CargadorPanel(String nombre, int hilos, long timeoutMs) {
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, hilos), r -> {
+            Thread t = new Thread(r, nombre + "-" + contador.incrementAndGet());
+            t.setDaemon(true); // No impedir el cierre de la aplicación
+            return t;
+        });
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Marca el inicio de una nueva carga del panel. Devuelve una {@link Carga} para lanzar sus consultas.
+     */
+    public Carga nuevaCarga() {
+        return new Carga(generacion.incrementAndGet());
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void cerrar() {
+        generacion.incrementAndGet();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Una tanda de consultas del panel. Avisa cuando terminaron todas (bien o mal).
+     */
+    public class Carga {
+        private final long gen;
+        private final long inicioNanos = System.nanoTime();
+        private final AtomicInteger pendientes = new AtomicInteger();
+        private final AtomicInteger fallidas = new AtomicInteger();
+        private Runnable alTerminar;
+        private boolean lanzada = false;
+
+        private Carga(long gen) {
+            this.gen = gen;
+        }
+
+        /**
+         * Lanza una consulta. {@code alListo} y {@code alFallar} se ejecutan en el hilo de JavaFX.
+         * Debe llamarse desde el hilo de JavaFX, antes de {@link #alTerminar(Runnable)}.
+         */
+        public <T> Carga consulta(String nombre, Supplier<T> consulta, Consumer<T> alListo, Consumer<Throwable> alFallar) {
+            pendientes.incrementAndGet();
+            CompletableFuture.supplyAsync(consulta, executor)
+                    .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((resultado, error) -> Platform.runLater(() -> {
+                        if (gen != generacion.get()) return; // Hay una carga más nueva
+                        if (error == null) {
+                            alListo.accept(resultado);
+                        } else {
+                            Throwable causa = error.getCause() != null ? error.getCause() : error;
+                            fallidas.incrementAndGet();
+                            System.err.println(causa instanceof TimeoutException
+                                    ? "⚠️ Consulta '" + nombre + "' superó " + timeoutMs + "ms."
+                                    : "❌ Error en consulta '" + nombre + "': " + causa);
+                            alFallar.accept(causa);
+                        }
+                        terminarUna();
+                    }));
+            return this;
+        }
+
+        /**
+         * Acción a ejecutar (en el hilo de JavaFX) cuando todas las consultas lanzadas terminaron.
+         */
+        public void alTerminar(Runnable accion) {
+            this.alTerminar = accion;
+            this.lanzada = true;
+            if (pendientes.get() == 0) accion.run();
+        }
+
+        private void terminarUna() {
+            if (pendientes.decrementAndGet() == 0 && lanzada && alTerminar != null) alTerminar.run();
+        }
+
+        public int getFallidas() {
+            return fallidas.get();
+        }
+
+        public double getDuracionMs() {
+            return (System.nanoTime() - inicioNanos) / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.drugstore2.util;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * Junta muchos avisos de cambio en una sola actualización de la UI por pulso de JavaFX.
+ *
+ * {@link #marcar()} solo deja marcada la UI como desactualizada; en el siguiente pulso
+ * (el momento en que JavaFX va a redibujar) se ejecuta la acción una vez, sin importar
+ * cuántas veces se marcó. Sin cambios pendientes el timer se detiene solo.
+ */
+public class CoalescedorUI {
+
+    private final Runnable accion;
+    private final AnimationTimer timer;
+    // Solo se leen/escriben en el hilo de JavaFX
+    private boolean pendiente = false;
+    private boolean activo = false;
+    private long refrescos = 0;
+    private long marcas = 0;
+
+    /**
+     * @param accion actualización a ejecutar en el hilo de JavaFX
+     */
+    public CoalescedorUI(Runnable accion) {
+        this.accion = accion;
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long ahora) {
+                if (pendiente) {
+                    pendiente = false;
+                    refrescos++;
+                    accion.run();
+                } else {
+                    // Un pulso sin cambios: no hace falta seguir escuchando
+                    stop();
+                    activo = false;
+                }
+            }
+        };
+    }
+
+    /**
+     * Marca la UI como desactualizada. Se puede llamar desde cualquier hilo.
+     */
+    public void marcar() {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(this::marcar);
+            return;
+        }
+        marcas++;
+        pendiente = true;
+        if (!activo) {
+            activo = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Ejecuta ya la actualización pendiente (ej. antes de leer el estado de la UI). Hilo de JavaFX.
+     */
+    public void vaciar() {
+        if (pendiente) {
+            pendiente = false;
+            refrescos++;
+            accion.run();
+        }
+    }
+
+    // Cuántas veces se marcó y cuántas se refrescó realmente la UI
+    public long getMarcas() { return marcas; }
+    public long getRefrescos() { return refrescos; }
+}
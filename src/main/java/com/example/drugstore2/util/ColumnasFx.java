@@ -0,0 +1,22 @@
+package com.example.drugstore2.util;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.TableColumn;
+import javafx.util.Callback;
+
+import java.util.function.Function;
+
+/**
+ * Adaptadores para mostrar objetos inmutables (records) en un TableView.
+ * El valor observable de cada celda se crea recién cuando la tabla la dibuja,
+ * así que solo existe para las filas visibles y no para toda la lista.
+ */
+public final class ColumnasFx {
+
+    private ColumnasFx() {}
+
+    public static <S, T> Callback<TableColumn.CellDataFeatures<S, T>, ObservableValue<T>> valor(Function<S, T> extractor) {
+        return cellData -> new ReadOnlyObjectWrapper<>(extractor.apply(cellData.getValue()));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.drugstore2.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escribe periódicamente las {@link Metricas} en un archivo de texto con formato Prometheus,
+ * para seguir la evolución de p50/p99 durante el día (ej. con el textfile collector de
+ * node_exporter, o simplemente copiando el archivo).
+ *
+ * Configuración: -Dmetricas.archivo=ruta (por defecto metricas.prom en el directorio de trabajo)
+ * y -Dmetricas.intervaloSeg=N (por defecto 60; 0 desactiva la exportación).
+ * El archivo se reemplaza de una vez, así quien lo lea nunca ve una escritura a medias.
+ */
+public class ExportadorMetricas implements AutoCloseable {
+
+    private final Path archivo;
+    private final ScheduledExecutorService executor;
+
+    public ExportadorMetricas(Path archivo, long intervaloSeg) {
+        this.archivo = archivo;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metricas-exportador");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleAtFixedRate(this::escribirSinFallar, intervaloSeg, intervaloSeg, TimeUnit.SECONDS);
+        System.out.println("ℹ️ Métricas exportadas cada " + intervaloSeg + " s a " + archivo.toAbsolutePath());
+    }
+
+    /**
+     * Crea el exportador según las propiedades del sistema, o devuelve null si está desactivado.
+     */
+    public static ExportadorMetricas desdePropiedades() {
+        long intervalo = Long.getLong("metricas.intervaloSeg", 60);
+        if (intervalo <= 0) {
+            System.out.println("ℹ️ Exportación de métricas desactivada (metricas.intervaloSeg=" + intervalo + ").");
+            return null;
+        }
+        return new ExportadorMetricas(Paths.get(System.getProperty("metricas.archivo", "metricas.prom")), intervalo);
+    }
+
+    public Path getArchivo() {
+        return archivo;
+    }
+
+    /**
+     * Escribe las métricas actuales (en un temporal que después reemplaza al archivo).
+     */
+    public void escribir() throws IOException {
+        Path destino = archivo.toAbsolutePath();
+        if (destino.getParent() != null) Files.createDirectories(destino.getParent());
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        Files.writeString(temporal, Metricas.formatoPrometheus(), StandardCharsets.UTF_8);
+        try {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Para la tarea periódica: un error no debe cancelar las escrituras siguientes
+    private void escribirSinFallar() {
+        try {
+            escribir();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ No se pudieron exportar las métricas a " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Detiene la tarea periódica y escribe una última vez (los datos del cierre no se pierden).
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        escribirSinFallar();
+        System.out.println("Métricas exportadas a " + archivo.toAbsolutePath());
+    }
+}
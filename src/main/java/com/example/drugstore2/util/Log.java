@@ -0,0 +1,76 @@
+package com.example.drugstore2.util;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Logger mínimo con niveles, para los caminos frecuentes (escaneo, ticket) donde un
+ * System.out por evento cuesta más que el trabajo en sí.
+ *
+ * El nivel se elige con -Dlog.nivel=TRACE|DEBUG|INFO|WARN|ERROR|OFF (por defecto INFO).
+ * Los mensajes por debajo del nivel no se escriben, y con las variantes que reciben un
+ * Supplier ni siquiera se arma el texto.
+ */
+public final class Log {
+
+    public enum Nivel { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static volatile Nivel nivelGlobal = leerNivel();
+
+    private final String nombre;
+
+    private Log(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public static Log de(Class<?> clase) {
+        return new Log(clase.getSimpleName());
+    }
+
+    public static void setNivel(Nivel nivel) {
+        nivelGlobal = nivel;
+    }
+
+    public static Nivel getNivel() {
+        return nivelGlobal;
+    }
+
+    public boolean activo(Nivel nivel) {
+        return nivel != Nivel.OFF && nivel.compareTo(nivelGlobal) >= 0;
+    }
+
+    public boolean isDebug() {
+        return activo(Nivel.DEBUG);
+    }
+
+    public void trace(Supplier<String> mensaje) { escribir(Nivel.TRACE, mensaje); }
+    public void debug(Supplier<String> mensaje) { escribir(Nivel.DEBUG, mensaje); }
+    public void debug(String mensaje) { escribir(Nivel.DEBUG, mensaje); }
+    public void info(String mensaje) { escribir(Nivel.INFO, mensaje); }
+    public void warn(String mensaje) { escribir(Nivel.WARN, mensaje); }
+    public void error(String mensaje) { escribir(Nivel.ERROR, mensaje); }
+
+    private void escribir(Nivel nivel, Supplier<String> mensaje) {
+        if (activo(nivel)) escribir(nivel, mensaje.get());
+    }
+
+    private void escribir(Nivel nivel, String mensaje) {
+        if (!activo(nivel)) return;
+        String linea = nivel + " (" + nombre + "): " + mensaje;
+        if (nivel.compareTo(Nivel.WARN) >= 0) {
+            System.err.println(linea);
+        } else {
+            System.out.println(linea);
+        }
+    }
+
+    private static Nivel leerNivel() {
+        String valor = System.getProperty("log.nivel", "INFO");
+        try {
+            return Nivel.valueOf(valor.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠️ log.nivel inválido: '" + valor + "'. Se usa INFO.");
+            return Nivel.INFO;
+        }
+    }
+}
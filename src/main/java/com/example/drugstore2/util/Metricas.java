@@ -0,0 +1,293 @@
+package com.example.drugstore2.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencia, cantidad de llamadas y errores de los métodos públicos de los servicios.
+ *
+ * Cada servicio obtiene su grupo con {@link #de(String)} y mide sus métodos públicos con
+ * {@code return metricas.medir("metodo", () -> metodoInterno(...));}. En los catch donde la
+ * operación termina fallando (ej. un SQLException que se convierte en {@code false}) se llama a
+ * {@link #marcarError()}; una excepción que sale de la llamada cuenta como error sola.
+ * El error marcado alcanza también a las mediciones que envuelven a la actual (ej. getProductos
+ * cuando falla el listarProductos que llama por dentro).
+ * Para medir un tramo que no es una llamada se usa {@link #iniciar(String)} en un try-with-resources.
+ *
+ * Las duraciones van a un histograma logarítmico (4 cubetas por potencia de 2, error de ~±12%
+ * en los percentiles): registrar una llamada no bloquea ni reserva memoria, y p50/p99 se pueden
+ * calcular en cualquier momento. Los valores se acumulan desde que arrancó la aplicación.
+ */
+public final class Metricas {
+
+    // Cubetas en microsegundos: 0..7 exactas, después 4 por potencia de 2 hasta 2^40 µs (~12 días)
+    private static final int MAX_POTENCIA = 40;
+    private static final int CUBETAS = 8 + (MAX_POTENCIA - 2) * 4;
+
+    // servicio.metodo -> estadística (todas las de la aplicación, para el panel y la exportación)
+    private static final ConcurrentMap<String, EstadisticaMetodo> REGISTRO = new ConcurrentHashMap<>();
+    private static final long INICIO_MILLIS = System.currentTimeMillis();
+    // Medición de medir() en curso en cada hilo (para marcarError)
+    private static final ThreadLocal<Medicion> EN_CURSO = new ThreadLocal<>();
+
+    private final String servicio;
+    private final ConcurrentMap<String, EstadisticaMetodo> metodos = new ConcurrentHashMap<>();
+
+    private Metricas(String servicio) {
+        this.servicio = servicio;
+    }
+
+    public static Metricas de(String servicio) {
+        return new Metricas(servicio);
+    }
+
+    /** Una llamada medida con {@link #medir}; puede lanzar la excepción del método medido. */
+    @FunctionalInterface
+    public interface Llamada<T, E extends Exception> {
+        T ejecutar() throws E;
+    }
+
+    /** Igual que {@link Llamada}, para métodos void. */
+    @FunctionalInterface
+    public interface Accion<E extends Exception> {
+        void ejecutar() throws E;
+    }
+
+    /**
+     * Ejecuta y mide la llamada. Dentro de ella, {@link #marcarError()} la cuenta como fallida.
+     */
+    public <T, E extends Exception> T medir(String metodo, Llamada<T, E> llamada) throws E {
+        Medicion anterior = EN_CURSO.get();
+        try (Medicion medicion = iniciar(metodo)) {
+            medicion.externa = anterior;
+            EN_CURSO.set(medicion);
+            try {
+                return llamada.ejecutar();
+            } catch (Exception | Error e) {
+                medicion.error();
+                throw e;
+            }
+        } finally {
+            EN_CURSO.set(anterior);
+        }
+    }
+
+    public <E extends Exception> void medir(String metodo, Accion<E> accion) throws E {
+        medir(metodo, (Llamada<Void, E>) () -> {
+            accion.ejecutar();
+            return null;
+        });
+    }
+
+    /**
+     * Marca como fallida la llamada que se está midiendo en este hilo con {@link #medir}, y las que
+     * la envuelven (sin efecto fuera de una). Se usa cuando el método atrapa el error y devuelve un valor.
+     */
+    public static void marcarError() {
+        for (Medicion medicion = EN_CURSO.get(); medicion != null; medicion = medicion.externa) {
+            medicion.error();
+        }
+    }
+
+    /**
+     * Empieza a medir una llamada; la duración se registra al cerrar la medición.
+     */
+    public Medicion iniciar(String metodo) {
+        return new Medicion(estadistica(metodo));
+    }
+
+    /**
+     * Registra una duración medida por fuera de una llamada (ej. desde que una venta quedó
+     * en cola hasta que se confirmó en la base).
+     */
+    public void registrar(String metodo, long nanos, boolean error) {
+        estadistica(metodo).registrar(Math.max(0, nanos), error);
+    }
+
+    private EstadisticaMetodo estadistica(String metodo) {
+        EstadisticaMetodo estadistica = metodos.get(metodo);
+        if (estadistica == null) {
+            estadistica = metodos.computeIfAbsent(metodo,
+                    m -> REGISTRO.computeIfAbsent(servicio + "." + m, k -> new EstadisticaMetodo(servicio, m)));
+        }
+        return estadistica;
+    }
+
+    /**
+     * Una llamada en curso. Se usa en un try-with-resources.
+     */
+    public static final class Medicion implements AutoCloseable {
+        private final EstadisticaMetodo estadistica;
+        private final long inicioNanos = System.nanoTime();
+        private boolean error = false;
+        private Medicion externa; // La de medir() que envuelve a esta en el mismo hilo
+
+        private Medicion(EstadisticaMetodo estadistica) {
+            this.estadistica = estadistica;
+        }
+
+        /** Marca la llamada como fallida (ej. un SQLException que el método atrapa y devuelve false). */
+        public void error() {
+            error = true;
+        }
+
+        @Override
+        public void close() {
+            estadistica.registrar(System.nanoTime() - inicioNanos, error);
+        }
+    }
+
+    /**
+     * Foto de las métricas de un método. Duraciones en milisegundos.
+     */
+    public record Resumen(String servicio, String metodo, long llamadas, long errores, double totalMs,
+                          double p50Ms, double p90Ms, double p99Ms, double maxMs) {
+        public double promedioMs() {
+            return llamadas == 0 ? 0.0 : totalMs / llamadas;
+        }
+
+        public double tasaError() {
+            return llamadas == 0 ? 0.0 : (double) errores / llamadas;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s.%s: llamadas=%d, errores=%d, p50=%.2fms, p90=%.2fms, p99=%.2fms, max=%.2fms",
+                    servicio, metodo, llamadas, errores, p50Ms, p90Ms, p99Ms, maxMs);
+        }
+    }
+
+    /**
+     * Métricas de todos los métodos medidos, ordenadas por servicio y método.
+     */
+    public static List<Resumen> resumenes() {
+        List<Resumen> lista = new ArrayList<>();
+        for (EstadisticaMetodo e : REGISTRO.values()) lista.add(e.resumen());
+        lista.sort(Comparator.comparing(Resumen::servicio).thenComparing(Resumen::metodo));
+        return lista;
+    }
+
+    /**
+     * Pone en cero todas las métricas (ej. al terminar el calentamiento de una prueba de carga).
+     * Las llamadas en curso mientras se reinicia pueden quedar contadas a medias.
+     */
+    public static void reiniciar() {
+        for (EstadisticaMetodo e : REGISTRO.values()) e.reiniciar();
+    }
+
+    public static long getInicioMillis() {
+        return INICIO_MILLIS;
+    }
+
+    /**
+     * Métricas en el formato de texto de Prometheus (un summary con p50/p90/p99 y un contador de errores).
+     */
+    public static String formatoPrometheus() {
+        List<Resumen> lista = resumenes();
+        StringBuilder sb = new StringBuilder(256 + lista.size() * 600);
+        sb.append("# HELP drugstore_metodo_duracion_segundos Duración de los métodos de los servicios desde el inicio.\n");
+        sb.append("# TYPE drugstore_metodo_duracion_segundos summary\n");
+        for (Resumen r : lista) {
+            String etiquetas = "servicio=\"" + escapar(r.servicio()) + "\",metodo=\"" + escapar(r.metodo()) + "\"";
+            linea(sb, "drugstore_metodo_duracion_segundos{" + etiquetas + ",quantile=\"0.5\"}", r.p50Ms() / 1000.0);
+            linea(sb, "drugstore_metodo_duracion_segundos{" + etiquetas + ",quantile=\"0.9\"}", r.p90Ms() / 1000.0);
+            linea(sb, "drugstore_metodo_duracion_segundos{" + etiquetas + ",quantile=\"0.99\"}", r.p99Ms() / 1000.0);
+            linea(sb, "drugstore_metodo_duracion_segundos_sum{" + etiquetas + "}", r.totalMs() / 1000.0);
+            sb.append("drugstore_metodo_duracion_segundos_count{").append(etiquetas).append("} ").append(r.llamadas()).append('\n');
+        }
+        sb.append("# HELP drugstore_metodo_errores_total Llamadas que terminaron en error.\n");
+        sb.append("# TYPE drugstore_metodo_errores_total counter\n");
+        for (Resumen r : lista) {
+            sb.append("drugstore_metodo_errores_total{servicio=\"").append(escapar(r.servicio()))
+                    .append("\",metodo=\"").append(escapar(r.metodo())).append("\"} ").append(r.errores()).append('\n');
+        }
+        sb.append("# HELP drugstore_inicio_segundos Momento en que arrancó la aplicación (epoch).\n");
+        sb.append("# TYPE drugstore_inicio_segundos gauge\n");
+        sb.append("drugstore_inicio_segundos ").append(INICIO_MILLIS / 1000).append('\n');
+        return sb.toString();
+    }
+
+    private static void linea(StringBuilder sb, String nombre, double valor) {
+        sb.append(nombre).append(' ').append(String.format(Locale.ROOT, "%.6f", valor)).append('\n');
+    }
+
+    private static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // Contadores de un método; se actualizan desde cualquier hilo sin bloquear
+    private static final class EstadisticaMetodo {
+        private final String servicio;
+        private final String metodo;
+        private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+        private final LongAdder errores = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        EstadisticaMetodo(String servicio, String metodo) {
+            this.servicio = servicio;
+            this.metodo = metodo;
+        }
+
+        void registrar(long nanos, boolean error) {
+            cubetas.incrementAndGet(cubeta(nanos / 1000));
+            totalNanos.add(nanos);
+            if (error) errores.increment();
+            if (nanos > maxNanos.get()) maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        void reiniciar() {
+            for (int i = 0; i < CUBETAS; i++) cubetas.set(i, 0);
+            errores.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+        }
+
+        Resumen resumen() {
+            long[] copia = new long[CUBETAS];
+            long llamadas = 0;
+            for (int i = 0; i < CUBETAS; i++) {
+                copia[i] = cubetas.get(i);
+                llamadas += copia[i];
+            }
+            double maxMs = maxNanos.get() / 1_000_000.0;
+            return new Resumen(servicio, metodo, llamadas, errores.sum(), totalNanos.sum() / 1_000_000.0,
+                    percentil(copia, llamadas, 0.50, maxMs), percentil(copia, llamadas, 0.90, maxMs),
+                    percentil(copia, llamadas, 0.99, maxMs), maxMs);
+        }
+
+        private static double percentil(long[] cubetas, long total, double q, double maxMs) {
+            if (total == 0) return 0.0;
+            long posicion = Math.max(1, (long) Math.ceil(q * total));
+            long acumulado = 0;
+            for (int i = 0; i < cubetas.length; i++) {
+                acumulado += cubetas[i];
+                if (acumulado >= posicion) return Math.min(centroMicros(i) / 1000.0, maxMs);
+            }
+            return maxMs;
+        }
+    }
+
+    static int cubeta(long micros) {
+        if (micros < 8) return (int) Math.max(0, micros);
+        int potencia = 63 - Long.numberOfLeadingZeros(micros);
+        if (potencia > MAX_POTENCIA) return CUBETAS - 1;
+        return 8 + (potencia - 3) * 4 + (int) ((micros >> (potencia - 2)) & 3);
+    }
+
+    // Valor representativo (centro) de una cubeta, en microsegundos
+    static double centroMicros(int cubeta) {
+        if (cubeta < 8) return cubeta + 0.5;
+        int potencia = 3 + (cubeta - 8) / 4;
+        int sub = (cubeta - 8) % 4;
+        long ancho = 1L << (potencia - 2);
+        return ((4L + sub) * ancho) + ancho / 2.0;
+    }
+}
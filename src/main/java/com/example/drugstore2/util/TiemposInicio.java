@@ -0,0 +1,84 @@
+package com.example.drugstore2.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Tiempos de las fases del arranque de la aplicación (servicios, pestañas, ventana), para poder
+ * medir el arranque en frío y ver qué fase lo demora.
+ *
+ * Las fases secuenciales se cierran con {@link #fase(String)}, que mide desde la fase anterior;
+ * las que corren en paralelo (ej. la carga del catálogo) se miden con {@link #medir(String, Callable)}
+ * y se listan aparte. Se puede usar desde cualquier hilo.
+ */
+public class TiemposInicio {
+
+    /** Una fase del arranque. {@code paralela}: corrió a la par de otras (no suma al total). */
+    public record Fase(String nombre, double ms, boolean paralela) {}
+
+    private final long inicioNanos = System.nanoTime();
+    private long ultimaNanos = inicioNanos;
+    private final List<Fase> fases = new ArrayList<>();
+
+    /**
+     * Cierra una fase secuencial: el tiempo desde la fase anterior (o desde el inicio).
+     */
+    public synchronized void fase(String nombre) {
+        long ahora = System.nanoTime();
+        fases.add(new Fase(nombre, (ahora - ultimaNanos) / 1_000_000.0, false));
+        ultimaNanos = ahora;
+    }
+
+    /**
+     * Ejecuta y mide una tarea que corre a la par de otras fases.
+     */
+    public <T> T medir(String nombre, Callable<T> tarea) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            return tarea.call();
+        } finally {
+            double ms = (System.nanoTime() - inicio) / 1_000_000.0;
+            synchronized (this) {
+                fases.add(new Fase(nombre, ms, true));
+            }
+        }
+    }
+
+    public synchronized List<Fase> getFases() {
+        return List.copyOf(fases);
+    }
+
+    /** Tiempo desde que se creó el objeto (inicio de la aplicación) hasta la última fase cerrada. */
+    public synchronized double getTotalMs() {
+        return (ultimaNanos - inicioNanos) / 1_000_000.0;
+    }
+
+    /** Tiempo desde que arrancó la JVM (incluye la carga de clases y de JavaFX antes de start()). */
+    public static long getMsDesdeJvm() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "Arranque: %.0f ms", getTotalMs()));
+        List<String> paralelas = new ArrayList<>();
+        sb.append(" (");
+        boolean primera = true;
+        for (Fase f : fases) {
+            String texto = String.format(Locale.ROOT, "%s %.0f ms", f.nombre(), f.ms());
+            if (f.paralela()) {
+                paralelas.add(texto);
+            } else {
+                if (!primera) sb.append(", ");
+                sb.append(texto);
+                primera = false;
+            }
+        }
+        sb.append(')');
+        if (!paralelas.isEmpty()) sb.append("; en paralelo: ").append(String.join(", ", paralelas));
+        return sb.toString();
+    }
+}
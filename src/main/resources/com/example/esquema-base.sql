@@ -0,0 +1,66 @@
+-- Tablas base de la aplicación (perfil embebida o db.crearEsquema=true). Las tablas nuevas e
+-- índices posteriores los agrega MigracionesBD; este archivo no se modifica para cambiar el esquema.
+
+CREATE TABLE IF NOT EXISTS categorias (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    nombre VARCHAR(100) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS productos (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    codigo VARCHAR(50) NOT NULL UNIQUE,
+    nombre VARCHAR(200) NOT NULL,
+    precio_venta DECIMAL(10,2) NOT NULL,
+    precio_costo DECIMAL(10,2) DEFAULT 0,
+    stock INT NOT NULL DEFAULT 0,
+    categoria_id INT,
+    activo BOOLEAN NOT NULL DEFAULT TRUE,
+    stock_minimo INT NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS ventas (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    fecha_hora DATETIME NOT NULL,
+    total DECIMAL(12,2) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS detalle_ventas (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    venta_id INT NOT NULL,
+    producto_codigo VARCHAR(50) NOT NULL,
+    cantidad INT NOT NULL,
+    subtotal DECIMAL(12,2) NOT NULL,
+    descripcion_manual VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS log_eventos (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    tipo_evento VARCHAR(50) NOT NULL,
+    tabla_afectada VARCHAR(50),
+    descripcion VARCHAR(1000),
+    fecha_hora TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS caja_sesiones (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    fecha_apertura DATETIME NOT NULL,
+    fecha_cierre DATETIME,
+    saldo_inicial DECIMAL(12,2) NOT NULL,
+    saldo_final_calculado DECIMAL(12,2),
+    saldo_final_real DECIMAL(12,2),
+    diferencia DECIMAL(12,2),
+    activa BOOLEAN NOT NULL DEFAULT TRUE
+);
+
+CREATE TABLE IF NOT EXISTS caja_movimientos (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    sesion_id INT NOT NULL,
+    fecha_hora DATETIME NOT NULL,
+    tipo_movimiento VARCHAR(30) NOT NULL,
+    monto DECIMAL(12,2) NOT NULL,
+    descripcion VARCHAR(255),
+    venta_id INT
+);
+
+-- La aplicación no tiene alta de categorías: una base nueva arranca con una para poder cargar productos
+INSERT IGNORE INTO categorias (nombre) VALUES ('General');
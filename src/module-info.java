@@ -17,6 +17,7 @@ module com.example.drugstore2 {
 
     // Database
     requires java.sql;
+    requires com.zaxxer.hikari; // Pool de conexiones
 
     // CSV Handling
     requires org.apache.commons.csv;
@@ -35,6 +36,7 @@ module com.example.drugstore2 {
     // Exportar paquete principal (y otros si es necesario)
     exports com.example.drugstore2;
     exports com.example.drugstore2.controller;
+    exports com.example.drugstore2.db;
     exports com.example.drugstore2.model;
     exports com.example.drugstore2.service;
     exports com.example.drugstore2.util;